@@ -0,0 +1,116 @@
+package com.example.bookservice.config;
+
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RabbitMQConfig {
+
+    public static final String BOOK_CACHE_EXCHANGE = "book.cache.exchange";
+    public static final String BOOK_CATALOG_EXCHANGE = "book.catalog.exchange";
+    public static final String BOOK_CATALOG_CHANGED_KEY = "book.catalog.changed";
+    public static final String BOOK_STOCK_CHANGED_KEY = "book.stock.changed";
+    public static final String ORDER_EXCHANGE = "order.exchange";
+    public static final String BOOK_SALES_QUEUE = "book.sales.queue";
+    public static final String BOOK_STOCK_QUEUE = "book.stock.queue";
+
+    // Exchanges
+    @Bean
+    @ConditionalOnProperty(name = "book.cache.broadcast.enabled", havingValue = "true")
+    public FanoutExchange bookCacheExchange() {
+        return new FanoutExchange(BOOK_CACHE_EXCHANGE);
+    }
+
+    // Catalog changes (title, author, price) and stock changes, consumed by cart-service
+    @Bean
+    public TopicExchange bookCatalogExchange() {
+        return new TopicExchange(BOOK_CATALOG_EXCHANGE);
+    }
+
+    // Declared by order-service too: sales of placed and cancelled orders, stock reservation commands
+    @Bean
+    public DirectExchange orderExchange() {
+        return new DirectExchange(ORDER_EXCHANGE);
+    }
+
+    // Queues: shared by the replicas, each event is counted once (see SalesRanking)
+    @Bean
+    public Queue bookSalesQueue() {
+        return new Queue(BOOK_SALES_QUEUE, true);
+    }
+
+    // Commits and releases of stock reservations, sent by order-service through its outbox
+    @Bean
+    public Queue bookStockQueue() {
+        return new Queue(BOOK_STOCK_QUEUE, true);
+    }
+
+    // One private, auto-deleted queue per replica so that every replica gets every invalidation
+    @Bean
+    @ConditionalOnProperty(name = "book.cache.broadcast.enabled", havingValue = "true")
+    public Queue bookCacheQueue() {
+        return new AnonymousQueue();
+    }
+
+    // Bindings
+    @Bean
+    public Binding bookSalesBinding() {
+        return BindingBuilder.bind(bookSalesQueue()).to(orderExchange()).with("order.sales");
+    }
+
+    @Bean
+    public Binding bookStockBinding() {
+        return BindingBuilder.bind(bookStockQueue()).to(orderExchange()).with("order.stock");
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "book.cache.broadcast.enabled", havingValue = "true")
+    public Binding bookCacheBinding() {
+        return BindingBuilder.bind(bookCacheQueue()).to(bookCacheExchange());
+    }
+
+    // Message Converter
+    @Bean
+    public MessageConverter jsonMessageConverter() {
+        return new Jackson2JsonMessageConverter();
+    }
+
+    // Sales events in batches (up to batch-size, or whatever arrived within receive-timeout): a batch
+    // is written in one transaction and acknowledged once it commits
+    @Bean
+    public SimpleRabbitListenerContainerFactory salesBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${book.ranking.batch-size:200}") int batchSize,
+            @Value("${book.ranking.receive-timeout-ms:500}") long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        return factory;
+    }
+
+    @Bean
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
+        rabbitTemplate.setMessageConverter(jsonMessageConverter());
+        return rabbitTemplate;
+    }
+}
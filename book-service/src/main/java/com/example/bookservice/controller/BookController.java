@@ -3,16 +3,19 @@ package com.example.bookservice.controller;
 
 import com.example.bookservice.dto.*;
 import com.example.bookservice.service.BookService;
+import com.example.bookservice.service.SalesRanking;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/books")
@@ -22,12 +25,30 @@ public class BookController {
 
     private final BookService bookService;
 
+    @Value("${book.page.max-size:100}")
+    private int maxPageSize;
+
     @PostMapping("/search")
     @Operation(summary = "Search books with multiple criteria")
     public ResponseEntity<Page<BookDTO>> searchBooks(@RequestBody SearchRequest searchRequest) {
+        checkPageSize(searchRequest.getSize());
         return ResponseEntity.ok(bookService.searchBooks(searchRequest));
     }
 
+    @PostMapping("/search/facets")
+    @Operation(summary = "Search books and count results per category, language, price range and flag")
+    public ResponseEntity<FacetedSearchResponse> searchBooksWithFacets(@RequestBody SearchRequest searchRequest) {
+        checkPageSize(searchRequest.getSize());
+        return ResponseEntity.ok(bookService.searchBooksWithFacets(searchRequest));
+    }
+
+    @PostMapping("/search/scroll")
+    @Operation(summary = "Search books with cursor pagination (no total count)")
+    public ResponseEntity<BookSliceResponse> scrollBooks(@RequestBody SearchRequest searchRequest) {
+        checkPageSize(searchRequest.getSize());
+        return ResponseEntity.ok(bookService.scrollBooks(searchRequest));
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Get book by ID")
     public ResponseEntity<BookDTO> getBookById(@PathVariable Long id) {
@@ -40,6 +61,20 @@ public class BookController {
         return ResponseEntity.ok(bookService.getBookByIsbn(isbn));
     }
 
+    @PostMapping("/batch")
+    @Operation(summary = "Get several books by ID in one call (for other services)")
+    public ResponseEntity<Map<Long, BookInfo>> getBooksByIds(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(bookService.getBookInfos(ids));
+    }
+
+    @GetMapping("/snapshot")
+    @Operation(summary = "Get the catalog page by page, in id order (for other services)")
+    public ResponseEntity<List<BookInfo>> getBookSnapshot(
+            @RequestParam(defaultValue = "0") Long afterId,
+            @RequestParam(defaultValue = "500") int limit) {
+        return ResponseEntity.ok(bookService.getBookSnapshot(afterId, limit));
+    }
+
     @GetMapping("/new-releases")
     @Operation(summary = "Get new releases")
     public ResponseEntity<List<BookDTO>> getNewReleases() {
@@ -50,9 +85,20 @@ public class BookController {
     @Operation(summary = "Get best sellers")
     public ResponseEntity<Page<BookDTO>> getBestSellers(
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "10") int size) {
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "false") boolean summary) {
+        checkPageSize(size);
         Pageable pageable = PageRequest.of(page, size);
-        return ResponseEntity.ok(bookService.getBestSellers(pageable));
+        return ResponseEntity.ok(bookService.getBestSellers(pageable, summary));
+    }
+
+    @GetMapping("/top-sellers")
+    @Operation(summary = "Get the books that sold the most copies over the last DAY, WEEK or MONTH")
+    public ResponseEntity<List<TopSellerDTO>> getTopSellers(
+            @RequestParam(defaultValue = "WEEK") SalesRanking.Window window,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestParam(defaultValue = "true") boolean summary) {
+        return ResponseEntity.ok(bookService.getTopSellers(window, limit, summary));
     }
 
     @GetMapping("/category/{categoryId}")
@@ -60,9 +106,31 @@ public class BookController {
     public ResponseEntity<Page<BookDTO>> getBooksByCategory(
             @PathVariable Long categoryId,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean summary) {
+        checkPageSize(size);
         Pageable pageable = PageRequest.of(page, size);
-        return ResponseEntity.ok(bookService.getBooksByCategory(categoryId, pageable));
+        return ResponseEntity.ok(bookService.getBooksByCategory(categoryId, pageable, summary));
+    }
+
+    @GetMapping("/category/{categoryId}/scroll")
+    @Operation(summary = "Get books by category with cursor pagination (no total count)")
+    public ResponseEntity<BookSliceResponse> scrollBooksByCategory(
+            @PathVariable Long categoryId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "title") String sortBy,
+            @RequestParam(defaultValue = "ASC") String sortDirection,
+            @RequestParam(defaultValue = "false") boolean summary) {
+        checkPageSize(size);
+        SearchRequest searchRequest = new SearchRequest();
+        searchRequest.setCategoryId(categoryId);
+        searchRequest.setCursor(cursor);
+        searchRequest.setSize(size);
+        searchRequest.setSortBy(sortBy);
+        searchRequest.setSortDirection(sortDirection);
+        searchRequest.setSummary(summary);
+        return ResponseEntity.ok(bookService.scrollBooks(searchRequest));
     }
 
     @PostMapping
@@ -85,4 +153,10 @@ public class BookController {
         bookService.deleteBook(id);
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+
+    private void checkPageSize(Integer size) {
+        if (size == null || size < 1 || size > maxPageSize) {
+            throw new RuntimeException("Page size must be between 1 and " + maxPageSize);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.bookservice.controller;
+
+import com.example.bookservice.dto.StockReservationRequest;
+import com.example.bookservice.dto.StockReservationResponse;
+import com.example.bookservice.service.StockReservationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/books/stock")
+@RequiredArgsConstructor
+@Tag(name = "Stock", description = "Endpoints for stock reservation (used by order-service)")
+public class StockController {
+
+    private final StockReservationService stockReservationService;
+
+    @PostMapping("/reservations")
+    @Operation(summary = "Reserve stock for several books at once (all or nothing)")
+    public ResponseEntity<StockReservationResponse> reserve(@Valid @RequestBody StockReservationRequest request) {
+        return ResponseEntity.ok(stockReservationService.reserve(request));
+    }
+
+    @GetMapping("/reservations/{reservationId}")
+    @Operation(summary = "Get a stock reservation")
+    public ResponseEntity<StockReservationResponse> getReservation(@PathVariable String reservationId) {
+        return ResponseEntity.ok(stockReservationService.getReservation(reservationId));
+    }
+
+    @PostMapping("/reservations/{reservationId}/commit")
+    @Operation(summary = "Confirm a stock reservation once the order is placed")
+    public ResponseEntity<StockReservationResponse> commit(@PathVariable String reservationId) {
+        return ResponseEntity.ok(stockReservationService.commit(reservationId));
+    }
+
+    @PostMapping("/reservations/{reservationId}/release")
+    @Operation(summary = "Give the reserved stock back")
+    public ResponseEntity<StockReservationResponse> release(@PathVariable String reservationId) {
+        return ResponseEntity.ok(stockReservationService.release(reservationId));
+    }
+}
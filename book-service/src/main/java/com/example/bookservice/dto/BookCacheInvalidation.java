@@ -0,0 +1,13 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+
+/**
+ * Fanned out on {@code book.cache.exchange} so that every replica evicts the book from its
+ * catalog caches.
+ */
+@Data
+public class BookCacheInvalidation {
+    private Long bookId;
+    private String isbn;
+}
@@ -0,0 +1,17 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Published on {@code book.catalog.exchange} when the title, author or price of a book changes.
+ */
+@Data
+public class BookCatalogEvent {
+    private Long bookId;
+    private String title;
+    private String author;
+    private BigDecimal price;
+    private LocalDateTime changedAt;
+}
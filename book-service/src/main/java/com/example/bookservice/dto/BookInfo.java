@@ -0,0 +1,20 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+
+/**
+ * Compact view of a book for the other services (cart, order): what they need to price and
+ * reserve an item, nothing more.
+ */
+@Data
+public class BookInfo {
+    private Long id;
+    private String title;
+    private String author;
+    private BigDecimal price;
+    private Integer stock;
+    private String isbn;
+    // change_seq of the row: the higher, the more recent
+    private Long sequence;
+}
@@ -0,0 +1,12 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class BookSliceResponse {
+    private List<BookDTO> content;
+    private Integer size;
+    private Boolean hasNext;
+    private String nextCursor;
+}
@@ -0,0 +1,20 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+import java.math.BigDecimal;
+
+/**
+ * Full state of a book after a change (stock, price, title, author), published on
+ * {@code book.catalog.exchange} with routing key {@code book.stock.changed}. {@code sequence} is
+ * the change_seq of the row: consumers keep the state with the highest one.
+ */
+@Data
+public class BookStockEvent {
+    private Long bookId;
+    private Long sequence;
+    private String title;
+    private String author;
+    private BigDecimal price;
+    private Integer stock;
+    private boolean deleted;
+}
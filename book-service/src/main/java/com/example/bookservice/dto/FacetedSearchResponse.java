@@ -0,0 +1,12 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+import org.springframework.data.domain.Page;
+import java.util.Map;
+
+@Data
+public class FacetedSearchResponse {
+    private Page<BookDTO> results;
+    // facet name -> (facet value -> number of matching books)
+    private Map<String, Map<String, Long>> facets;
+}
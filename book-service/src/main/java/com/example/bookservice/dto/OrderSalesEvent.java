@@ -0,0 +1,28 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies sold per book by an order, published by order-service on {@code order.exchange} with
+ * routing key {@code order.sales}: once when the order is placed, and once more with type
+ * {@code CANCELLED} if it is cancelled. {@code placedAt} is the order date in both cases.
+ */
+@Data
+public class OrderSalesEvent {
+    public static final String PLACED = "PLACED";
+    public static final String CANCELLED = "CANCELLED";
+
+    private Long orderId;
+    private String type;
+    private LocalDateTime placedAt;
+    private List<Line> items = new ArrayList<>();
+
+    @Data
+    public static class Line {
+        private Long bookId;
+        private Integer quantity;
+    }
+}
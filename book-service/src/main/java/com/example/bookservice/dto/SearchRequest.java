@@ -1,14 +1,19 @@
 package com.example.bookservice.dto;
 
 
+import com.example.bookservice.model.Book.BookLanguage;
 import lombok.Data;
 
 @Data
 public class SearchRequest {
+    public static final String SORT_BY_RELEVANCE = "relevance";
+
+    private String query;
     private String title;
     private String isbn;
     private String authorName;
     private Long categoryId;
+    private BookLanguage language;
     private Boolean bestSeller;
     private Boolean newRelease;
     private Double minPrice;
@@ -17,4 +22,6 @@ public class SearchRequest {
     private Integer size = 20;
     private String sortBy = "title";
     private String sortDirection = "ASC";
+    private Boolean summary = false;
+    private String cursor;
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+
+/**
+ * Published by order-service on {@code order.exchange} with routing key {@code order.stock},
+ * from its outbox: {@code COMMIT} once the order is saved, {@code RELEASE} once it is cancelled.
+ * Both can be delivered more than once.
+ */
+@Data
+public class StockReservationEvent {
+    public static final String COMMIT = "COMMIT";
+    public static final String RELEASE = "RELEASE";
+
+    private String reservationId;
+    private Long orderId;
+    private String action;
+}
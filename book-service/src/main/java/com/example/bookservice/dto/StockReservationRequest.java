@@ -0,0 +1,31 @@
+package com.example.bookservice.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class StockReservationRequest {
+
+    // Chosen by the caller so that a retried request does not reserve twice
+    @NotBlank(message = "Reservation ID is required")
+    private String reservationId;
+
+    @Valid
+    @NotEmpty(message = "At least one item is required")
+    private List<Item> items;
+
+    @Data
+    public static class Item {
+        @NotNull(message = "Book ID is required")
+        private Long bookId;
+
+        @NotNull(message = "Quantity is required")
+        @Min(value = 1, message = "Quantity must be at least 1")
+        private Integer quantity;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class StockReservationResponse {
+    private String reservationId;
+    private Boolean success;
+    private String status;
+    private List<Line> lines = new ArrayList<>();
+
+    @Data
+    public static class Line {
+        private Long bookId;
+        private Integer quantity;
+        private Boolean reserved;
+        // Copies left, only filled in for the lines that could not be reserved
+        private Integer available;
+    }
+}
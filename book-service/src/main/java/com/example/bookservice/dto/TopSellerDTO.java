@@ -0,0 +1,11 @@
+package com.example.bookservice.dto;
+
+import lombok.Data;
+
+@Data
+public class TopSellerDTO {
+    private int rank;
+    private Long bookId;
+    private long quantitySold;
+    private BookDTO book;
+}
@@ -9,7 +9,12 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "books")
+@Table(name = "books", indexes = {
+        // Keyset pagination: (sort key, id)
+        @Index(name = "idx_books_title_id", columnList = "title, id"),
+        @Index(name = "idx_books_price_id", columnList = "price, id"),
+        @Index(name = "idx_books_category_title_id", columnList = "category_id, title, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -72,6 +77,11 @@ public class Book {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Incremented on every change of the row, including the stock updates of BookRepository,
+    // so that the consumers of BookStockEvent can order the events and detect missing ones
+    @Column(name = "change_seq", nullable = false)
+    private Long changeSeq = 0L;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -81,6 +91,7 @@ public class Book {
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        changeSeq = changeSeq + 1;
     }
 
     public enum BookLanguage {
@@ -0,0 +1,31 @@
+package com.example.bookservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Copies of a book sold during one hour ({@code epochHour} counted from the epoch), written by
+ * {@code SalesRanking}. The rolling sales windows are sums over these rows.
+ */
+@Entity
+@Table(name = "book_sales_hourly",
+        uniqueConstraints = @UniqueConstraint(name = "uk_book_sales_hourly_book_hour", columnNames = {"book_id", "epoch_hour"}),
+        indexes = @Index(name = "idx_book_sales_hourly_hour", columnList = "epoch_hour"))
+@Data
+@NoArgsConstructor
+public class BookSalesBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "book_id", nullable = false)
+    private Long bookId;
+
+    @Column(name = "epoch_hour", nullable = false)
+    private Long epochHour;
+
+    @Column(nullable = false)
+    private Long quantity;
+}
@@ -0,0 +1,32 @@
+package com.example.bookservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A sales event already counted in {@code book_sales_hourly}, written in the same transaction as
+ * its quantities. The unique key on (order, type) makes a redelivered event, on any replica, a
+ * no-op. Rows are kept as long as the event can still be counted, i.e. for the longest window.
+ */
+@Entity
+@Table(name = "book_sales_events",
+        uniqueConstraints = @UniqueConstraint(name = "uk_book_sales_events_order_type", columnNames = {"order_id", "type"}),
+        indexes = @Index(name = "idx_book_sales_events_hour", columnList = "epoch_hour"))
+@Data
+@NoArgsConstructor
+public class CountedSalesEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+
+    @Column(nullable = false, length = 20)
+    private String type;
+
+    @Column(name = "epoch_hour", nullable = false)
+    private Long epochHour;
+}
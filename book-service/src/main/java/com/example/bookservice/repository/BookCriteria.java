@@ -0,0 +1,22 @@
+package com.example.bookservice.repository;
+
+import com.example.bookservice.model.Book.BookLanguage;
+import lombok.Data;
+import java.util.Collection;
+
+@Data
+public class BookCriteria {
+    private Collection<Long> ids;
+    private String isbn;
+    private Long categoryId;
+    private BookLanguage language;
+    private Boolean bestSeller;
+    private Boolean newRelease;
+    private Double minPrice;
+    private Double maxPrice;
+
+    public boolean hasAttributeFilters() {
+        return isbn != null || categoryId != null || language != null || bestSeller != null || newRelease != null
+                || minPrice != null || maxPrice != null;
+    }
+}
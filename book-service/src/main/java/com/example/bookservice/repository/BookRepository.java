@@ -4,14 +4,16 @@ import com.example.bookservice.model.Book;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, BookRepositoryCustom {
 
     Optional<Book> findByIsbn(String isbn);
 
@@ -25,25 +27,37 @@ public interface BookRepository extends JpaRepository<Book, Long> {
 
     Page<Book> findByNewReleaseTrue(Pageable pageable);
 
-    @Query("SELECT b FROM Book b WHERE " +
-            "(:title IS NULL OR LOWER(b.title) LIKE LOWER(CONCAT('%', :title, '%'))) AND " +
-            "(:isbn IS NULL OR b.isbn = :isbn) AND " +
-            "(:authorName IS NULL OR " +
-            "LOWER(CONCAT(b.author.firstName, ' ', b.author.lastName)) LIKE LOWER(CONCAT('%', :authorName, '%'))) AND " +
-            "(:categoryId IS NULL OR b.category.id = :categoryId) AND " +
-            "(:bestSeller IS NULL OR b.bestSeller = :bestSeller) AND " +
-            "(:newRelease IS NULL OR b.newRelease = :newRelease) AND " +
-            "(:minPrice IS NULL OR b.price >= :minPrice) AND " +
-            "(:maxPrice IS NULL OR b.price <= :maxPrice)")
-    Page<Book> searchBooks(@Param("title") String title,
-                           @Param("isbn") String isbn,
-                           @Param("authorName") String authorName,
-                           @Param("categoryId") Long categoryId,
-                           @Param("bestSeller") Boolean bestSeller,
-                           @Param("newRelease") Boolean newRelease,
-                           @Param("minPrice") Double minPrice,
-                           @Param("maxPrice") Double maxPrice,
-                           Pageable pageable);
+    @Query("SELECT b.id, b.title, b.description, b.isbn, b.author.firstName, b.author.lastName FROM Book b")
+    List<Object[]> findSearchableFields();
+
+    @Query("SELECT b.id, b.isbn, b.category.id, b.language, b.price, b.bestSeller, b.newRelease FROM Book b")
+    List<Object[]> findFacetFields();
+
+    @Query("SELECT b.id, b.title, b.author.firstName, b.author.lastName, b.price, b.quantity, b.isbn, b.changeSeq " +
+           "FROM Book b WHERE b.id IN :ids")
+    List<Object[]> findBookInfos(@Param("ids") Collection<Long> ids);
+
+    // Keyset pagination over the whole catalog, for the snapshot read by other services
+    @Query("SELECT b.id, b.title, b.author.firstName, b.author.lastName, b.price, b.quantity, b.isbn, b.changeSeq " +
+           "FROM Book b WHERE b.id > :afterId ORDER BY b.id")
+    List<Object[]> findBookInfosAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT b.id, b.quantity FROM Book b WHERE b.id IN :ids")
+    List<Object[]> findStockLevels(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT b.id, b.isbn FROM Book b WHERE b.id IN :ids")
+    List<Object[]> findIsbns(@Param("ids") Collection<Long> ids);
+
+    // Conditional decrement: the row is only updated if enough copies are left, so two
+    // concurrent reservations can never take the same copy
+    @Modifying
+    @Query("UPDATE Book b SET b.quantity = b.quantity - :quantity, b.changeSeq = b.changeSeq + 1 " +
+           "WHERE b.id = :id AND b.quantity >= :quantity")
+    int reserveStock(@Param("id") Long id, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("UPDATE Book b SET b.quantity = b.quantity + :quantity, b.changeSeq = b.changeSeq + 1 WHERE b.id = :id")
+    int releaseStock(@Param("id") Long id, @Param("quantity") int quantity);
 
     List<Book> findTop10ByOrderByCreatedAtDesc();
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.example.bookservice.repository;
+
+import com.example.bookservice.dto.BookDTO;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import java.util.List;
+
+public interface BookRepositoryCustom {
+
+    /**
+     * Loads matching books as DTOs with one flat query joining author, editor and category
+     * (plus a count query for paged requests). In summary mode the book description and
+     * the author biography are not selected.
+     */
+    Page<BookDTO> findBookViews(BookCriteria criteria, boolean summary, Pageable pageable);
+
+    /**
+     * Ids of the matching books, in no particular order, without joining any relation.
+     */
+    List<Long> findBookIds(BookCriteria criteria);
+
+    /**
+     * Keyset variant of {@link #findBookViews}: returns up to {@code size} books that sort after
+     * ({@code lastValue}, {@code lastId}) without any offset scan or count query. A null
+     * {@code lastId} starts from the beginning.
+     */
+    Slice<BookDTO> findBookViewsAfter(BookCriteria criteria, boolean summary, Sort.Order order,
+                                      Object lastValue, Long lastId, int size);
+}
@@ -0,0 +1,239 @@
+package com.example.bookservice.repository;
+
+import com.example.bookservice.dto.AuthorDTO;
+import com.example.bookservice.dto.BookDTO;
+import com.example.bookservice.dto.CategoryDTO;
+import com.example.bookservice.dto.EditorDTO;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.Book.BookLanguage;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class BookRepositoryCustomImpl implements BookRepositoryCustom {
+
+    private static final String BOOK_COLUMNS =
+            "b.id AS id, b.isbn AS isbn, b.title AS title, b.price AS price, b.quantity AS quantity, " +
+            "b.pages AS pages, b.publicationDate AS publicationDate, b.coverImageUrl AS coverImageUrl, " +
+            "b.language AS language, b.bestSeller AS bestSeller, b.newRelease AS newRelease, " +
+            "b.weight AS weight, b.dimensions AS dimensions, ";
+
+    private static final String RELATION_COLUMNS =
+            "a.id AS authorId, a.firstName AS authorFirstName, a.lastName AS authorLastName, " +
+            "a.birthDate AS authorBirthDate, a.nationality AS authorNationality, a.photoUrl AS authorPhotoUrl, " +
+            "e.id AS editorId, e.name AS editorName, e.address AS editorAddress, e.website AS editorWebsite, " +
+            "e.email AS editorEmail, e.phone AS editorPhone, " +
+            "c.id AS categoryId, c.name AS categoryName, c.description AS categoryDescription, " +
+            "p.id AS parentCategoryId, p.name AS parentCategoryName";
+
+    private static final String DETAIL_COLUMNS = "b.description AS description, a.biography AS authorBiography, ";
+
+    private static final String FROM =
+            " FROM Book b JOIN b.author a JOIN b.editor e JOIN b.category c LEFT JOIN c.parentCategory p";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<BookDTO> findBookViews(BookCriteria criteria, boolean summary, Pageable pageable) {
+        Map<String, Object> parameters = new HashMap<>();
+        String where = buildWhereClause(criteria, parameters);
+
+        List<BookDTO> content = pageable.isPaged()
+                ? selectViews(where, parameters, pageable.getSort(), summary,
+                        (int) pageable.getOffset(), pageable.getPageSize())
+                : selectViews(where, parameters, pageable.getSort(), summary, 0, -1);
+
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            TypedQuery<Long> countQuery = entityManager.createQuery(
+                    "SELECT COUNT(b) FROM Book b" + where, Long.class);
+            parameters.forEach(countQuery::setParameter);
+            return countQuery.getSingleResult();
+        });
+    }
+
+    @Override
+    public List<Long> findBookIds(BookCriteria criteria) {
+        Map<String, Object> parameters = new HashMap<>();
+        TypedQuery<Long> query = entityManager.createQuery(
+                "SELECT b.id FROM Book b" + buildWhereClause(criteria, parameters), Long.class);
+        parameters.forEach(query::setParameter);
+        return query.getResultList();
+    }
+
+    @Override
+    public Slice<BookDTO> findBookViewsAfter(BookCriteria criteria, boolean summary, Sort.Order order,
+                                             Object lastValue, Long lastId, int size) {
+        Map<String, Object> parameters = new HashMap<>();
+        StringBuilder where = new StringBuilder(buildWhereClause(criteria, parameters));
+
+        if (lastId != null) {
+            String comparison = order.isAscending() ? " > " : " < ";
+            if ("id".equals(order.getProperty())) {
+                where.append(" AND b.id").append(comparison).append(":lastId");
+            } else {
+                // Rows with an equal sort key are ordered by ascending id (see buildOrderByClause)
+                String property = "b." + order.getProperty();
+                where.append(" AND (").append(property).append(comparison).append(":lastValue")
+                        .append(" OR (").append(property).append(" = :lastValue AND b.id > :lastId))");
+                parameters.put("lastValue", lastValue);
+            }
+            parameters.put("lastId", lastId);
+        }
+
+        // Fetch one extra row to know whether there is a next slice
+        Sort sort = Sort.by(order);
+        List<BookDTO> rows = selectViews(where.toString(), parameters, sort, summary, 0, size + 1);
+        boolean hasNext = rows.size() > size;
+        List<BookDTO> content = hasNext ? rows.subList(0, size) : rows;
+        return new SliceImpl<>(content, PageRequest.of(0, size, sort), hasNext);
+    }
+
+    private List<BookDTO> selectViews(String where, Map<String, Object> parameters, Sort sort,
+                                      boolean summary, int firstResult, int maxResults) {
+        String select = "SELECT " + BOOK_COLUMNS + (summary ? "" : DETAIL_COLUMNS) + RELATION_COLUMNS;
+        TypedQuery<Tuple> query = entityManager.createQuery(
+                select + FROM + where + buildOrderByClause(sort), Tuple.class);
+        parameters.forEach(query::setParameter);
+
+        if (maxResults >= 0) {
+            query.setFirstResult(firstResult);
+            query.setMaxResults(maxResults);
+        }
+
+        return query.getResultList().stream()
+                .map(row -> toDTO(row, summary))
+                .collect(Collectors.toList());
+    }
+
+    private String buildWhereClause(BookCriteria criteria, Map<String, Object> parameters) {
+        StringBuilder where = new StringBuilder(" WHERE 1 = 1");
+        if (criteria.getIds() != null) {
+            where.append(" AND b.id IN :ids");
+            parameters.put("ids", criteria.getIds());
+        }
+        if (criteria.getIsbn() != null) {
+            where.append(" AND b.isbn = :isbn");
+            parameters.put("isbn", criteria.getIsbn());
+        }
+        if (criteria.getCategoryId() != null) {
+            where.append(" AND b.category.id = :categoryId");
+            parameters.put("categoryId", criteria.getCategoryId());
+        }
+        if (criteria.getLanguage() != null) {
+            where.append(" AND b.language = :language");
+            parameters.put("language", criteria.getLanguage());
+        }
+        if (criteria.getBestSeller() != null) {
+            where.append(" AND b.bestSeller = :bestSeller");
+            parameters.put("bestSeller", criteria.getBestSeller());
+        }
+        if (criteria.getNewRelease() != null) {
+            where.append(" AND b.newRelease = :newRelease");
+            parameters.put("newRelease", criteria.getNewRelease());
+        }
+        if (criteria.getMinPrice() != null) {
+            where.append(" AND b.price >= :minPrice");
+            parameters.put("minPrice", BigDecimal.valueOf(criteria.getMinPrice()));
+        }
+        if (criteria.getMaxPrice() != null) {
+            where.append(" AND b.price <= :maxPrice");
+            parameters.put("maxPrice", BigDecimal.valueOf(criteria.getMaxPrice()));
+        }
+        return where.toString();
+    }
+
+    private String buildOrderByClause(Sort sort) {
+        if (sort.isUnsorted()) {
+            return "";
+        }
+        StringBuilder orderBy = new StringBuilder(" ORDER BY ");
+        boolean orderedById = false;
+        for (Sort.Order order : sort) {
+            // Only plain Book attributes can be sorted on; this also keeps client input out of the JPQL
+            try {
+                entityManager.getMetamodel().entity(Book.class).getSingularAttribute(order.getProperty());
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("Invalid sort property: " + order.getProperty());
+            }
+            orderBy.append("b.").append(order.getProperty())
+                    .append(order.isAscending() ? " ASC" : " DESC")
+                    .append(", ");
+            orderedById |= "id".equals(order.getProperty());
+        }
+        if (orderedById) {
+            return orderBy.substring(0, orderBy.length() - 2);
+        }
+        // Tie-breaker so that pages stay stable across requests
+        return orderBy.append("b.id ASC").toString();
+    }
+
+    private BookDTO toDTO(Tuple row, boolean summary) {
+        BookDTO dto = new BookDTO();
+        dto.setId(row.get("id", Long.class));
+        dto.setIsbn(row.get("isbn", String.class));
+        dto.setTitle(row.get("title", String.class));
+        dto.setPrice(row.get("price", BigDecimal.class));
+        dto.setQuantity(row.get("quantity", Integer.class));
+        dto.setPages(row.get("pages", Integer.class));
+        dto.setPublicationDate(row.get("publicationDate", LocalDate.class));
+        dto.setCoverImageUrl(row.get("coverImageUrl", String.class));
+        dto.setLanguage(row.get("language", BookLanguage.class));
+        dto.setBestSeller(row.get("bestSeller", Boolean.class));
+        dto.setNewRelease(row.get("newRelease", Boolean.class));
+        dto.setWeight(row.get("weight", BigDecimal.class));
+        dto.setDimensions(row.get("dimensions", String.class));
+
+        AuthorDTO authorDTO = new AuthorDTO();
+        authorDTO.setId(row.get("authorId", Long.class));
+        authorDTO.setFirstName(row.get("authorFirstName", String.class));
+        authorDTO.setLastName(row.get("authorLastName", String.class));
+        authorDTO.setBirthDate(row.get("authorBirthDate", LocalDate.class));
+        authorDTO.setNationality(row.get("authorNationality", String.class));
+        authorDTO.setPhotoUrl(row.get("authorPhotoUrl", String.class));
+        dto.setAuthor(authorDTO);
+
+        EditorDTO editorDTO = new EditorDTO();
+        editorDTO.setId(row.get("editorId", Long.class));
+        editorDTO.setName(row.get("editorName", String.class));
+        editorDTO.setAddress(row.get("editorAddress", String.class));
+        editorDTO.setWebsite(row.get("editorWebsite", String.class));
+        editorDTO.setEmail(row.get("editorEmail", String.class));
+        editorDTO.setPhone(row.get("editorPhone", String.class));
+        dto.setEditor(editorDTO);
+
+        CategoryDTO categoryDTO = new CategoryDTO();
+        categoryDTO.setId(row.get("categoryId", Long.class));
+        categoryDTO.setName(row.get("categoryName", String.class));
+        categoryDTO.setDescription(row.get("categoryDescription", String.class));
+        Long parentCategoryId = row.get("parentCategoryId", Long.class);
+        if (parentCategoryId != null) {
+            CategoryDTO parentDTO = new CategoryDTO();
+            parentDTO.setId(parentCategoryId);
+            parentDTO.setName(row.get("parentCategoryName", String.class));
+            categoryDTO.setParentCategory(parentDTO);
+        }
+        dto.setCategory(categoryDTO);
+
+        if (!summary) {
+            dto.setDescription(row.get("description", String.class));
+            authorDTO.setBiography(row.get("authorBiography", String.class));
+        }
+
+        return dto;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.bookservice.repository;
+
+import com.example.bookservice.model.BookSalesBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface BookSalesBucketRepository extends JpaRepository<BookSalesBucket, Long> {
+
+    @Modifying
+    @Query(value = "INSERT INTO book_sales_hourly (book_id, epoch_hour, quantity) VALUES (:bookId, :epochHour, :quantity) " +
+            "ON DUPLICATE KEY UPDATE quantity = quantity + VALUES(quantity)", nativeQuery = true)
+    void addQuantity(Long bookId, long epochHour, long quantity);
+
+    // Per book: copies sold since dayFrom, weekFrom and monthFrom (hours from the epoch)
+    @Query("SELECT b.bookId, " +
+            "SUM(CASE WHEN b.epochHour >= :dayFrom THEN b.quantity ELSE 0 END), " +
+            "SUM(CASE WHEN b.epochHour >= :weekFrom THEN b.quantity ELSE 0 END), " +
+            "SUM(b.quantity) " +
+            "FROM BookSalesBucket b WHERE b.epochHour >= :monthFrom GROUP BY b.bookId")
+    List<Object[]> sumWindows(long dayFrom, long weekFrom, long monthFrom);
+
+    @Modifying
+    @Query("DELETE FROM BookSalesBucket b WHERE b.epochHour < :epochHour")
+    int deleteOlderThan(long epochHour);
+}
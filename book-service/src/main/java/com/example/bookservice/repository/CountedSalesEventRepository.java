@@ -0,0 +1,21 @@
+package com.example.bookservice.repository;
+
+import com.example.bookservice.model.CountedSalesEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CountedSalesEventRepository extends JpaRepository<CountedSalesEvent, Long> {
+
+    // 1 if the event was not counted yet, 0 if it already was
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO book_sales_events (order_id, type, epoch_hour) VALUES (:orderId, :type, :epochHour)",
+            nativeQuery = true)
+    int claim(Long orderId, String type, long epochHour);
+
+    @Modifying
+    @Query("DELETE FROM CountedSalesEvent e WHERE e.epochHour < :epochHour")
+    int deleteOlderThan(long epochHour);
+}
@@ -0,0 +1,53 @@
+package com.example.bookservice.repository;
+
+import com.example.bookservice.model.StockReservation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+
+    List<StockReservation> findByReservationIdOrderByBookId(String reservationId);
+
+    @Query("SELECT DISTINCT r.reservationId FROM StockReservation r " +
+           "WHERE r.status = com.example.bookservice.model.StockReservation.ReservationStatus.RESERVED " +
+           "AND r.expiresAt < :now")
+    List<String> findExpiredReservationIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Guarded transitions of one line: 1 if this call moved it, 0 if it was already past it. The
+    // row lock taken by the UPDATE serializes concurrent transitions of the same line
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE StockReservation r SET " +
+           "r.status = com.example.bookservice.model.StockReservation.ReservationStatus.COMMITTED, " +
+           "r.expiresAt = NULL, r.updatedAt = :now " +
+           "WHERE r.reservationId = :reservationId AND r.bookId = :bookId " +
+           "AND r.status <> com.example.bookservice.model.StockReservation.ReservationStatus.RELEASED")
+    int commitLine(@Param("reservationId") String reservationId, @Param("bookId") Long bookId,
+                   @Param("now") LocalDateTime now);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE StockReservation r SET " +
+           "r.status = com.example.bookservice.model.StockReservation.ReservationStatus.RELEASED, " +
+           "r.expiresAt = NULL, r.updatedAt = :now " +
+           "WHERE r.reservationId = :reservationId AND r.bookId = :bookId " +
+           "AND r.status <> com.example.bookservice.model.StockReservation.ReservationStatus.RELEASED")
+    int releaseLine(@Param("reservationId") String reservationId, @Param("bookId") Long bookId,
+                    @Param("now") LocalDateTime now);
+
+    // Only a line still reserved past its expiry: a committed one keeps its stock
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE StockReservation r SET " +
+           "r.status = com.example.bookservice.model.StockReservation.ReservationStatus.RELEASED, " +
+           "r.expiresAt = NULL, r.updatedAt = :now " +
+           "WHERE r.reservationId = :reservationId AND r.bookId = :bookId " +
+           "AND r.status = com.example.bookservice.model.StockReservation.ReservationStatus.RESERVED " +
+           "AND r.expiresAt < :now")
+    int expireLine(@Param("reservationId") String reservationId, @Param("bookId") Long bookId,
+                   @Param("now") LocalDateTime now);
+}
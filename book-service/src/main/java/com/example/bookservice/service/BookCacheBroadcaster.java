@@ -0,0 +1,40 @@
+package com.example.bookservice.service;
+
+import com.example.bookservice.config.RabbitMQConfig;
+import com.example.bookservice.dto.BookCacheInvalidation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the catalog caches of all book-service replicas coherent by fanning out invalidations.
+ */
+@Service
+@ConditionalOnProperty(name = "book.cache.broadcast.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class BookCacheBroadcaster {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final BookCacheInvalidator bookCacheInvalidator;
+
+    public void publish(Long bookId, String isbn) {
+        try {
+            BookCacheInvalidation event = new BookCacheInvalidation();
+            event.setBookId(bookId);
+            event.setIsbn(isbn);
+            rabbitTemplate.convertAndSend(RabbitMQConfig.BOOK_CACHE_EXCHANGE, "", event);
+        } catch (Exception e) {
+            // The TTL still bounds how long other replicas can serve the stale entry
+            log.error("Failed to broadcast cache invalidation for book {}", bookId, e);
+        }
+    }
+
+    @RabbitListener(queues = "#{bookCacheQueue.name}")
+    public void onInvalidation(BookCacheInvalidation event) {
+        bookCacheInvalidator.evictLocal(event.getBookId(), event.getIsbn());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.bookservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookCacheInvalidator {
+
+    public static final String BOOKS_CACHE = "books";
+    public static final String BOOKS_BY_ISBN_CACHE = "booksByIsbn";
+
+    private final CacheManager cacheManager;
+    private final ObjectProvider<BookCacheBroadcaster> broadcaster;
+
+    /**
+     * Evicts a book from the local caches and, when enabled, from the other replicas. Inside a
+     * transaction this happens after commit, so a concurrent read cannot re-cache the old row.
+     */
+    public void invalidate(Long bookId, String isbn) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictAndBroadcast(bookId, isbn);
+                }
+            });
+        } else {
+            evictAndBroadcast(bookId, isbn);
+        }
+    }
+
+    public void evictLocal(Long bookId, String isbn) {
+        evict(BOOKS_CACHE, bookId);
+        evict(BOOKS_BY_ISBN_CACHE, isbn);
+    }
+
+    private void evictAndBroadcast(Long bookId, String isbn) {
+        evictLocal(bookId, isbn);
+        broadcaster.ifAvailable(b -> b.publish(bookId, isbn));
+    }
+
+    private void evict(String cacheName, Object key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null && key != null) {
+            cache.evict(key);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.bookservice.service;
+
+import com.example.bookservice.config.RabbitMQConfig;
+import com.example.bookservice.dto.BookCatalogEvent;
+import com.example.bookservice.dto.BookInfo;
+import com.example.bookservice.dto.BookStockEvent;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.repository.BookRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells the other services (cart-service) that a book changed, so that they can update their
+ * copies without calling back: {@link BookCatalogEvent} when its title, author or price
+ * changed, {@link BookStockEvent} with its full state after any change, stock included.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookCatalogEventPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final BookRepository bookRepository;
+
+    /**
+     * Publishes the current catalog data of the book. Inside a transaction the event is sent
+     * after commit, so consumers never see a change that was rolled back.
+     */
+    public void bookChanged(Book book) {
+        BookCatalogEvent event = new BookCatalogEvent();
+        event.setBookId(book.getId());
+        event.setTitle(book.getTitle());
+        event.setAuthor(authorName(book));
+        event.setPrice(book.getPrice());
+        event.setChangedAt(LocalDateTime.now());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(event);
+                }
+            });
+        } else {
+            send(event);
+        }
+    }
+
+    /**
+     * Publishes the state of the books after the current transaction. The rows are read just
+     * before commit, once every change of the transaction has been flushed, so the events carry
+     * the committed values and sequence numbers. A book that no longer exists is published as
+     * deleted.
+     */
+    public void stockChanged(Collection<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(bookIds);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                private List<BookStockEvent> events;
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    events = stockEvents(ids);
+                }
+
+                @Override
+                public void afterCommit() {
+                    events.forEach(event -> send(RabbitMQConfig.BOOK_STOCK_CHANGED_KEY, event.getBookId(), event));
+                }
+            });
+        } else {
+            stockEvents(ids).forEach(event -> send(RabbitMQConfig.BOOK_STOCK_CHANGED_KEY, event.getBookId(), event));
+        }
+    }
+
+    static String authorName(Book book) {
+        if (book.getAuthor() == null) {
+            return null;
+        }
+        return book.getAuthor().getFirstName() + " " + book.getAuthor().getLastName();
+    }
+
+    private List<BookStockEvent> stockEvents(List<Long> bookIds) {
+        Map<Long, BookStockEvent> events = new LinkedHashMap<>();
+        for (Object[] row : bookRepository.findBookInfos(bookIds)) {
+            BookInfo info = BookService.toBookInfo(row);
+            BookStockEvent event = new BookStockEvent();
+            event.setBookId(info.getId());
+            event.setSequence(info.getSequence());
+            event.setTitle(info.getTitle());
+            event.setAuthor(info.getAuthor());
+            event.setPrice(info.getPrice());
+            event.setStock(info.getStock());
+            events.put(info.getId(), event);
+        }
+        for (Long bookId : bookIds) {
+            if (!events.containsKey(bookId)) {
+                // Deleted: no later state can follow
+                BookStockEvent event = new BookStockEvent();
+                event.setBookId(bookId);
+                event.setSequence(Long.MAX_VALUE);
+                event.setDeleted(true);
+                events.put(bookId, event);
+            }
+        }
+        return new ArrayList<>(events.values());
+    }
+
+    private void send(BookCatalogEvent event) {
+        send(RabbitMQConfig.BOOK_CATALOG_CHANGED_KEY, event.getBookId(), event);
+    }
+
+    private void send(String routingKey, Long bookId, Object event) {
+        try {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.BOOK_CATALOG_EXCHANGE, routingKey, event);
+        } catch (Exception e) {
+            log.error("Failed to publish {} for book {}", routingKey, bookId, e);
+        }
+    }
+}
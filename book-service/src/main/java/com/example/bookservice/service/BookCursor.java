@@ -0,0 +1,108 @@
+package com.example.bookservice.service;
+
+import com.example.bookservice.dto.BookDTO;
+import com.example.bookservice.dto.SearchRequest;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Set;
+
+/**
+ * Continuation token for keyset pagination: the sort key and id of the last book returned.
+ * It is handed to clients as an opaque Base64 string.
+ */
+@Getter
+@AllArgsConstructor
+class BookCursor {
+
+    // Only non-null columns can be used as a keyset, otherwise rows with a null key would be skipped
+    private static final Set<String> KEYSET_PROPERTIES = Set.of("id", "title", "isbn", "price", "quantity");
+    private static final String VERSION = "v1";
+
+    private final String property;
+    private final Sort.Direction direction;
+    private final Long lastId;
+    private final String value;
+
+    static void checkSupported(Sort.Order order) {
+        if (!KEYSET_PROPERTIES.contains(order.getProperty())) {
+            throw new RuntimeException("Cursor pagination is not supported when sorting by: " + order.getProperty());
+        }
+    }
+
+    static BookCursor after(Sort.Order order, BookDTO last) {
+        String value;
+        switch (order.getProperty()) {
+            case "title":
+                value = last.getTitle();
+                break;
+            case "isbn":
+                value = last.getIsbn();
+                break;
+            case "price":
+                value = last.getPrice().toPlainString();
+                break;
+            case "quantity":
+                value = String.valueOf(last.getQuantity());
+                break;
+            default:
+                value = String.valueOf(last.getId());
+        }
+        return new BookCursor(order.getProperty(), order.getDirection(), last.getId(), value);
+    }
+
+    static BookCursor afterRanked(Long lastId, float score) {
+        return new BookCursor(SearchRequest.SORT_BY_RELEVANCE, Sort.Direction.DESC, lastId, Float.toString(score));
+    }
+
+    /**
+     * Decodes a token issued for the same sort order, or returns {@code null} for the first page.
+     */
+    static BookCursor decode(String token, Sort.Order order) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 5);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+        if (parts.length != 5 || !VERSION.equals(parts[0])) {
+            throw new RuntimeException("Invalid cursor");
+        }
+        if (!parts[1].equals(order.getProperty()) || !parts[2].equals(order.getDirection().name())) {
+            throw new RuntimeException("Cursor does not match the requested sort order");
+        }
+        try {
+            return new BookCursor(parts[1], order.getDirection(), Long.valueOf(parts[3]), parts[4]);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid cursor");
+        }
+    }
+
+    String encode() {
+        String raw = String.join(":", VERSION, property, direction.name(), String.valueOf(lastId), value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Object typedValue() {
+        switch (property) {
+            case "price":
+                return new BigDecimal(value);
+            case "quantity":
+                return Integer.valueOf(value);
+            case "id":
+                return Long.valueOf(value);
+            default:
+                return value;
+        }
+    }
+
+    float score() {
+        return Float.parseFloat(value);
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.bookservice.service;
+
+import com.example.bookservice.dto.SearchRequest;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.Book.BookLanguage;
+import com.example.bookservice.repository.BookRepository;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * Per-facet bitsets over the catalog (category, language, price bucket, best-seller and
+ * new-release flags). Each book gets a dense document number, so facet counts for a search
+ * are bitset intersections instead of one GROUP BY query per facet.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookFacetIndex {
+
+    public static final String CATEGORY = "category";
+    public static final String LANGUAGE = "language";
+    public static final String PRICE = "price";
+    public static final String BEST_SELLER = "bestSeller";
+    public static final String NEW_RELEASE = "newRelease";
+
+    private final BookRepository bookRepository;
+
+    @Value("${book.facets.price-buckets:10,20,50,100}")
+    private BigDecimal[] priceBoundaries;
+
+    // Document number -> facet attributes, null while the number is free
+    private final List<FacetEntry> documents = new ArrayList<>();
+    private final Map<Long, Integer> documentByBookId = new HashMap<>();
+    // Numbers of deleted books, handed out again before the bitsets grow
+    private final Deque<Integer> freeDocuments = new ArrayDeque<>();
+
+    private final BitSet live = new BitSet();
+    private final Map<Long, BitSet> byCategory = new HashMap<>();
+    private final Map<BookLanguage, BitSet> byLanguage = new EnumMap<>(BookLanguage.class);
+    private final Map<Integer, BitSet> byPriceBucket = new HashMap<>();
+    private final BitSet bestSellers = new BitSet();
+    private final BitSet newReleases = new BitSet();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        List<Object[]> rows = bookRepository.findFacetFields();
+
+        lock.writeLock().lock();
+        try {
+            documents.clear();
+            documentByBookId.clear();
+            freeDocuments.clear();
+            live.clear();
+            byCategory.clear();
+            byLanguage.clear();
+            byPriceBucket.clear();
+            bestSellers.clear();
+            newReleases.clear();
+            for (Object[] row : rows) {
+                addDocument(new FacetEntry((Long) row[0], (String) row[1], (Long) row[2], (BookLanguage) row[3],
+                        (BigDecimal) row[4], Boolean.TRUE.equals(row[5]), Boolean.TRUE.equals(row[6])));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Facet index built: {} books", rows.size());
+    }
+
+    public void index(Book book) {
+        FacetEntry entry = new FacetEntry(book.getId(), book.getIsbn(),
+                book.getCategory() != null ? book.getCategory().getId() : null, book.getLanguage(),
+                book.getPrice(), Boolean.TRUE.equals(book.getBestSeller()), Boolean.TRUE.equals(book.getNewRelease()));
+
+        lock.writeLock().lock();
+        try {
+            // An updated book keeps its document number
+            Integer doc = documentByBookId.get(book.getId());
+            if (doc != null) {
+                clearDocument(doc);
+                setDocument(doc, entry);
+            } else {
+                addDocument(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long bookId) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(bookId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Counts, for every facet value, the books matching the search. The filter on a facet is
+     * ignored when counting that same facet, so the sidebar still shows the alternatives.
+     *
+     * @param textMatches ids matched by the text criteria, or {@code null} when there are none
+     */
+    public Map<String, Map<String, Long>> count(SearchRequest searchRequest, Collection<Long> textMatches) {
+        lock.readLock().lock();
+        try {
+            BitSet base = (BitSet) live.clone();
+            if (textMatches != null) {
+                base.and(toBitSet(textMatches));
+            }
+            if (searchRequest.getIsbn() != null) {
+                base.and(matching(entry -> searchRequest.getIsbn().equals(entry.isbn)));
+            }
+
+            Map<String, BitSet> filters = new LinkedHashMap<>();
+            if (searchRequest.getCategoryId() != null) {
+                filters.put(CATEGORY, copyOf(byCategory.get(searchRequest.getCategoryId())));
+            }
+            if (searchRequest.getLanguage() != null) {
+                filters.put(LANGUAGE, copyOf(byLanguage.get(searchRequest.getLanguage())));
+            }
+            if (searchRequest.getMinPrice() != null || searchRequest.getMaxPrice() != null) {
+                filters.put(PRICE, matching(entry -> inPriceRange(entry.price,
+                        searchRequest.getMinPrice(), searchRequest.getMaxPrice())));
+            }
+            if (searchRequest.getBestSeller() != null) {
+                filters.put(BEST_SELLER, flag(bestSellers, searchRequest.getBestSeller()));
+            }
+            if (searchRequest.getNewRelease() != null) {
+                filters.put(NEW_RELEASE, flag(newReleases, searchRequest.getNewRelease()));
+            }
+
+            Map<String, Map<String, Long>> facets = new LinkedHashMap<>();
+            facets.put(CATEGORY, countValues(base, filters, CATEGORY, byCategory));
+            facets.put(LANGUAGE, countValues(base, filters, LANGUAGE, byLanguage));
+            facets.put(PRICE, countPriceBuckets(base, filters));
+
+            Map<Boolean, BitSet> bestSellerValues = Map.of(true, flag(bestSellers, true), false, flag(bestSellers, false));
+            facets.put(BEST_SELLER, countValues(base, filters, BEST_SELLER, bestSellerValues));
+            Map<Boolean, BitSet> newReleaseValues = Map.of(true, flag(newReleases, true), false, flag(newReleases, false));
+            facets.put(NEW_RELEASE, countValues(base, filters, NEW_RELEASE, newReleaseValues));
+            return facets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <K> Map<String, Long> countValues(BitSet base, Map<String, BitSet> filters,
+                                              String facet, Map<K, BitSet> values) {
+        BitSet scope = applyOtherFilters(base, filters, facet);
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<K, BitSet> value : values.entrySet()) {
+            long count = intersectionSize(scope, value.getValue());
+            if (count > 0) {
+                counts.put(String.valueOf(value.getKey()), count);
+            }
+        }
+        return counts;
+    }
+
+    private Map<String, Long> countPriceBuckets(BitSet base, Map<String, BitSet> filters) {
+        BitSet scope = applyOtherFilters(base, filters, PRICE);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int bucket = 0; bucket <= priceBoundaries.length; bucket++) {
+            BitSet docs = byPriceBucket.get(bucket);
+            long count = docs != null ? intersectionSize(scope, docs) : 0;
+            if (count > 0) {
+                counts.put(priceBucketLabel(bucket), count);
+            }
+        }
+        return counts;
+    }
+
+    private BitSet applyOtherFilters(BitSet base, Map<String, BitSet> filters, String facet) {
+        BitSet scope = (BitSet) base.clone();
+        filters.forEach((name, filter) -> {
+            if (!name.equals(facet)) {
+                scope.and(filter);
+            }
+        });
+        return scope;
+    }
+
+    private static long intersectionSize(BitSet a, BitSet b) {
+        BitSet intersection = (BitSet) a.clone();
+        intersection.and(b);
+        return intersection.cardinality();
+    }
+
+    private void addDocument(FacetEntry entry) {
+        Integer doc = freeDocuments.poll();
+        if (doc == null) {
+            doc = documents.size();
+            documents.add(null);
+        }
+        documentByBookId.put(entry.bookId, doc);
+        setDocument(doc, entry);
+    }
+
+    private void setDocument(int doc, FacetEntry entry) {
+        documents.set(doc, entry);
+        live.set(doc);
+        if (entry.categoryId != null) {
+            byCategory.computeIfAbsent(entry.categoryId, id -> new BitSet()).set(doc);
+        }
+        if (entry.language != null) {
+            byLanguage.computeIfAbsent(entry.language, language -> new BitSet()).set(doc);
+        }
+        if (entry.price != null) {
+            byPriceBucket.computeIfAbsent(priceBucket(entry.price), bucket -> new BitSet()).set(doc);
+        }
+        bestSellers.set(doc, entry.bestSeller);
+        newReleases.set(doc, entry.newRelease);
+    }
+
+    private void removeDocument(Long bookId) {
+        Integer doc = documentByBookId.remove(bookId);
+        if (doc == null) {
+            return;
+        }
+        clearDocument(doc);
+        freeDocuments.push(doc);
+    }
+
+    private void clearDocument(int doc) {
+        documents.set(doc, null);
+        live.clear(doc);
+        byCategory.values().forEach(bits -> bits.clear(doc));
+        byLanguage.values().forEach(bits -> bits.clear(doc));
+        byPriceBucket.values().forEach(bits -> bits.clear(doc));
+        bestSellers.clear(doc);
+        newReleases.clear(doc);
+    }
+
+    private BitSet toBitSet(Collection<Long> bookIds) {
+        BitSet bits = new BitSet();
+        for (Long bookId : bookIds) {
+            Integer doc = documentByBookId.get(bookId);
+            if (doc != null) {
+                bits.set(doc);
+            }
+        }
+        return bits;
+    }
+
+    private BitSet matching(Predicate<FacetEntry> predicate) {
+        BitSet bits = new BitSet();
+        for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+            if (predicate.test(documents.get(doc))) {
+                bits.set(doc);
+            }
+        }
+        return bits;
+    }
+
+    private BitSet flag(BitSet flagged, boolean value) {
+        BitSet bits = (BitSet) live.clone();
+        if (value) {
+            bits.and(flagged);
+        } else {
+            bits.andNot(flagged);
+        }
+        return bits;
+    }
+
+    private static BitSet copyOf(BitSet bits) {
+        return bits != null ? (BitSet) bits.clone() : new BitSet();
+    }
+
+    private static boolean inPriceRange(BigDecimal price, Double minPrice, Double maxPrice) {
+        if (price == null) {
+            return false;
+        }
+        return (minPrice == null || price.compareTo(BigDecimal.valueOf(minPrice)) >= 0)
+                && (maxPrice == null || price.compareTo(BigDecimal.valueOf(maxPrice)) <= 0);
+    }
+
+    private int priceBucket(BigDecimal price) {
+        for (int bucket = 0; bucket < priceBoundaries.length; bucket++) {
+            if (price.compareTo(priceBoundaries[bucket]) < 0) {
+                return bucket;
+            }
+        }
+        return priceBoundaries.length;
+    }
+
+    private String priceBucketLabel(int bucket) {
+        if (bucket == priceBoundaries.length) {
+            return priceBoundaries[bucket - 1].toPlainString() + "+";
+        }
+        String from = bucket == 0 ? "0" : priceBoundaries[bucket - 1].toPlainString();
+        return from + "-" + priceBoundaries[bucket].toPlainString();
+    }
+
+    @AllArgsConstructor
+    private static class FacetEntry {
+        private final Long bookId;
+        private final String isbn;
+        private final Long categoryId;
+        private final BookLanguage language;
+        private final BigDecimal price;
+        private final boolean bestSeller;
+        private final boolean newRelease;
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.bookservice.service;
+
+import com.example.bookservice.model.Book;
+import com.example.bookservice.repository.BookRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over book title, description, ISBN and author name.
+ * Terms are kept sorted so that a query term also matches by prefix ("harr" finds "harry").
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BookSearchIndex {
+
+    public static final int TITLE = 1;
+    public static final int AUTHOR = 1 << 1;
+    public static final int ISBN = 1 << 2;
+    public static final int DESCRIPTION = 1 << 3;
+    public static final int ALL_FIELDS = TITLE | AUTHOR | ISBN | DESCRIPTION;
+
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final float PREFIX_FACTOR = 0.5f;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern ISBN_HYPHEN = Pattern.compile("(?<=[0-9x])-(?=[0-9x])");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final BookRepository bookRepository;
+
+    // term -> (book id -> mask of the fields containing the term)
+    private final NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+    private final Map<Long, Set<String>> documentTerms = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        List<Object[]> rows = bookRepository.findSearchableFields();
+
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documentTerms.clear();
+            for (Object[] row : rows) {
+                String authorName = row[4] + " " + row[5];
+                addDocument((Long) row[0], (String) row[1], (String) row[2], (String) row[3], authorName);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("Search index built: {} books, {} terms in {} ms",
+                rows.size(), postings.size(), System.currentTimeMillis() - start);
+    }
+
+    public void index(Book book) {
+        index(book.getId(), book.getTitle(), book.getDescription(), book.getIsbn(),
+                book.getAuthor() != null ? book.getAuthor().getFullName() : null);
+    }
+
+    public void index(Long id, String title, String description, String isbn, String authorName) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(id);
+            addDocument(id, title, description, isbn, authorName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the books where every query term matches (exactly or by prefix) one of the
+     * fields in {@code fieldMask}, mapped to their relevance score.
+     */
+    public Map<Long, Float> search(String text, int fieldMask) {
+        List<String> queryTerms = tokenize(text);
+        if (queryTerms.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        lock.readLock().lock();
+        try {
+            Map<Long, Float> result = null;
+            for (String queryTerm : queryTerms) {
+                Map<Long, Float> termScores = scoreTerm(queryTerm, fieldMask);
+                if (result == null) {
+                    result = termScores;
+                } else {
+                    result.keySet().retainAll(termScores.keySet());
+                    result.replaceAll((id, score) -> score + termScores.get(id));
+                }
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documentTerms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Float> scoreTerm(String queryTerm, int fieldMask) {
+        Map<Long, Float> scores = new HashMap<>();
+
+        Map<String, Map<Long, Integer>> candidates = queryTerm.length() >= MIN_PREFIX_LENGTH
+                ? postings.subMap(queryTerm, true, queryTerm + Character.MAX_VALUE, false)
+                : postings.containsKey(queryTerm)
+                        ? Map.of(queryTerm, postings.get(queryTerm))
+                        : Collections.emptyMap();
+
+        for (Map.Entry<String, Map<Long, Integer>> entry : candidates.entrySet()) {
+            float factor = entry.getKey().equals(queryTerm) ? 1f : PREFIX_FACTOR;
+            for (Map.Entry<Long, Integer> posting : entry.getValue().entrySet()) {
+                int fields = posting.getValue() & fieldMask;
+                if (fields != 0) {
+                    // Keep the best indexed term for a given query term
+                    scores.merge(posting.getKey(), fieldWeight(fields) * factor, Math::max);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private void addDocument(Long id, String title, String description, String isbn, String authorName) {
+        Set<String> terms = new HashSet<>();
+        addField(id, TITLE, tokenize(title), terms);
+        addField(id, AUTHOR, tokenize(authorName), terms);
+        addField(id, ISBN, tokenize(isbn), terms);
+        addField(id, DESCRIPTION, tokenize(description), terms);
+        documentTerms.put(id, terms);
+    }
+
+    private void addField(Long id, int field, List<String> fieldTerms, Set<String> terms) {
+        for (String term : fieldTerms) {
+            postings.computeIfAbsent(term, t -> new HashMap<>()).merge(id, field, (a, b) -> a | b);
+            terms.add(term);
+        }
+    }
+
+    private void removeDocument(Long id) {
+        Set<String> terms = documentTerms.remove(id);
+        if (terms == null) {
+            return;
+        }
+        for (String term : terms) {
+            Map<Long, Integer> docs = postings.get(term);
+            if (docs != null) {
+                docs.remove(id);
+                if (docs.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static float fieldWeight(int fields) {
+        if ((fields & ISBN) != 0) {
+            return 4f;
+        }
+        if ((fields & TITLE) != 0) {
+            return 3f;
+        }
+        if ((fields & AUTHOR) != 0) {
+            return 2f;
+        }
+        return 1f;
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return Collections.emptyList();
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        // Index "978-2-07-036822-8" as a single term
+        normalized = ISBN_HYPHEN.matcher(normalized).replaceAll("");
+
+        List<String> tokens = new ArrayList<>();
+        for (String token : SEPARATORS.split(normalized)) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -6,18 +6,35 @@ import com.example.bookservice.model.Book;
 import com.example.bookservice.model.Category;
 import com.example.bookservice.model.Editor;
 import com.example.bookservice.repository.AuthorRepository;
+import com.example.bookservice.repository.BookCriteria;
 import com.example.bookservice.repository.BookRepository;
 import com.example.bookservice.repository.CategoryRepository;
 import com.example.bookservice.repository.EditorRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,30 +45,120 @@ public class BookService {
     private final AuthorRepository authorRepository;
     private final EditorRepository editorRepository;
     private final CategoryRepository categoryRepository;
+    private final BookSearchIndex bookSearchIndex;
+    private final BookFacetIndex bookFacetIndex;
+    private final BookCacheInvalidator bookCacheInvalidator;
+    private final BookCatalogEventPublisher bookCatalogEventPublisher;
+    private final SalesRanking salesRanking;
+
+    @Value("${book.search.max-ranked-results:1000}")
+    private int maxRankedResults;
+
+    @Value("${book.batch.max-size:500}")
+    private int maxBatchSize;
+
+    @Value("${book.ranking.best-seller-window:WEEK}")
+    private SalesRanking.Window bestSellerWindow;
 
     @Transactional(readOnly = true)
     public Page<BookDTO> searchBooks(SearchRequest searchRequest) {
+        return searchBooks(searchRequest, hasTextCriteria(searchRequest) ? matchTextCriteria(searchRequest) : null);
+    }
+
+    @Transactional(readOnly = true)
+    public FacetedSearchResponse searchBooksWithFacets(SearchRequest searchRequest) {
+        Map<Long, Float> scores = hasTextCriteria(searchRequest) ? matchTextCriteria(searchRequest) : null;
+
+        FacetedSearchResponse response = new FacetedSearchResponse();
+        response.setResults(searchBooks(searchRequest, scores));
+        response.setFacets(bookFacetIndex.count(searchRequest, scores != null ? scores.keySet() : null));
+        return response;
+    }
+
+    /**
+     * @param scores books matched by the text criteria with their score, or {@code null} when
+     *               the request has no text criteria
+     */
+    private Page<BookDTO> searchBooks(SearchRequest searchRequest, Map<Long, Float> scores) {
+        boolean byRelevance = SearchRequest.SORT_BY_RELEVANCE.equalsIgnoreCase(searchRequest.getSortBy());
         Pageable pageable = PageRequest.of(
                 searchRequest.getPage(),
                 searchRequest.getSize(),
-                Sort.by(Sort.Direction.fromString(searchRequest.getSortDirection()), searchRequest.getSortBy())
+                Sort.by(Sort.Direction.fromString(searchRequest.getSortDirection()),
+                        byRelevance ? "title" : searchRequest.getSortBy())
         );
 
-        Page<Book> books = bookRepository.searchBooks(
-                searchRequest.getTitle(),
-                searchRequest.getIsbn(),
-                searchRequest.getAuthorName(),
-                searchRequest.getCategoryId(),
-                searchRequest.getBestSeller(),
-                searchRequest.getNewRelease(),
-                searchRequest.getMinPrice(),
-                searchRequest.getMaxPrice(),
-                pageable
+        boolean summary = Boolean.TRUE.equals(searchRequest.getSummary());
+        BookCriteria criteria = toCriteria(searchRequest);
+
+        if (scores == null) {
+            return bookRepository.findBookViews(criteria, summary, pageable);
+        }
+
+        // Text criteria are answered by the in-memory index, the remaining filters by the database
+        if (scores.isEmpty()) {
+            return Page.empty(pageable);
+        }
+
+        if (!byRelevance) {
+            // Only the best max-ranked-results matches go into the IN list
+            criteria.setIds(rankIds(scores));
+            return bookRepository.findBookViews(criteria, summary, pageable);
+        }
+
+        List<Long> rankedIds = rankIds(scores);
+        if (criteria.hasAttributeFilters()) {
+            // The database drops the ids its filters reject (ids only), before slicing the page
+            criteria.setIds(rankedIds);
+            Set<Long> kept = new HashSet<>(bookRepository.findBookIds(criteria));
+            rankedIds = rankedIds.stream().filter(kept::contains).collect(Collectors.toList());
+        }
+
+        // Only the books of the requested page are loaded
+        int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+        int to = Math.min(from + pageable.getPageSize(), rankedIds.size());
+        List<BookDTO> content = loadRanked(rankedIds.subList(from, to), new BookCriteria(), summary);
+        return new PageImpl<>(content, pageable, rankedIds.size());
+    }
+
+    @Transactional(readOnly = true)
+    public BookSliceResponse scrollBooks(SearchRequest searchRequest) {
+        boolean byRelevance = SearchRequest.SORT_BY_RELEVANCE.equalsIgnoreCase(searchRequest.getSortBy());
+        boolean summary = Boolean.TRUE.equals(searchRequest.getSummary());
+        BookCriteria criteria = toCriteria(searchRequest);
+
+        if (hasTextCriteria(searchRequest)) {
+            Map<Long, Float> scores = matchTextCriteria(searchRequest);
+            if (scores.isEmpty()) {
+                return toSliceResponse(Collections.emptyList(), searchRequest.getSize(), null);
+            }
+            if (byRelevance) {
+                return scrollByRelevance(scores, criteria, summary, searchRequest.getCursor(), searchRequest.getSize());
+            }
+            criteria.setIds(rankIds(scores));
+        }
+
+        Sort.Order order = new Sort.Order(Sort.Direction.fromString(searchRequest.getSortDirection()),
+                byRelevance ? "title" : searchRequest.getSortBy());
+        BookCursor.checkSupported(order);
+        BookCursor cursor = BookCursor.decode(searchRequest.getCursor(), order);
+
+        Slice<BookDTO> slice = bookRepository.findBookViewsAfter(
+                criteria,
+                summary,
+                order,
+                cursor != null ? cursor.typedValue() : null,
+                cursor != null ? cursor.getLastId() : null,
+                searchRequest.getSize()
         );
 
-        return books.map(this::convertToDTO);
+        String nextCursor = slice.hasNext()
+                ? BookCursor.after(order, slice.getContent().get(slice.getNumberOfElements() - 1)).encode()
+                : null;
+        return toSliceResponse(slice.getContent(), searchRequest.getSize(), nextCursor);
     }
 
+    @Cacheable(value = BookCacheInvalidator.BOOKS_CACHE, key = "#id")
     @Transactional(readOnly = true)
     public BookDTO getBookById(Long id) {
         Book book = bookRepository.findById(id)
@@ -59,6 +166,7 @@ public class BookService {
         return convertToDTO(book);
     }
 
+    @Cacheable(value = BookCacheInvalidator.BOOKS_BY_ISBN_CACHE, key = "#isbn")
     @Transactional(readOnly = true)
     public BookDTO getBookByIsbn(String isbn) {
         Book book = bookRepository.findByIsbn(isbn)
@@ -101,6 +209,12 @@ public class BookService {
         book.setCategory(category);
 
         Book savedBook = bookRepository.save(book);
+        afterCommit(() -> {
+            bookSearchIndex.index(savedBook);
+            bookFacetIndex.index(savedBook);
+        });
+        bookCacheInvalidator.invalidate(savedBook.getId(), savedBook.getIsbn());
+        bookCatalogEventPublisher.stockChanged(List.of(savedBook.getId()));
         return convertToDTO(savedBook);
     }
 
@@ -108,6 +222,9 @@ public class BookService {
     public BookDTO updateBook(Long id, UpdateBookRequest request) {
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Book not found with id: " + id));
+        String previousTitle = book.getTitle();
+        String previousAuthor = BookCatalogEventPublisher.authorName(book);
+        BigDecimal previousPrice = book.getPrice();
 
         // Update fields if provided
         if (request.getTitle() != null) {
@@ -165,6 +282,17 @@ public class BookService {
         }
 
         Book updatedBook = bookRepository.save(book);
+        afterCommit(() -> {
+            bookSearchIndex.index(updatedBook);
+            bookFacetIndex.index(updatedBook);
+        });
+        bookCacheInvalidator.invalidate(updatedBook.getId(), updatedBook.getIsbn());
+        if (!Objects.equals(previousTitle, updatedBook.getTitle())
+                || !Objects.equals(previousAuthor, BookCatalogEventPublisher.authorName(updatedBook))
+                || previousPrice.compareTo(updatedBook.getPrice()) != 0) {
+            bookCatalogEventPublisher.bookChanged(updatedBook);
+        }
+        bookCatalogEventPublisher.stockChanged(List.of(updatedBook.getId()));
         return convertToDTO(updatedBook);
     }
 
@@ -173,26 +301,233 @@ public class BookService {
         Book book = bookRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Book not found with id: " + id));
         bookRepository.delete(book);
+        afterCommit(() -> {
+            bookSearchIndex.remove(id);
+            bookFacetIndex.remove(id);
+        });
+        bookCacheInvalidator.invalidate(id, book.getIsbn());
+        bookCatalogEventPublisher.stockChanged(List.of(id));
+    }
+
+    /**
+     * Looks up several books with a single query. Unknown ids are simply absent from the result.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, BookInfo> getBookInfos(Collection<Long> ids) {
+        Set<Long> uniqueIds = ids.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (uniqueIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        if (uniqueIds.size() > maxBatchSize) {
+            throw new RuntimeException("Too many books requested: " + uniqueIds.size() + " (max " + maxBatchSize + ")");
+        }
+
+        Map<Long, BookInfo> infos = new HashMap<>();
+        for (Object[] row : bookRepository.findBookInfos(uniqueIds)) {
+            BookInfo info = toBookInfo(row);
+            infos.put(info.getId(), info);
+        }
+        return infos;
+    }
+
+    /**
+     * Returns the books with an id greater than {@code afterId}, in id order. Other services
+     * read the whole catalog page by page, passing the last id they got.
+     */
+    @Transactional(readOnly = true)
+    public List<BookInfo> getBookSnapshot(Long afterId, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, maxBatchSize));
+        return bookRepository.findBookInfosAfter(afterId, PageRequest.of(0, pageSize)).stream()
+                .map(BookService::toBookInfo)
+                .collect(Collectors.toList());
+    }
+
+    static BookInfo toBookInfo(Object[] row) {
+        BookInfo info = new BookInfo();
+        info.setId((Long) row[0]);
+        info.setTitle((String) row[1]);
+        info.setAuthor(row[2] + " " + row[3]);
+        info.setPrice((BigDecimal) row[4]);
+        info.setStock((Integer) row[5]);
+        info.setIsbn((String) row[6]);
+        info.setSequence((Long) row[7]);
+        return info;
     }
 
     @Transactional(readOnly = true)
     public List<BookDTO> getNewReleases() {
-        List<Book> books = bookRepository.findTop10ByOrderByCreatedAtDesc();
-        return books.stream()
-                .map(this::convertToDTO)
+        Pageable latest = PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "createdAt"));
+        return bookRepository.findBookViews(new BookCriteria(), false, latest).getContent();
+    }
+
+    /**
+     * Books ranked by copies sold over {@code book.ranking.best-seller-window}. Until the ranking
+     * has sales (first load, no orders yet), falls back to the books flagged as best sellers.
+     */
+    @Transactional(readOnly = true)
+    public Page<BookDTO> getBestSellers(Pageable pageable, boolean summary) {
+        List<Long> rankedIds = salesRanking.top(bestSellerWindow, Integer.MAX_VALUE).stream()
+                .map(SalesRanking.RankedBook::bookId)
                 .collect(Collectors.toList());
+        if (rankedIds.isEmpty()) {
+            BookCriteria criteria = new BookCriteria();
+            criteria.setBestSeller(true);
+            return bookRepository.findBookViews(criteria, summary, pageable);
+        }
+
+        int from = (int) Math.min(pageable.getOffset(), rankedIds.size());
+        int to = Math.min(from + pageable.getPageSize(), rankedIds.size());
+        List<BookDTO> content = loadRanked(rankedIds.subList(from, to), new BookCriteria(), summary);
+        return new PageImpl<>(content, pageable, rankedIds.size());
     }
 
+    /**
+     * The {@code limit} best sellers of the window with the copies sold, best first.
+     */
     @Transactional(readOnly = true)
-    public Page<BookDTO> getBestSellers(Pageable pageable) {
-        Page<Book> books = bookRepository.findByBestSellerTrue(pageable);
-        return books.map(this::convertToDTO);
+    public List<TopSellerDTO> getTopSellers(SalesRanking.Window window, int limit, boolean summary) {
+        List<SalesRanking.RankedBook> ranked = salesRanking.top(window, limit);
+        List<BookDTO> books = loadRanked(ranked.stream()
+                .map(SalesRanking.RankedBook::bookId)
+                .collect(Collectors.toList()), new BookCriteria(), summary);
+        Map<Long, BookDTO> booksById = books.stream().collect(Collectors.toMap(BookDTO::getId, Function.identity()));
+
+        List<TopSellerDTO> topSellers = new ArrayList<>();
+        for (SalesRanking.RankedBook rankedBook : ranked) {
+            BookDTO book = booksById.get(rankedBook.bookId());
+            if (book == null) {
+                // Deleted since
+                continue;
+            }
+            TopSellerDTO topSeller = new TopSellerDTO();
+            topSeller.setRank(topSellers.size() + 1);
+            topSeller.setBookId(rankedBook.bookId());
+            topSeller.setQuantitySold(rankedBook.quantity());
+            topSeller.setBook(book);
+            topSellers.add(topSeller);
+        }
+        return topSellers;
     }
 
     @Transactional(readOnly = true)
-    public Page<BookDTO> getBooksByCategory(Long categoryId, Pageable pageable) {
-        Page<Book> books = bookRepository.findByCategoryId(categoryId, pageable);
-        return books.map(this::convertToDTO);
+    public Page<BookDTO> getBooksByCategory(Long categoryId, Pageable pageable, boolean summary) {
+        BookCriteria criteria = new BookCriteria();
+        criteria.setCategoryId(categoryId);
+        return bookRepository.findBookViews(criteria, summary, pageable);
+    }
+
+    private boolean hasTextCriteria(SearchRequest searchRequest) {
+        return StringUtils.hasText(searchRequest.getQuery())
+                || StringUtils.hasText(searchRequest.getTitle())
+                || StringUtils.hasText(searchRequest.getAuthorName());
+    }
+
+    private Map<Long, Float> matchTextCriteria(SearchRequest searchRequest) {
+        Map<Long, Float> scores = null;
+        scores = intersectMatches(scores, searchRequest.getQuery(), BookSearchIndex.ALL_FIELDS);
+        scores = intersectMatches(scores, searchRequest.getTitle(), BookSearchIndex.TITLE);
+        scores = intersectMatches(scores, searchRequest.getAuthorName(), BookSearchIndex.AUTHOR);
+        return scores != null ? scores : Collections.emptyMap();
+    }
+
+    private Map<Long, Float> intersectMatches(Map<Long, Float> scores, String text, int fields) {
+        if (!StringUtils.hasText(text)) {
+            return scores;
+        }
+        Map<Long, Float> matches = bookSearchIndex.search(text, fields);
+        if (scores == null) {
+            return new HashMap<>(matches);
+        }
+        scores.keySet().retainAll(matches.keySet());
+        scores.replaceAll((id, score) -> score + matches.get(id));
+        return scores;
+    }
+
+    private BookSliceResponse scrollByRelevance(Map<Long, Float> scores, BookCriteria criteria,
+                                                boolean summary, String token, int size) {
+        BookCursor cursor = BookCursor.decode(token, Sort.Order.desc(SearchRequest.SORT_BY_RELEVANCE));
+
+        // Ranked ids are ordered by descending score then ascending id, like the cursor
+        List<Long> remaining = rankIds(scores).stream()
+                .filter(id -> cursor == null
+                        || scores.get(id) < cursor.score()
+                        || (scores.get(id) == cursor.score() && id > cursor.getLastId()))
+                .collect(Collectors.toList());
+        if (!criteria.hasAttributeFilters() && remaining.size() > size + 1) {
+            // Nothing can be filtered out by the database, so only load what this slice needs
+            remaining = remaining.subList(0, size + 1);
+        }
+
+        List<BookDTO> ranked = loadRanked(remaining, criteria, summary);
+        if (ranked.size() <= size) {
+            return toSliceResponse(ranked, size, null);
+        }
+
+        BookDTO last = ranked.get(size - 1);
+        String nextCursor = BookCursor.afterRanked(last.getId(), scores.get(last.getId())).encode();
+        return toSliceResponse(ranked.subList(0, size), size, nextCursor);
+    }
+
+    private List<Long> rankIds(Map<Long, Float> scores) {
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Float>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(maxRankedResults)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private List<BookDTO> loadRanked(List<Long> rankedIds, BookCriteria criteria, boolean summary) {
+        if (rankedIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        criteria.setIds(rankedIds);
+        Map<Long, BookDTO> booksById = bookRepository.findBookViews(criteria, summary, Pageable.unpaged())
+                .stream()
+                .collect(Collectors.toMap(BookDTO::getId, Function.identity()));
+
+        return rankedIds.stream()
+                .map(booksById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Runs an in-memory index update once the current transaction commits, so that a rollback
+     * cannot leave the indexes ahead of the database.
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private BookSliceResponse toSliceResponse(List<BookDTO> content, int size, String nextCursor) {
+        BookSliceResponse response = new BookSliceResponse();
+        response.setContent(content);
+        response.setSize(size);
+        response.setHasNext(nextCursor != null);
+        response.setNextCursor(nextCursor);
+        return response;
+    }
+
+    private BookCriteria toCriteria(SearchRequest searchRequest) {
+        BookCriteria criteria = new BookCriteria();
+        criteria.setIsbn(searchRequest.getIsbn());
+        criteria.setCategoryId(searchRequest.getCategoryId());
+        criteria.setLanguage(searchRequest.getLanguage());
+        criteria.setBestSeller(searchRequest.getBestSeller());
+        criteria.setNewRelease(searchRequest.getNewRelease());
+        criteria.setMinPrice(searchRequest.getMinPrice());
+        criteria.setMaxPrice(searchRequest.getMaxPrice());
+        return criteria;
     }
 
     private BookDTO convertToDTO(Book book) {
@@ -0,0 +1,232 @@
+package com.example.bookservice.service;
+
+import com.example.bookservice.config.RabbitMQConfig;
+import com.example.bookservice.dto.OrderSalesEvent;
+import com.example.bookservice.repository.BookSalesBucketRepository;
+import com.example.bookservice.repository.CountedSalesEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Best-selling books over the last day, week and month, fed by the sales events of
+ * order-service.
+ * <p>
+ * Sales are counted per book and per hour in {@code book_sales_hourly}. The events are consumed in
+ * batches from one queue shared by the replicas; each batch is written in one transaction, with
+ * the key of every event in {@code book_sales_events}, and acknowledged once it commits. A batch
+ * lost in a crash is therefore redelivered, and an event already counted (by any replica) is
+ * skipped. Each replica keeps the totals of every window in memory: the sums of those rows,
+ * reloaded periodically (which also slides the windows and brings in the sales counted by the
+ * other replicas), plus the batches it wrote since. The ranking of each window is the top
+ * {@code book.ranking.top-k} books, computed with a bounded heap whenever the totals changed.
+ */
+@Component
+@Slf4j
+public class SalesRanking {
+
+    public enum Window {
+        DAY(24), WEEK(7 * 24), MONTH(30 * 24);
+
+        private final int hours;
+
+        Window(int hours) {
+            this.hours = hours;
+        }
+    }
+
+    public record RankedBook(long bookId, long quantity) {
+    }
+
+    private record BucketKey(long bookId, long hour) {
+    }
+
+    private static final Comparator<RankedBook> BY_RANK = Comparator.comparingLong(RankedBook::quantity).reversed()
+            .thenComparingLong(RankedBook::bookId);
+
+    private final BookSalesBucketRepository bookSalesBucketRepository;
+    private final CountedSalesEventRepository countedSalesEventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int topK;
+
+    // Guards totals and dirty
+    private final Object lock = new Object();
+    // Serializes onSales() and reload(), so that a reload never misses or counts twice a written batch
+    private final Object storeLock = new Object();
+
+    // bookId -> copies sold in each window (indexed by Window.ordinal())
+    private Map<Long, long[]> totals = new HashMap<>();
+    private boolean dirty;
+
+    private volatile Map<Window, List<RankedBook>> rankings = new EnumMap<>(Window.class);
+    private volatile boolean loaded;
+
+    public SalesRanking(BookSalesBucketRepository bookSalesBucketRepository,
+                        CountedSalesEventRepository countedSalesEventRepository, TransactionTemplate transactionTemplate,
+                        @Value("${book.ranking.top-k:100}") int topK) {
+        this.bookSalesBucketRepository = bookSalesBucketRepository;
+        this.countedSalesEventRepository = countedSalesEventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.topK = topK;
+    }
+
+    /**
+     * Best sellers of the window, best first; empty until the first load.
+     */
+    public List<RankedBook> top(Window window, int limit) {
+        List<RankedBook> ranking = rankings.getOrDefault(window, Collections.emptyList());
+        return ranking.subList(0, Math.min(limit, ranking.size()));
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Writes a batch of sales events in one transaction; the batch is acknowledged when this
+     * returns, and redelivered if it throws. The in-memory totals are updated only once the
+     * transaction has committed.
+     */
+    @RabbitListener(queues = RabbitMQConfig.BOOK_SALES_QUEUE, containerFactory = "salesBatchContainerFactory")
+    public void onSales(List<OrderSalesEvent> events) {
+        long currentHour = currentHour();
+        synchronized (storeLock) {
+            Map<BucketKey, Long> batch = transactionTemplate.execute(status -> {
+                Map<BucketKey, Long> buckets = new HashMap<>();
+                for (OrderSalesEvent event : events) {
+                    count(event, currentHour, buckets);
+                }
+                buckets.forEach((key, quantity) -> {
+                    if (quantity != 0) {
+                        bookSalesBucketRepository.addQuantity(key.bookId(), key.hour(), quantity);
+                    }
+                });
+                return buckets;
+            });
+            if (batch == null || batch.isEmpty()) {
+                return;
+            }
+            synchronized (lock) {
+                batch.forEach((key, quantity) -> add(totals, key.bookId(), key.hour(), quantity, currentHour));
+                dirty = true;
+            }
+        }
+    }
+
+    // Adds the copies of the event to buckets, unless it is malformed, too old or already counted
+    private void count(OrderSalesEvent event, long currentHour, Map<BucketKey, Long> buckets) {
+        if (event.getOrderId() == null || event.getItems() == null) {
+            log.warn("Ignoring malformed sales event: {}", event);
+            return;
+        }
+        LocalDateTime placedAt = event.getPlacedAt() != null ? event.getPlacedAt() : LocalDateTime.now();
+        long hour = placedAt.atZone(ZoneId.systemDefault()).toEpochSecond() / 3600;
+        if (hour <= currentHour - Window.MONTH.hours) {
+            return;
+        }
+        String type = event.getType() != null ? event.getType() : OrderSalesEvent.PLACED;
+        if (countedSalesEventRepository.claim(event.getOrderId(), type, hour) == 0) {
+            return;
+        }
+        // A cancellation takes the copies back out of the hour the order was placed in
+        long sign = OrderSalesEvent.CANCELLED.equals(type) ? -1 : 1;
+        for (OrderSalesEvent.Line line : event.getItems()) {
+            if (line.getBookId() == null || line.getQuantity() == null) {
+                continue;
+            }
+            buckets.merge(new BucketKey(line.getBookId(), hour), sign * line.getQuantity(), Long::sum);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${book.ranking.reload-interval-ms:60000}")
+    public void reload() {
+        synchronized (storeLock) {
+            long currentHour = currentHour();
+            List<Object[]> rows = bookSalesBucketRepository.sumWindows(
+                    from(Window.DAY, currentHour), from(Window.WEEK, currentHour), from(Window.MONTH, currentHour));
+            Map<Long, long[]> fresh = new HashMap<>(rows.size() * 2);
+            for (Object[] row : rows) {
+                fresh.put((Long) row[0], new long[]{
+                        ((Number) row[1]).longValue(), ((Number) row[2]).longValue(), ((Number) row[3]).longValue()});
+            }
+            synchronized (lock) {
+                totals = fresh;
+                dirty = true;
+            }
+            // Events of these hours are no longer counted (see count), their keys can go too
+            transactionTemplate.executeWithoutResult(status -> {
+                bookSalesBucketRepository.deleteOlderThan(from(Window.MONTH, currentHour));
+                countedSalesEventRepository.deleteOlderThan(from(Window.MONTH, currentHour));
+            });
+        }
+        rank();
+        loaded = true;
+    }
+
+    @Scheduled(fixedDelayString = "${book.ranking.rank-interval-ms:5000}")
+    public void rank() {
+        Map<Window, List<RankedBook>> ranked = new EnumMap<>(Window.class);
+        synchronized (lock) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            for (Window window : Window.values()) {
+                ranked.put(window, topOf(window));
+            }
+        }
+        rankings = ranked;
+    }
+
+    // Min-heap of the best topK totals seen so far: O(books * log topK)
+    private List<RankedBook> topOf(Window window) {
+        int index = window.ordinal();
+        PriorityQueue<RankedBook> heap = new PriorityQueue<>(topK + 1, BY_RANK.reversed());
+        for (Map.Entry<Long, long[]> entry : totals.entrySet()) {
+            long quantity = entry.getValue()[index];
+            if (quantity <= 0) {
+                continue;
+            }
+            if (heap.size() < topK) {
+                heap.add(new RankedBook(entry.getKey(), quantity));
+            } else if (BY_RANK.compare(new RankedBook(entry.getKey(), quantity), heap.peek()) < 0) {
+                heap.poll();
+                heap.add(new RankedBook(entry.getKey(), quantity));
+            }
+        }
+        List<RankedBook> ranking = new ArrayList<>(heap);
+        ranking.sort(BY_RANK);
+        return List.copyOf(ranking);
+    }
+
+    private static void add(Map<Long, long[]> totals, long bookId, long hour, long quantity, long currentHour) {
+        long[] windows = totals.computeIfAbsent(bookId, id -> new long[Window.values().length]);
+        for (Window window : Window.values()) {
+            if (hour >= from(window, currentHour)) {
+                windows[window.ordinal()] += quantity;
+            }
+        }
+    }
+
+    // First hour of the window, the current hour being its last
+    private static long from(Window window, long currentHour) {
+        return currentHour - window.hours + 1;
+    }
+
+    private static long currentHour() {
+        return System.currentTimeMillis() / 3_600_000;
+    }
+}
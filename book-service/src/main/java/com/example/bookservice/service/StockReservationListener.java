@@ -0,0 +1,36 @@
+package com.example.bookservice.service;
+
+import com.example.bookservice.config.RabbitMQConfig;
+import com.example.bookservice.dto.StockReservationEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies the stock reservation commits and releases of order-service. A failure (e.g. the
+ * database is down) is rethrown so the message is redelivered; the service methods are
+ * idempotent, so a redelivered message does no harm.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StockReservationListener {
+
+    private final StockReservationService stockReservationService;
+
+    @RabbitListener(queues = RabbitMQConfig.BOOK_STOCK_QUEUE)
+    public void onStockReservationEvent(StockReservationEvent event) {
+        if (event.getReservationId() == null) {
+            log.warn("Ignoring stock reservation event without reservation id: {}", event);
+            return;
+        }
+        if (StockReservationEvent.COMMIT.equals(event.getAction())) {
+            stockReservationService.commitFromOrder(event.getReservationId(), event.getOrderId());
+        } else if (StockReservationEvent.RELEASE.equals(event.getAction())) {
+            stockReservationService.release(event.getReservationId());
+        } else {
+            log.warn("Ignoring stock reservation event with unknown action: {}", event);
+        }
+    }
+}
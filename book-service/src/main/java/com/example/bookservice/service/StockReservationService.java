@@ -0,0 +1,233 @@
+package com.example.bookservice.service;
+
+import com.example.bookservice.dto.StockReservationRequest;
+import com.example.bookservice.dto.StockReservationResponse;
+import com.example.bookservice.model.StockReservation;
+import com.example.bookservice.model.StockReservation.ReservationStatus;
+import com.example.bookservice.repository.BookRepository;
+import com.example.bookservice.repository.StockReservationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Reserves stock for several books in one all-or-nothing call. Each line is a conditional
+ * UPDATE, so concurrent buyers cannot oversell, and the reservation is later either committed
+ * (the order went through) or released (cancelled, failed, or expired).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockReservationService {
+
+    private final BookRepository bookRepository;
+    private final StockReservationRepository stockReservationRepository;
+    private final BookCacheInvalidator bookCacheInvalidator;
+    private final BookCatalogEventPublisher bookCatalogEventPublisher;
+
+    @Value("${book.stock.reservation-ttl:PT15M}")
+    private Duration reservationTtl;
+
+    @Transactional
+    public StockReservationResponse reserve(StockReservationRequest request) {
+        List<StockReservation> existing =
+                stockReservationRepository.findByReservationIdOrderByBookId(request.getReservationId());
+        if (!existing.isEmpty()) {
+            // Retried call: the stock was already taken the first time
+            return toResponse(request.getReservationId(), existing);
+        }
+
+        // Lines are merged per book and applied in id order, so that concurrent reservations
+        // lock the book rows in the same order and cannot deadlock
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (StockReservationRequest.Item item : request.getItems()) {
+            quantities.merge(item.getBookId(), item.getQuantity(), Integer::sum);
+        }
+
+        StockReservationResponse response = new StockReservationResponse();
+        response.setReservationId(request.getReservationId());
+        List<Long> failedBookIds = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            boolean reserved = bookRepository.reserveStock(entry.getKey(), entry.getValue()) == 1;
+            if (!reserved) {
+                failedBookIds.add(entry.getKey());
+            }
+            response.getLines().add(line(entry.getKey(), entry.getValue(), reserved));
+        }
+
+        if (!failedBookIds.isEmpty()) {
+            // All or nothing: undo the lines that did succeed
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            Map<Long, Integer> available = new HashMap<>();
+            for (Object[] row : bookRepository.findStockLevels(failedBookIds)) {
+                available.put((Long) row[0], (Integer) row[1]);
+            }
+            response.getLines().stream()
+                    .filter(line -> !line.getReserved())
+                    .forEach(line -> line.setAvailable(available.getOrDefault(line.getBookId(), 0)));
+            response.setSuccess(false);
+            response.setStatus("REJECTED");
+            return response;
+        }
+
+        LocalDateTime expiresAt = LocalDateTime.now().plus(reservationTtl);
+        List<StockReservation> reservations = new ArrayList<>();
+        quantities.forEach((bookId, quantity) -> {
+            StockReservation reservation = new StockReservation();
+            reservation.setReservationId(request.getReservationId());
+            reservation.setBookId(bookId);
+            reservation.setQuantity(quantity);
+            reservation.setStatus(ReservationStatus.RESERVED);
+            reservation.setExpiresAt(expiresAt);
+            reservations.add(reservation);
+        });
+        stockReservationRepository.saveAll(reservations);
+        invalidateBooks(quantities.keySet());
+        bookCatalogEventPublisher.stockChanged(quantities.keySet());
+
+        response.setSuccess(true);
+        response.setStatus(ReservationStatus.RESERVED.name());
+        return response;
+    }
+
+    @Transactional
+    public StockReservationResponse commit(String reservationId) {
+        List<StockReservation> reservations = findReservation(reservationId);
+        if (!commitLines(reservations)) {
+            throw new RuntimeException("Reservation already released: " + reservationId);
+        }
+        return toResponse(reservationId, reservations);
+    }
+
+    /**
+     * Commit sent by order-service once the order is saved. Unlike {@link #commit}, an unknown or
+     * already released reservation is only logged, since redelivering the message would not
+     * change it: the latter means the order was saved after the reservation expired.
+     */
+    @Transactional
+    public void commitFromOrder(String reservationId, Long orderId) {
+        List<StockReservation> reservations =
+                stockReservationRepository.findByReservationIdOrderByBookId(reservationId);
+        if (reservations.isEmpty()) {
+            log.error("Cannot commit unknown stock reservation {} of order {}", reservationId, orderId);
+            return;
+        }
+        if (!commitLines(reservations)) {
+            // Lines committed before the released one are rolled back
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.error("Cannot commit stock reservation {} of order {}: already released", reservationId, orderId);
+        }
+    }
+
+    /**
+     * Puts the reserved copies back in stock. Releasing twice, or releasing an unknown
+     * reservation, is a no-op so that callers can safely retry: each line is put back only by
+     * the call whose guarded update moved it to RELEASED, even when calls race.
+     */
+    @Transactional
+    public StockReservationResponse release(String reservationId) {
+        List<StockReservation> reservations =
+                stockReservationRepository.findByReservationIdOrderByBookId(reservationId);
+        releaseLines(reservations, false);
+        return toResponse(reservationId, reservations);
+    }
+
+    /**
+     * Releases the lines of the reservation still reserved past their expiry. Unlike
+     * {@link #release}, a line committed in the meantime keeps its stock.
+     */
+    @Transactional
+    public void expire(String reservationId) {
+        releaseLines(stockReservationRepository.findByReservationIdOrderByBookId(reservationId), true);
+    }
+
+    @Transactional(readOnly = true)
+    public StockReservationResponse getReservation(String reservationId) {
+        return toResponse(reservationId, findReservation(reservationId));
+    }
+
+    @Transactional(readOnly = true)
+    public List<String> findExpiredReservationIds(int limit) {
+        return stockReservationRepository.findExpiredReservationIds(LocalDateTime.now(), PageRequest.of(0, limit));
+    }
+
+    // Lines in book id order, like reserve(), so that concurrent transitions lock them in the same
+    // order; false if a line was already released
+    private boolean commitLines(List<StockReservation> reservations) {
+        LocalDateTime now = LocalDateTime.now();
+        for (StockReservation reservation : reservations) {
+            if (stockReservationRepository.commitLine(reservation.getReservationId(), reservation.getBookId(), now) == 0) {
+                return false;
+            }
+            reservation.setStatus(ReservationStatus.COMMITTED);
+            reservation.setExpiresAt(null);
+        }
+        return true;
+    }
+
+    private void releaseLines(List<StockReservation> reservations, boolean expiredOnly) {
+        LocalDateTime now = LocalDateTime.now();
+        Set<Long> releasedBookIds = new HashSet<>();
+        for (StockReservation reservation : reservations) {
+            int moved = expiredOnly
+                    ? stockReservationRepository.expireLine(reservation.getReservationId(), reservation.getBookId(), now)
+                    : stockReservationRepository.releaseLine(reservation.getReservationId(), reservation.getBookId(), now);
+            if (moved == 1) {
+                bookRepository.releaseStock(reservation.getBookId(), reservation.getQuantity());
+                releasedBookIds.add(reservation.getBookId());
+            }
+            if (moved == 1 || !expiredOnly) {
+                // Released by this call or an earlier one
+                reservation.setStatus(ReservationStatus.RELEASED);
+                reservation.setExpiresAt(null);
+            }
+        }
+        invalidateBooks(releasedBookIds);
+        bookCatalogEventPublisher.stockChanged(releasedBookIds);
+    }
+
+    private List<StockReservation> findReservation(String reservationId) {
+        List<StockReservation> reservations =
+                stockReservationRepository.findByReservationIdOrderByBookId(reservationId);
+        if (reservations.isEmpty()) {
+            throw new RuntimeException("Reservation not found: " + reservationId);
+        }
+        return reservations;
+    }
+
+    // The cached BookDTOs carry the quantity
+    private void invalidateBooks(Collection<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return;
+        }
+        for (Object[] row : bookRepository.findIsbns(bookIds)) {
+            bookCacheInvalidator.invalidate((Long) row[0], (String) row[1]);
+        }
+    }
+
+    private StockReservationResponse toResponse(String reservationId, List<StockReservation> reservations) {
+        StockReservationResponse response = new StockReservationResponse();
+        response.setReservationId(reservationId);
+        response.setSuccess(true);
+        response.setStatus(reservations.get(0).getStatus().name());
+        for (StockReservation reservation : reservations) {
+            response.getLines().add(line(reservation.getBookId(), reservation.getQuantity(), true));
+        }
+        return response;
+    }
+
+    private static StockReservationResponse.Line line(Long bookId, Integer quantity, boolean reserved) {
+        StockReservationResponse.Line line = new StockReservationResponse.Line();
+        line.setBookId(bookId);
+        line.setQuantity(quantity);
+        line.setReserved(reserved);
+        return line;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.bookservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.util.List;
+
+/**
+ * Gives back the stock of reservations that were neither committed nor released in time,
+ * e.g. when order-service died between reserving and saving the order.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StockReservationSweeper {
+
+    private final StockReservationService stockReservationService;
+
+    @Value("${book.stock.sweep-batch-size:100}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${book.stock.sweep-interval-ms:60000}")
+    public void releaseExpiredReservations() {
+        List<String> expired = stockReservationService.findExpiredReservationIds(batchSize);
+        for (String reservationId : expired) {
+            try {
+                // One transaction per reservation so a failure does not undo the others
+                stockReservationService.expire(reservationId);
+                log.info("Released expired stock reservation: {}", reservationId);
+            } catch (Exception e) {
+                log.error("Failed to release expired stock reservation: {}", reservationId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.bookservice.repository;
+
+import com.example.bookservice.dto.BookDTO;
+import com.example.bookservice.model.Author;
+import com.example.bookservice.model.Book;
+import com.example.bookservice.model.Category;
+import com.example.bookservice.model.Editor;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class BookRepositoryQueryCountTest {
+
+    private static final int BOOK_COUNT = 12;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private Statistics statistics;
+    private Category childCategory;
+
+    @BeforeEach
+    void setUp() {
+        Category parentCategory = new Category();
+        parentCategory.setName("Fiction");
+        entityManager.persist(parentCategory);
+
+        childCategory = new Category();
+        childCategory.setName("Fantasy");
+        childCategory.setParentCategory(parentCategory);
+        entityManager.persist(childCategory);
+
+        for (int i = 0; i < BOOK_COUNT; i++) {
+            Author author = new Author();
+            author.setFirstName("First" + i);
+            author.setLastName("Last" + i);
+            author.setBiography("Biography " + i);
+            entityManager.persist(author);
+
+            Editor editor = new Editor();
+            editor.setName("Editor " + i);
+            entityManager.persist(editor);
+
+            Book book = new Book();
+            book.setIsbn("978000000000" + (char) ('A' + i));
+            book.setTitle("Title " + (char) ('A' + i));
+            book.setDescription("Description " + i);
+            book.setPrice(BigDecimal.valueOf(10 + i));
+            book.setQuantity(5);
+            book.setLanguage(Book.BookLanguage.FRENCH);
+            book.setBestSeller(i % 2 == 0);
+            book.setAuthor(author);
+            book.setEditor(editor);
+            book.setCategory(i < 8 ? childCategory : parentCategory);
+            entityManager.persist(book);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void pageIsLoadedWithOneSelectPlusCount() {
+        Page<BookDTO> page = bookRepository.findBookViews(
+                new BookCriteria(), false, PageRequest.of(0, 5, Sort.by("title")));
+
+        assertThat(page.getContent()).hasSize(5);
+        assertThat(page.getTotalElements()).isEqualTo(BOOK_COUNT);
+        assertThat(page.getContent().get(0).getAuthor().getFirstName()).isEqualTo("First0");
+        assertThat(page.getContent().get(0).getCategory().getParentCategory().getName()).isEqualTo("Fiction");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithPageSize() {
+        bookRepository.findBookViews(new BookCriteria(), false, PageRequest.of(0, 2));
+        long smallPage = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        bookRepository.findBookViews(new BookCriteria(), false, PageRequest.of(0, 10));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(smallPage);
+    }
+
+    @Test
+    void lastPageOfCategoryNeedsNoCountQuery() {
+        BookCriteria criteria = new BookCriteria();
+        criteria.setCategoryId(childCategory.getId());
+
+        Page<BookDTO> page = bookRepository.findBookViews(criteria, false, PageRequest.of(0, 20));
+
+        assertThat(page.getTotalElements()).isEqualTo(8);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void keysetSliceIssuesNoCountQuery() {
+        Sort.Order order = Sort.Order.asc("title");
+
+        Slice<BookDTO> first = bookRepository.findBookViewsAfter(new BookCriteria(), true, order, null, null, 5);
+        BookDTO last = first.getContent().get(4);
+        Slice<BookDTO> second = bookRepository.findBookViewsAfter(
+                new BookCriteria(), true, order, last.getTitle(), last.getId(), 5);
+
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.getContent()).extracting(BookDTO::getTitle)
+                .containsExactly("Title F", "Title G", "Title H", "Title I", "Title J");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void summaryModeSkipsDescriptionAndBiography() {
+        BookCriteria criteria = new BookCriteria();
+        criteria.setBestSeller(true);
+
+        Page<BookDTO> page = bookRepository.findBookViews(criteria, true, PageRequest.of(0, 20));
+
+        assertThat(page.getContent()).hasSize(BOOK_COUNT / 2);
+        assertThat(page.getContent()).allSatisfy(book -> {
+            assertThat(book.getDescription()).isNull();
+            assertThat(book.getAuthor().getBiography()).isNull();
+            assertThat(book.getEditor().getName()).isNotNull();
+        });
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+}
@@ -4,6 +4,12 @@ import com.example.cartservice.dto.BookInfo;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 @FeignClient(name = "book-service")
 public interface BookServiceClient {
@@ -11,6 +17,12 @@ public interface BookServiceClient {
     @GetMapping("/{id}")
     BookInfo getBookById(@PathVariable("id") Long id);
 
+    @PostMapping("/batch")
+    Map<Long, BookInfo> getBooksByIds(@RequestBody Collection<Long> ids);
+
+    @GetMapping("/snapshot")
+    List<BookInfo> getBookSnapshot(@RequestParam("afterId") Long afterId, @RequestParam("limit") int limit);
+
     @GetMapping("/{id}/stock")
     Integer getBookStock(@PathVariable("id") Long id);
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.example.cartservice.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Changements de schéma que {@code ddl-auto=update} n'applique pas aux tables existantes.
+ * <p>
+ * {@code carts.user_id} accepte NULL depuis que les paniers invités (identifiés par
+ * {@code session_id}) sont écrits par {@code CartStore} : update ajoute les colonnes mais ne
+ * relâche jamais un NOT NULL, et l'insertion d'un panier invité échouerait sur une base créée
+ * avant. Le store dépend de ce bean, il n'écrit donc rien avant la migration.
+ */
+@Component("cartSchemaMigration")
+@Slf4j
+public class CartSchemaMigration {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Injecté pour que Hibernate ait créé ou mis à jour les tables avant la migration
+    public CartSchemaMigration(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void migrate() {
+        Integer notNull = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() " +
+                        "AND table_name = 'carts' AND column_name = 'user_id' AND is_nullable = 'NO'",
+                Integer.class);
+        if (notNull != null && notNull > 0) {
+            jdbcTemplate.execute("ALTER TABLE carts MODIFY user_id BIGINT NULL");
+            log.info("Colonne carts.user_id rendue nullable (paniers invités)");
+        }
+    }
+}
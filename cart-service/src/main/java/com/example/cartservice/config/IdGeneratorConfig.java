@@ -0,0 +1,32 @@
+package com.example.cartservice.config;
+
+import com.example.cartservice.service.IdGenerator;
+import com.example.cartservice.service.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class IdGeneratorConfig {
+
+    /**
+     * Chaque instance doit avoir son propre node id (0-1023), fixé par cart.id.node-id. Sans
+     * node id, le démarrage échoue, sauf avec cart.id.single-instance=true (une seule instance,
+     * node 0) : deux instances sur le même node id généreraient les mêmes ids.
+     */
+    @Bean
+    public IdGenerator idGenerator(@Value("${cart.id.node-id:-1}") long nodeId,
+                                   @Value("${cart.id.single-instance:false}") boolean singleInstance) {
+        if (nodeId < 0) {
+            if (!singleInstance) {
+                throw new IllegalStateException("cart.id.node-id doit être fixé (0-1023, distinct par instance), "
+                        + "ou cart.id.single-instance=true si une seule instance tourne");
+            }
+            nodeId = 0;
+            log.warn("Aucun cart.id.node-id configuré, node id 0 (cart.id.single-instance=true)");
+        }
+        return new SnowflakeIdGenerator(nodeId);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.cartservice.config;
+
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AnonymousQueue;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RabbitMQConfig {
+
+    public static final String BOOK_CATALOG_EXCHANGE = "book.catalog.exchange";
+    public static final String CART_CATALOG_QUEUE = "cart.catalog.queue";
+    public static final String CART_REPRICE_EXCHANGE = "cart.reprice.exchange";
+    public static final String CART_CLEAR_QUEUE = "cart.clear.queue";
+    public static final String CART_CLEARED_EXCHANGE = "cart.cleared.exchange";
+    public static final String CART_CLEAR_DLX = "cart.clear.dlx";
+    public static final String CART_CLEAR_DLQ = "cart.clear.dlq";
+
+    // Exchanges
+    @Bean
+    public TopicExchange bookCatalogExchange() {
+        return new TopicExchange(BOOK_CATALOG_EXCHANGE);
+    }
+
+    // Changements de prix déjà écrits en base, diffusés à toutes les instances
+    @Bean
+    public FanoutExchange cartRepriceExchange() {
+        return new FanoutExchange(CART_REPRICE_EXCHANGE);
+    }
+
+    // Paniers déjà vidés en base, diffusés à toutes les instances
+    @Bean
+    public FanoutExchange cartClearedExchange() {
+        return new FanoutExchange(CART_CLEARED_EXCHANGE);
+    }
+
+    @Bean
+    public DirectExchange cartClearDeadLetterExchange() {
+        return new DirectExchange(CART_CLEAR_DLX);
+    }
+
+    // Queues
+    @Bean
+    public Queue cartCatalogQueue() {
+        return new Queue(CART_CATALOG_QUEUE, true);
+    }
+
+    // Une file privée par instance : chaque réplica de stock reçoit tous les évènements
+    @Bean
+    public Queue bookReplicaQueue() {
+        return new AnonymousQueue();
+    }
+
+    // Une file privée par instance : chacune met à jour les paniers qu'elle détient
+    @Bean
+    public Queue cartRepriceQueue() {
+        return new AnonymousQueue();
+    }
+
+    // Déclarée aussi par order-service, avec les mêmes arguments
+    @Bean
+    public Queue cartClearQueue() {
+        return QueueBuilder.durable(CART_CLEAR_QUEUE)
+                .deadLetterExchange(CART_CLEAR_DLX)
+                .deadLetterRoutingKey(CART_CLEAR_DLQ)
+                .build();
+    }
+
+    // Une file privée par instance : chacune vide les paniers qu'elle détient
+    @Bean
+    public Queue cartClearedQueue() {
+        return new AnonymousQueue();
+    }
+
+    // Messages illisibles ou en échec après une nouvelle tentative
+    @Bean
+    public Queue cartClearDeadLetterQueue() {
+        return new Queue(CART_CLEAR_DLQ, true);
+    }
+
+    // Bindings
+    @Bean
+    public Binding cartCatalogBinding() {
+        return BindingBuilder.bind(cartCatalogQueue())
+                .to(bookCatalogExchange())
+                .with("book.catalog.#");
+    }
+
+    @Bean
+    public Binding bookReplicaBinding() {
+        return BindingBuilder.bind(bookReplicaQueue())
+                .to(bookCatalogExchange())
+                .with("book.stock.#");
+    }
+
+    @Bean
+    public Binding cartRepriceBinding() {
+        return BindingBuilder.bind(cartRepriceQueue())
+                .to(cartRepriceExchange());
+    }
+
+    @Bean
+    public Binding cartClearedBinding() {
+        return BindingBuilder.bind(cartClearedQueue())
+                .to(cartClearedExchange());
+    }
+
+    @Bean
+    public Binding cartClearDeadLetterBinding() {
+        return BindingBuilder.bind(cartClearDeadLetterQueue())
+                .to(cartClearDeadLetterExchange())
+                .with(CART_CLEAR_DLQ);
+    }
+
+    // Message Converter
+    @Bean
+    public MessageConverter jsonMessageConverter() {
+        return new Jackson2JsonMessageConverter();
+    }
+
+    // Listener recevant les messages par lots (jusqu'à batch-size, ou ce qui est arrivé pendant receive-timeout)
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${cart.catalog.batch-size:200}") int batchSize,
+            @Value("${cart.catalog.receive-timeout-ms:500}") long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        return factory;
+    }
+
+    // Lots avec acquittement manuel : le listener acquitte chaque lot une fois écrit
+    @Bean
+    public SimpleRabbitListenerContainerFactory manualAckBatchContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory,
+            @Value("${cart.clear.batch-size:100}") int batchSize,
+            @Value("${cart.clear.receive-timeout-ms:500}") long receiveTimeout) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(batchSize);
+        factory.setReceiveTimeout(receiveTimeout);
+        return factory;
+    }
+}
@@ -1,13 +1,19 @@
 package com.example.cartservice.controller;
 
 
+import com.example.cartservice.dto.BulkCartItemRequest;
 import com.example.cartservice.dto.CartItemRequest;
 import com.example.cartservice.dto.CartResponse;
+import com.example.cartservice.dto.CartSummaryResponse;
 import com.example.cartservice.service.CartService;
+import com.example.cartservice.service.GuestCartService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -17,32 +23,85 @@ import org.springframework.web.bind.annotation.*;
 @Tag(name = "Carts", description = "Endpoints for shopping cart management")
 public class CartController {
 
+    // Panier invité sans état : contenu signé, renvoyé à chaque réponse
+    private static final String CART_TOKEN = "X-Cart-Token";
+
     private final CartService cartService;
+    private final GuestCartService guestCartService;
 
     @GetMapping
     @Operation(summary = "Get or create shopping cart")
     public ResponseEntity<CartResponse> getCart(
             @RequestHeader(value = "X-User-Id", required = false) Long userId,
-            @RequestHeader(value = "X-Session-Id", required = false) String sessionId) {
+            @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
+            @RequestHeader(value = CART_TOKEN, required = false) String cartToken,
+            @RequestParam(defaultValue = "false") boolean fresh) {
+        if (isGuest(userId, sessionId)) {
+            return guestResponse(guestCartService.getCart(cartToken));
+        }
+        // fresh : relu contre la base, pour la commande
+        if (fresh) {
+            return ResponseEntity.ok(cartService.getCurrentCart(userId, sessionId));
+        }
         return ResponseEntity.ok(cartService.getOrCreateCart(userId, sessionId));
     }
 
+    @GetMapping("/summary")
+    @Operation(summary = "Get cart item count and total (304 if unchanged since If-None-Match)")
+    public ResponseEntity<CartSummaryResponse> getCartSummary(
+            @RequestHeader(value = "X-User-Id", required = false) Long userId,
+            @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
+            @RequestHeader(value = CART_TOKEN, required = false) String cartToken,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        CartSummaryResponse summary = isGuest(userId, sessionId)
+                ? guestCartService.getSummary(cartToken)
+                : cartService.getCartSummary(userId, sessionId);
+        if (ifNoneMatch != null && ifNoneMatch.contains(summary.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(summary.getEtag()).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(summary.getEtag())
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(summary);
+    }
+
     @PostMapping("/items")
     @Operation(summary = "Add item to cart")
     public ResponseEntity<CartResponse> addItem(
             @RequestHeader(value = "X-User-Id", required = false) Long userId,
             @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
+            @RequestHeader(value = CART_TOKEN, required = false) String cartToken,
             @Valid @RequestBody CartItemRequest itemRequest) {
+        if (isGuest(userId, sessionId)) {
+            return guestResponse(guestCartService.addItem(cartToken, itemRequest));
+        }
         return ResponseEntity.ok(cartService.addItemToCart(userId, sessionId, itemRequest));
     }
 
+    @PostMapping("/items/bulk")
+    @Operation(summary = "Add several items to cart in one call")
+    public ResponseEntity<CartResponse> addItems(
+            @RequestHeader(value = "X-User-Id", required = false) Long userId,
+            @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
+            @RequestHeader(value = CART_TOKEN, required = false) String cartToken,
+            @Valid @RequestBody BulkCartItemRequest bulkRequest) {
+        if (isGuest(userId, sessionId)) {
+            return guestResponse(guestCartService.addItems(cartToken, bulkRequest.getItems()));
+        }
+        return ResponseEntity.ok(cartService.addItemsToCart(userId, sessionId, bulkRequest.getItems()));
+    }
+
     @PutMapping("/items/{itemId}")
     @Operation(summary = "Update cart item quantity")
     public ResponseEntity<CartResponse> updateItem(
             @RequestHeader(value = "X-User-Id", required = false) Long userId,
             @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
+            @RequestHeader(value = CART_TOKEN, required = false) String cartToken,
             @PathVariable Long itemId,
             @RequestParam Integer quantity) {
+        if (isGuest(userId, sessionId)) {
+            return guestResponse(guestCartService.updateItem(cartToken, itemId, quantity));
+        }
         return ResponseEntity.ok(cartService.updateCartItem(userId, sessionId, itemId, quantity));
     }
 
@@ -51,7 +110,11 @@ public class CartController {
     public ResponseEntity<CartResponse> removeItem(
             @RequestHeader(value = "X-User-Id", required = false) Long userId,
             @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
+            @RequestHeader(value = CART_TOKEN, required = false) String cartToken,
             @PathVariable Long itemId) {
+        if (isGuest(userId, sessionId)) {
+            return guestResponse(guestCartService.removeItem(cartToken, itemId));
+        }
         return ResponseEntity.ok(cartService.removeItemFromCart(userId, sessionId, itemId));
     }
 
@@ -59,17 +122,36 @@ public class CartController {
     @Operation(summary = "Clear cart")
     public ResponseEntity<Void> clearCart(
             @RequestHeader(value = "X-User-Id", required = false) Long userId,
-            @RequestHeader(value = "X-Session-Id", required = false) String sessionId) {
+            @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
+            @RequestHeader(value = CART_TOKEN, required = false) String cartToken) {
+        if (isGuest(userId, sessionId)) {
+            return ResponseEntity.ok().header(CART_TOKEN, guestCartService.clearCart(cartToken).getToken()).build();
+        }
         cartService.clearCart(userId, sessionId);
         return ResponseEntity.ok().build();
     }
 
     @PostMapping("/merge")
-    @Operation(summary = "Merge session cart with user cart")
+    @Operation(summary = "Merge session or guest cart with user cart")
     public ResponseEntity<Void> mergeCarts(
-            @RequestHeader("X-Session-Id") String sessionId,
+            @RequestHeader(value = "X-Session-Id", required = false) String sessionId,
+            @RequestHeader(value = CART_TOKEN, required = false) String cartToken,
             @RequestHeader("X-User-Id") Long userId) {
-        cartService.mergeCarts(sessionId, userId);
+        if (cartToken != null) {
+            guestCartService.mergeCart(cartToken, userId);
+        }
+        if (sessionId != null) {
+            cartService.mergeCarts(sessionId, userId);
+        }
         return ResponseEntity.ok().build();
     }
-}
\ No newline at end of file
+
+    // Ni utilisateur ni session : panier invité porté par le jeton
+    private boolean isGuest(Long userId, String sessionId) {
+        return userId == null && sessionId == null;
+    }
+
+    private ResponseEntity<CartResponse> guestResponse(GuestCartService.Result result) {
+        return ResponseEntity.ok().header(CART_TOKEN, result.getToken()).body(result.getCart());
+    }
+}
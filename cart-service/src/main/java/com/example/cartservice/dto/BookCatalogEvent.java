@@ -0,0 +1,14 @@
+package com.example.cartservice.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+// Publié par book-service quand le titre, l'auteur ou le prix d'un livre change
+@Data
+public class BookCatalogEvent {
+    private Long bookId;
+    private String title;
+    private String author;
+    private Double price;
+    private LocalDateTime changedAt;
+}
@@ -10,4 +10,5 @@ public class BookInfo {
     private Double price;
     private Integer stock;
     private String isbn;
+    private Long sequence;
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package com.example.cartservice.dto;
+
+import lombok.Data;
+
+// État complet d'un livre après une modification, publié par book-service (book.stock.changed)
+@Data
+public class BookStockEvent {
+    private Long bookId;
+    private Long sequence;
+    private String title;
+    private String author;
+    private Double price;
+    private Integer stock;
+    private boolean deleted;
+}
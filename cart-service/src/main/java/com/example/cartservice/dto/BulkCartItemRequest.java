@@ -0,0 +1,16 @@
+package com.example.cartservice.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BulkCartItemRequest {
+
+    @NotEmpty(message = "At least one item is required")
+    @Size(max = 100, message = "At most 100 items can be added at once")
+    private List<@Valid CartItemRequest> items = new ArrayList<>();
+}
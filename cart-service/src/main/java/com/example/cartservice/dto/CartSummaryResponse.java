@@ -0,0 +1,21 @@
+package com.example.cartservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+// Résumé du panier pour le badge de l'en-tête : pas de lignes
+@Data
+public class CartSummaryResponse {
+    private Long cartId;
+    private String sessionId;
+    private Integer itemCount;
+    private Integer totalQuantity;
+    private Double totalAmount;
+    private LocalDateTime updatedAt;
+    // Version du panier au moment du résumé (incrémentée à chaque modification)
+    private Long version;
+
+    @JsonIgnore
+    private String etag;
+}
@@ -9,22 +9,34 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "carts")
+@Table(name = "carts", uniqueConstraints = {
+        // Un seul panier par utilisateur et par session
+        @UniqueConstraint(name = "uk_carts_user_id", columnNames = "user_id"),
+        @UniqueConstraint(name = "uk_carts_session_id", columnNames = "session_id")
+}, indexes = {
+        @Index(name = "idx_carts_expires_at", columnList = "expires_at")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Cart {
 
+    // Attribué par CartStore (IdGenerator), pour insérer les nouveaux paniers par lots
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "user_id", nullable = false)
+    // Null pour les paniers invités, identifiés par session_id
+    @Column(name = "user_id")
     private Long userId;
 
     @Column(name = "session_id")
     private String sessionId;
 
+    // Vérifiée quand CartPersister écrit le panier, pour détecter l'écriture d'une autre instance
+    @Version
+    @Column(nullable = false)
+    private Long version = 0L;
+
     @OneToMany(mappedBy = "cart", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<CartItem> items = new ArrayList<>();
 
@@ -45,9 +57,13 @@ public class Cart {
 
     @PrePersist
     protected void onCreate() {
-        createdAt = LocalDateTime.now();
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
         updatedAt = LocalDateTime.now();
-        expiresAt = LocalDateTime.now().plusHours(2); // Panier expire après 2h
+        if (expiresAt == null) {
+            expiresAt = LocalDateTime.now().plusHours(2); // Panier expire après 2h
+        }
     }
 
     @PreUpdate
@@ -6,14 +6,15 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "cart_items")
+@Table(name = "cart_items", uniqueConstraints =
+        @UniqueConstraint(name = "uk_cart_items_cart_book", columnNames = {"cart_id", "book_id"}))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class CartItem {
 
+    // Attribué par CartStore (IdGenerator), comme Cart.id
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
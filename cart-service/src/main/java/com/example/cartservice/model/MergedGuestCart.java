@@ -0,0 +1,33 @@
+package com.example.cartservice.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Panier invité (jeton) déjà fusionné : un jeton rejoué, sur n'importe quelle instance, n'est plus accepté
+@Entity
+@Table(name = "merged_guest_carts", indexes = {
+        @Index(name = "idx_merged_guest_carts_expires_at", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MergedGuestCart {
+
+    // Id du jeton (GuestCartToken.id)
+    @Id
+    @Column(name = "token_id")
+    private Long tokenId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "merged_at", nullable = false)
+    private LocalDateTime mergedAt;
+
+    // Expiration du jeton : au-delà, il est refusé de toute façon et la ligne peut partir
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
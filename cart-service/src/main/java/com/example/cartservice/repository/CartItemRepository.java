@@ -2,7 +2,11 @@ package com.example.cartservice.repository;
 
 import com.example.cartservice.model.CartItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +15,21 @@ public interface CartItemRepository extends JpaRepository<CartItem, Long> {
     Optional<CartItem> findByCartIdAndBookId(Long cartId, Long bookId);
 
     void deleteByCartId(Long cartId);
+
+    @Modifying
+    @Query("DELETE FROM CartItem i WHERE i.cart.id IN :cartIds")
+    int deleteByCartIdIn(@Param("cartIds") Collection<Long> cartIds);
+
+    @Modifying
+    @Query("DELETE FROM CartItem i WHERE i.cart.id IN (SELECT c.id FROM Cart c WHERE c.userId IN :userIds)")
+    int deleteByUserIdIn(@Param("userIds") Collection<Long> userIds);
+
+    // Met à jour toutes les lignes d'un livre en une requête (voir CartRepricer)
+    @Modifying
+    @Query("UPDATE CartItem i SET i.title = :title, i.author = :author, i.price = :price, " +
+            "i.totalPrice = :price * i.quantity " +
+            "WHERE i.bookId = :bookId " +
+            "AND (i.price <> :price OR i.title <> :title OR i.author IS NULL OR i.author <> :author)")
+    int repriceByBookId(@Param("bookId") Long bookId, @Param("title") String title,
+                        @Param("author") String author, @Param("price") Double price);
 }
\ No newline at end of file
@@ -1,11 +1,14 @@
 package com.example.cartservice.repository;
 
 import com.example.cartservice.model.Cart;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,8 +19,52 @@ public interface CartRepository extends JpaRepository<Cart, Long> {
 
     Optional<Cart> findBySessionId(String sessionId);
 
+    @Query("SELECT DISTINCT c FROM Cart c LEFT JOIN FETCH c.items WHERE c.userId = :userId")
+    Optional<Cart> findWithItemsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT DISTINCT c FROM Cart c LEFT JOIN FETCH c.items WHERE c.sessionId = :sessionId")
+    Optional<Cart> findWithItemsBySessionId(@Param("sessionId") String sessionId);
+
+    // Version seule, pour vérifier qu'une copie en mémoire est à jour (voir CartStore#readCurrent)
+    @Query("SELECT c.version FROM Cart c WHERE c.userId = :userId")
+    Optional<Long> findVersionByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT c.version FROM Cart c WHERE c.sessionId = :sessionId")
+    Optional<Long> findVersionBySessionId(@Param("sessionId") String sessionId);
+
+    @Query("SELECT DISTINCT c FROM Cart c LEFT JOIN FETCH c.items WHERE c.id IN :ids")
+    List<Cart> findAllWithItemsByIdIn(@Param("ids") Collection<Long> ids);
+
+    List<Cart> findByUserIdIn(Collection<Long> userIds);
+
+    List<Cart> findBySessionIdIn(Collection<String> sessionIds);
+
+    @Modifying
+    @Query("DELETE FROM Cart c WHERE c.id IN :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Version incrémentée : une copie en mémoire encore pleine ne peut plus être écrite sur la ligne vidée
+    @Modifying
+    @Query("UPDATE Cart c SET c.totalAmount = 0.0, c.itemCount = 0, c.version = c.version + 1, c.updatedAt = :now " +
+            "WHERE c.userId IN :userIds")
+    int resetTotalsByUserIdIn(@Param("userIds") Collection<Long> userIds, @Param("now") LocalDateTime now);
+
+    // Recalcule les totaux des seuls paniers contenant ces livres ; la version incrémentée fait
+    // refuser l'écriture d'une copie en mémoire antérieure (voir CartPersister#persist)
+    @Modifying
+    @Query("UPDATE Cart c SET " +
+            "c.totalAmount = (SELECT COALESCE(SUM(i.totalPrice), 0.0) FROM CartItem i WHERE i.cart = c), " +
+            "c.itemCount = (SELECT CAST(COUNT(i) AS Integer) FROM CartItem i WHERE i.cart = c), " +
+            "c.version = c.version + 1, c.updatedAt = :now " +
+            "WHERE c.id IN (SELECT i.cart.id FROM CartItem i WHERE i.bookId IN :bookIds)")
+    int recalculateTotalsByBookIds(@Param("bookIds") Collection<Long> bookIds, @Param("now") LocalDateTime now);
+
     @Query("SELECT c FROM Cart c WHERE c.expiresAt < :now")
     List<Cart> findExpiredCarts(@Param("now") LocalDateTime now);
 
+    // Ids seulement, une tranche à la fois (voir CartExpirySweeper)
+    @Query("SELECT c.id FROM Cart c WHERE c.expiresAt < :now ORDER BY c.expiresAt")
+    List<Long> findExpiredCartIds(@Param("now") LocalDateTime now, Pageable pageable);
+
     void deleteByExpiresAtBefore(LocalDateTime dateTime);
 }
\ No newline at end of file
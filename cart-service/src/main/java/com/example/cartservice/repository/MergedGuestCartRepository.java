@@ -0,0 +1,27 @@
+package com.example.cartservice.repository;
+
+import com.example.cartservice.model.MergedGuestCart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+
+@Repository
+public interface MergedGuestCartRepository extends JpaRepository<MergedGuestCart, Long> {
+
+    // 1 si le jeton est réservé par cet appel, 0 s'il était déjà fusionné
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO merged_guest_carts (token_id, user_id, merged_at, expires_at) " +
+            "VALUES (:tokenId, :userId, :mergedAt, :expiresAt)", nativeQuery = true)
+    int claim(@Param("tokenId") Long tokenId, @Param("userId") Long userId,
+              @Param("mergedAt") LocalDateTime mergedAt, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM MergedGuestCart m WHERE m.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,261 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.client.BookServiceClient;
+import com.example.cartservice.dto.BookInfo;
+import com.example.cartservice.dto.BookStockEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Copie locale du stock, du prix, du titre et de l'auteur des livres : ajouter ou modifier un
+ * article du panier n'appelle pas book-service.
+ * <p>
+ * Le réplica est chargé page par page depuis book-service ({@code GET /snapshot}) et tenu à
+ * jour par ses {@link BookStockEvent}. Chaque événement porte l'état complet d'un livre et la
+ * séquence de modification de sa ligne : un événement plus ancien que l'état détenu est ignoré,
+ * et un saut de séquence signifie que des événements ont été perdus, ce qui relance le
+ * chargement du snapshot. Le snapshot est aussi rechargé toutes les
+ * {@code cart.replica.resync-interval-ms}, ce qui borne la durée pendant laquelle la perte du
+ * dernier événement passe inaperçue. Tant que le premier snapshot n'est pas chargé,
+ * {@link #find} ne renvoie rien et les appelants interrogent book-service.
+ * <p>
+ * Les entrées sont rangées dans une table à adressage ouvert indexée par l'id primitif du livre,
+ * les valeurs dans des tableaux parallèles : détenir tout le catalogue ne coûte ni boxing ni
+ * objet par entrée. Le stock lu ici ne sert qu'à filtrer les requêtes : il n'est réellement pris
+ * qu'à la réservation de la commande.
+ */
+@Component
+@Slf4j
+public class BookReplica {
+
+    private static final int DELETED = -1;
+
+    private final BookServiceClient bookServiceClient;
+    private final int pageSize;
+    private final long resyncIntervalMillis;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] keys;          // 0 = case libre
+    private long[] sequences;
+    private int[] stocks;         // DELETED une fois le livre supprimé dans book-service
+    private long[] prices;        // en centimes
+    private String[] titles;
+    private String[] authors;
+    private int size;
+
+    private volatile boolean ready;
+    private volatile boolean resyncRequested;
+    private volatile long lastSnapshotMillis;
+
+    private final Counter events;
+    private final Counter gaps;
+    private final Counter misses;
+
+    public BookReplica(BookServiceClient bookServiceClient, MeterRegistry meterRegistry,
+                       @Value("${cart.replica.page-size:500}") int pageSize,
+                       @Value("${cart.replica.resync-interval-ms:600000}") long resyncIntervalMillis,
+                       @Value("${cart.replica.initial-capacity:1024}") int initialCapacity) {
+        this.bookServiceClient = bookServiceClient;
+        this.pageSize = pageSize;
+        this.resyncIntervalMillis = resyncIntervalMillis;
+        allocate(Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1);
+
+        this.events = meterRegistry.counter("cart.replica.events");
+        this.gaps = meterRegistry.counter("cart.replica.gaps");
+        this.misses = meterRegistry.counter("cart.replica.misses");
+        meterRegistry.gauge("cart.replica.books", this, BookReplica::size);
+    }
+
+    /**
+     * Renvoie l'état répliqué du livre, ou {@code null} si le réplica ne peut pas répondre (pas
+     * encore chargé, livre inconnu ou supprimé) : l'appelant interroge alors book-service.
+     */
+    public BookInfo find(Long bookId) {
+        if (ready && bookId != null) {
+            lock.readLock().lock();
+            try {
+                int slot = slotOf(bookId);
+                if (slot >= 0 && stocks[slot] != DELETED) {
+                    BookInfo info = new BookInfo();
+                    info.setId(bookId);
+                    info.setTitle(titles[slot]);
+                    info.setAuthor(authors[slot]);
+                    info.setPrice(prices[slot] / 100.0);
+                    info.setStock(stocks[slot]);
+                    info.setSequence(sequences[slot]);
+                    return info;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @RabbitListener(queues = "#{bookReplicaQueue.name}", containerFactory = "batchContainerFactory")
+    public void onStockEvents(List<BookStockEvent> stockEvents) {
+        events.increment(stockEvents.size());
+        for (BookStockEvent event : stockEvents) {
+            if (event.getBookId() == null || event.getSequence() == null) {
+                continue;
+            }
+            if (event.isDeleted()) {
+                apply(event.getBookId(), event.getSequence(), DELETED, 0L, null, null, true);
+            } else if (event.getStock() != null && event.getPrice() != null) {
+                apply(event.getBookId(), event.getSequence(), event.getStock(), cents(event.getPrice()),
+                        event.getTitle(), event.getAuthor(), true);
+            }
+        }
+    }
+
+    /**
+     * Charge le snapshot si le réplica n'est pas encore prêt, si des événements perdus ont été
+     * détectés, ou si le dernier snapshot est plus ancien que l'intervalle de resynchronisation.
+     */
+    @Scheduled(fixedDelayString = "${cart.replica.refresh-interval-ms:30000}")
+    public void refresh() {
+        if (ready && !resyncRequested && System.currentTimeMillis() - lastSnapshotMillis < resyncIntervalMillis) {
+            return;
+        }
+        try {
+            loadSnapshot();
+        } catch (Exception e) {
+            log.warn("Impossible de charger l'instantané des livres, {}", ready ? "réplique actuelle conservée" : "réplique toujours vide", e);
+        }
+    }
+
+    private void loadSnapshot() {
+        resyncRequested = false;
+        long startedAt = System.currentTimeMillis();
+        long afterId = 0;
+        int loaded = 0;
+        while (true) {
+            List<BookInfo> page = bookServiceClient.getBookSnapshot(afterId, pageSize);
+            for (BookInfo info : page) {
+                if (info.getSequence() != null && info.getStock() != null && info.getPrice() != null) {
+                    apply(info.getId(), info.getSequence(), info.getStock(), cents(info.getPrice()),
+                            info.getTitle(), info.getAuthor(), false);
+                }
+                afterId = info.getId();
+            }
+            loaded += page.size();
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+        lastSnapshotMillis = startedAt;
+        ready = true;
+        log.info("{} livres chargés dans la réplique en {} ms", loaded, System.currentTimeMillis() - startedAt);
+    }
+
+    private void apply(long bookId, long sequence, int stock, long price, String title, String author,
+                       boolean fromEvent) {
+        if (bookId <= 0) {
+            return;
+        }
+        boolean gap = false;
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(bookId);
+            if (slot >= 0) {
+                if (sequence <= sequences[slot]) {
+                    return;
+                }
+                gap = fromEvent && sequence != sequences[slot] + 1;
+            } else {
+                slot = insert(bookId);
+            }
+            sequences[slot] = sequence;
+            stocks[slot] = stock;
+            prices[slot] = price;
+            titles[slot] = title;
+            authors[slot] = author;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (gap && stock != DELETED) {
+            gaps.increment();
+            resyncRequested = true;
+        }
+    }
+
+    private int slotOf(long bookId) {
+        int mask = keys.length - 1;
+        for (int i = hash(bookId) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == bookId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int insert(long bookId) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int i = hash(bookId) & mask;
+        while (keys[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = bookId;
+        size++;
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldSequences = sequences;
+        int[] oldStocks = stocks;
+        long[] oldPrices = prices;
+        String[] oldTitles = titles;
+        String[] oldAuthors = authors;
+
+        allocate(oldKeys.length * 2);
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldKeys[old] != 0) {
+                int slot = insert(oldKeys[old]);
+                sequences[slot] = oldSequences[old];
+                stocks[slot] = oldStocks[old];
+                prices[slot] = oldPrices[old];
+                titles[slot] = oldTitles[old];
+                authors[slot] = oldAuthors[old];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        sequences = new long[capacity];
+        stocks = new int[capacity];
+        prices = new long[capacity];
+        titles = new String[capacity];
+        authors = new String[capacity];
+        size = 0;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static long cents(Double price) {
+        return Math.round(price * 100);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.config.RabbitMQConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Vide les paniers après une commande ({@code ClearCartEvent} publié par order-service).
+ * <p>
+ * Les évènements sont reçus par lots et tous les paniers d'un lot sont vidés par un seul
+ * {@code DELETE} (voir {@link CartPersister#clearUserCarts}). Les utilisateurs sont ensuite
+ * diffusés sur {@code cart.cleared.exchange}, pour que chaque instance vide les copies qu'elle
+ * détient dans {@link CartStore}. Le lot n'est acquitté qu'une fois écrit et diffusé. Un message illisible part directement en
+ * dead-letter ({@code cart.clear.dlq}) ; en cas d'échec, les messages sont remis une fois
+ * dans la file, puis envoyés en dead-letter.
+ */
+@Component
+@Slf4j
+public class CartClearListener {
+
+    private final CartPersister cartPersister;
+    private final CartStore cartStore;
+    private final RabbitTemplate rabbitTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final Counter clearedCarts;
+    private final Counter deadLettered;
+
+    public CartClearListener(CartPersister cartPersister, CartStore cartStore, RabbitTemplate rabbitTemplate,
+                             ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.cartPersister = cartPersister;
+        this.cartStore = cartStore;
+        this.rabbitTemplate = rabbitTemplate;
+        this.objectMapper = objectMapper;
+        this.clearedCarts = meterRegistry.counter("cart.clear.carts");
+        this.deadLettered = meterRegistry.counter("cart.clear.dead.lettered");
+    }
+
+    @RabbitListener(queues = RabbitMQConfig.CART_CLEAR_QUEUE, containerFactory = "manualAckBatchContainerFactory")
+    public void onClearCartEvents(List<Message> messages, Channel channel) throws IOException {
+        Set<Long> userIds = new LinkedHashSet<>();
+        List<Message> accepted = new ArrayList<>();
+        for (Message message : messages) {
+            Long userId = readUserId(message);
+            if (userId == null) {
+                channel.basicNack(deliveryTag(message), false, false);
+                deadLettered.increment();
+                continue;
+            }
+            userIds.add(userId);
+            accepted.add(message);
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        try {
+            cartPersister.clearUserCarts(userIds);
+            rabbitTemplate.convertAndSend(RabbitMQConfig.CART_CLEARED_EXCHANGE, "", new ArrayList<>(userIds));
+        } catch (Exception e) {
+            log.error("Erreur lors du vidage de {} paniers", userIds.size(), e);
+            for (Message message : accepted) {
+                boolean requeue = !message.getMessageProperties().isRedelivered();
+                channel.basicNack(deliveryTag(message), false, requeue);
+                if (!requeue) {
+                    deadLettered.increment();
+                }
+            }
+            return;
+        }
+
+        // Un seul acquittement pour tout le lot
+        channel.basicAck(deliveryTag(accepted.get(accepted.size() - 1)), true);
+        clearedCarts.increment(userIds.size());
+        log.info("{} paniers vidés ({} évènements)", userIds.size(), accepted.size());
+    }
+
+    // File propre à chaque instance : toutes reçoivent les paniers vidés en base
+    @RabbitListener(queues = "#{cartClearedQueue.name}")
+    public void onCartsCleared(List<Long> userIds) {
+        int cleared = cartStore.clearUserCarts(userIds);
+        log.debug("{} paniers vidés en mémoire", cleared);
+    }
+
+    // order-service envoie l'évènement déjà sérialisé en JSON : le corps peut être une chaîne JSON
+    private Long readUserId(Message message) {
+        try {
+            JsonNode node = objectMapper.readTree(message.getBody());
+            if (node.isTextual()) {
+                node = objectMapper.readTree(node.asText());
+            }
+            JsonNode userId = node.path("userId");
+            return userId.canConvertToLong() ? userId.asLong() : null;
+        } catch (IOException e) {
+            log.warn("Évènement de vidage de panier illisible", e);
+            return null;
+        }
+    }
+
+    private static long deliveryTag(Message message) {
+        return message.getMessageProperties().getDeliveryTag();
+    }
+}
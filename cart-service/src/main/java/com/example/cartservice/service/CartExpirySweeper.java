@@ -0,0 +1,107 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.repository.CartRepository;
+import com.example.cartservice.repository.MergedGuestCartRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Expire les paniers à deux niveaux :
+ * <ul>
+ *   <li>{@link #tick()} avance la {@link CartExpiryWheel} et retire les paniers expirés de
+ *   {@link CartStore}, qui supprime leurs lignes au flush suivant ;</li>
+ *   <li>{@link #sweep()} supprime les lignes expirées des paniers qui ne sont plus en mémoire,
+ *   par tranches de {@code cart.expiry.sweep-chunk-size} ids, chaque tranche avec deux
+ *   {@code DELETE} ensemblistes dans sa propre transaction : aucune entité n'est chargée et
+ *   aucun verrou n'est tenu longtemps.</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+public class CartExpirySweeper {
+
+    private final CartExpiryWheel expiryWheel;
+    private final CartStore cartStore;
+    private final CartRepository cartRepository;
+    private final CartPersister cartPersister;
+    private final MergedGuestCartRepository mergedGuestCartRepository;
+    private final int chunkSize;
+    private final int maxChunks;
+
+    private final Counter evictedCarts;
+    private final Counter sweptCarts;
+    private final Timer sweepTimer;
+
+    public CartExpirySweeper(CartExpiryWheel expiryWheel, CartStore cartStore,
+                             CartRepository cartRepository, CartPersister cartPersister,
+                             MergedGuestCartRepository mergedGuestCartRepository, MeterRegistry meterRegistry,
+                             @Value("${cart.expiry.sweep-chunk-size:500}") int chunkSize,
+                             @Value("${cart.expiry.sweep-max-chunks:100}") int maxChunks) {
+        this.expiryWheel = expiryWheel;
+        this.cartStore = cartStore;
+        this.cartRepository = cartRepository;
+        this.cartPersister = cartPersister;
+        this.mergedGuestCartRepository = mergedGuestCartRepository;
+        this.chunkSize = chunkSize;
+        this.maxChunks = maxChunks;
+
+        this.evictedCarts = meterRegistry.counter("cart.expiry.evicted.carts");
+        this.sweptCarts = meterRegistry.counter("cart.expiry.swept.carts");
+        this.sweepTimer = meterRegistry.timer("cart.expiry.sweep");
+        meterRegistry.gauge("cart.expiry.wheel.size", expiryWheel, CartExpiryWheel::size);
+    }
+
+    @Scheduled(fixedDelayString = "${cart.expiry.wheel.tick-ms:1000}")
+    public void tick() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        for (String key : expiryWheel.advance(now)) {
+            if (cartStore.expire(key, now)) {
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            evictedCarts.increment(evicted);
+            log.debug("{} paniers expirés en mémoire", evicted);
+        }
+    }
+
+    /**
+     * Supprime jusqu'à {@code sweep-max-chunks} tranches de paniers expirés.
+     *
+     * @return le nombre de paniers supprimés
+     */
+    @Scheduled(fixedDelayString = "${cart.expiry.sweep-interval-ms:60000}")
+    public int sweep() {
+        return sweepTimer.record(() -> {
+            LocalDateTime now = LocalDateTime.now();
+            int swept = 0;
+            for (int chunk = 0; chunk < maxChunks; chunk++) {
+                List<Long> ids = cartRepository.findExpiredCartIds(now, PageRequest.of(0, chunkSize));
+                if (ids.isEmpty()) {
+                    break;
+                }
+                int deleted = cartPersister.delete(ids);
+                swept += deleted;
+                sweptCarts.increment(deleted);
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+            }
+            if (swept > 0) {
+                log.info("{} paniers expirés supprimés", swept);
+            }
+            // Jetons fusionnés qui ont expiré : refusés de toute façon
+            mergedGuestCartRepository.deleteExpired(now);
+            return swept;
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.cartservice.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Roue temporelle (hashed timing wheel) des échéances des paniers de {@link CartStore}.
+ * Planifier coûte O(1) (un ajout dans une case) et replanifier remplace simplement l'entrée
+ * précédente, abandonnée quand sa case revient. Chaque {@link #advance(long)} ne visite que les
+ * cases des ticks écoulés, au lieu de parcourir tous les paniers.
+ */
+@Component
+public class CartExpiryWheel {
+
+    private final long tickMillis;
+    private final Queue<Entry>[] slots;
+    private final int mask;
+    // Échéance actuelle de chaque clé de panier ; les entrées qui ne la reprennent pas sont périmées
+    private final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+    private volatile long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public CartExpiryWheel(@Value("${cart.expiry.wheel.tick-ms:1000}") long tickMillis,
+                           @Value("${cart.expiry.wheel.slots:4096}") int slotCount) {
+        if (Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("cart.expiry.wheel.slots must be a power of two: " + slotCount);
+        }
+        this.tickMillis = tickMillis;
+        this.slots = new Queue[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.mask = slotCount - 1;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    public void schedule(String key, long deadlineMillis) {
+        if (deadlineMillis == Long.MAX_VALUE) {
+            cancel(key);
+            return;
+        }
+        Long previous = deadlines.put(key, deadlineMillis);
+        if (previous == null || previous != deadlineMillis) {
+            // Une échéance déjà passée va dans la prochaine case visitée
+            long slotTick = Math.max(tick(deadlineMillis), currentTick + 1);
+            slots[(int) (slotTick & mask)].add(new Entry(key, deadlineMillis));
+        }
+    }
+
+    public void cancel(String key) {
+        deadlines.remove(key);
+    }
+
+    /**
+     * Avance la roue jusqu'à {@code nowMillis} et renvoie les clés dont l'échéance est passée.
+     * Un seul thread à la fois peut avancer la roue.
+     */
+    public synchronized List<String> advance(long nowMillis) {
+        List<String> expired = new ArrayList<>();
+        long targetTick = tick(nowMillis);
+        // Après une longue pause, un tour complet visite toutes les cases
+        long firstTick = Math.max(currentTick + 1, targetTick - mask);
+        for (long t = firstTick; t <= targetTick; t++) {
+            Iterator<Entry> it = slots[(int) (t & mask)].iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next();
+                Long deadline = deadlines.get(entry.key);
+                if (deadline == null || deadline != entry.deadlineMillis) {
+                    it.remove();
+                } else if (entry.deadlineMillis <= nowMillis) {
+                    it.remove();
+                    if (deadlines.remove(entry.key, entry.deadlineMillis)) {
+                        expired.add(entry.key);
+                    }
+                }
+                // Sinon l'échéance est à un tour ou plus : on la garde
+            }
+        }
+        currentTick = Math.max(currentTick, targetTick);
+        return expired;
+    }
+
+    public int size() {
+        return deadlines.size();
+    }
+
+    private long tick(long millis) {
+        return millis / tickMillis;
+    }
+
+    private static class Entry {
+        private final String key;
+        private final long deadlineMillis;
+
+        private Entry(String key, long deadlineMillis) {
+            this.key = key;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.cartservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Journal en ajout seul des modifications de paniers pas encore écrites en base, pour que
+ * l'écriture différée de {@link CartStore} survive à un redémarrage. Chaque ligne est l'état
+ * complet d'un panier (ou une suppression) ; le journal est découpé en segments, supprimés une
+ * fois couverts par un flush.
+ * <p>
+ * Un ajout ne fait que sérialiser l'état (sous le verrou du shard de l'appelant) et le mettre en
+ * file, sans verrou commun ni appel système : les shards ne s'attendent pas les uns les autres.
+ * {@link #sync()}, toutes les {@code cart.store.journal.sync-interval-ms}, écrit la file par lot
+ * et la force sur le disque (validation groupée) : un crash fait perdre au plus un intervalle de
+ * synchronisation des modifications pas encore écrites en base.
+ */
+@Component
+@Slf4j
+class CartJournal {
+
+    private static final String SEGMENT_PREFIX = "cart-journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path directory;
+
+    // Lignes ajoutées et pas encore écrites dans le segment, dans l'ordre des ajouts
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+
+    private long segmentNumber;
+    private FileChannel channel;
+    private Writer writer;
+
+    CartJournal(ObjectMapper objectMapper,
+                @Value("${cart.store.journal.enabled:true}") boolean enabled,
+                @Value("${cart.store.journal.dir:${java.io.tmpdir}/cart-journal}") String directory) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * Relit toutes les entrées des segments existants, du plus ancien au plus récent, et ouvre
+     * un nouveau segment.
+     */
+    synchronized List<Entry> replay() {
+        List<Entry> entries = new ArrayList<>();
+        if (!enabled) {
+            return entries;
+        }
+        try {
+            Files.createDirectories(directory);
+            for (Path segment : segments()) {
+                segmentNumber = Math.max(segmentNumber, segmentNumber(segment));
+                try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        try {
+                            entries.add(objectMapper.readValue(line, Entry.class));
+                        } catch (IOException e) {
+                            // Dernière ligne tronquée par un crash : tout ce qui précède est utilisable
+                            log.warn("Ligne illisible du journal des paniers ignorée dans {}", segment.getFileName());
+                        }
+                    }
+                }
+            }
+            openNextSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the cart journal in " + directory, e);
+        }
+        return entries;
+    }
+
+    void appendSave(CartState state) {
+        Entry entry = new Entry();
+        entry.setOp(Entry.SAVE);
+        entry.setCart(state);
+        append(entry);
+    }
+
+    void appendDelete(Long cartId) {
+        Entry entry = new Entry();
+        entry.setOp(Entry.DELETE);
+        entry.setCartId(cartId);
+        append(entry);
+    }
+
+    synchronized void sync() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            drain();
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Échec de la synchronisation du journal des paniers", e);
+        }
+    }
+
+    /**
+     * Écrit la file dans le segment courant, ouvre un nouveau segment et renvoie son numéro : les
+     * segments inférieurs ne contiennent que des modifications déjà appliquées aux paniers en
+     * mémoire.
+     */
+    synchronized long rotate() {
+        if (!enabled) {
+            return 0;
+        }
+        try {
+            openNextSegment();
+        } catch (IOException e) {
+            log.error("Échec du changement de segment du journal des paniers", e);
+        }
+        return segmentNumber;
+    }
+
+    /**
+     * Supprime les segments inférieurs à {@code segment}, une fois tout leur contenu en base.
+     */
+    synchronized void truncateBefore(long segment) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            for (Path path : segments()) {
+                if (segmentNumber(path) < segment) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Échec de la suppression des anciens segments du journal des paniers", e);
+        }
+    }
+
+    synchronized void close() {
+        closeSegment();
+    }
+
+    // Sérialisé tout de suite : l'état du panier continue de changer après l'appel
+    private void append(Entry entry) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            pending.add(objectMapper.writeValueAsString(entry));
+        } catch (IOException e) {
+            // L'écriture en base a quand même lieu ; seule la reprise après crash de ce changement est perdue
+            log.error("Échec de l'ajout au journal des paniers", e);
+        }
+    }
+
+    // Sous le verrou du journal : écrit les lignes en file en un lot
+    private void drain() throws IOException {
+        for (String line; (line = pending.poll()) != null; ) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private void openNextSegment() throws IOException {
+        closeSegment();
+        segmentNumber++;
+        Path path = directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            drain();
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            log.error("Échec de la fermeture du segment du journal des paniers", e);
+        }
+        channel = null;
+        writer = null;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    @Data
+    static class Entry {
+        static final String SAVE = "SAVE";
+        static final String DELETE = "DELETE";
+
+        private String op;
+        private CartState cart;
+        private Long cartId;
+    }
+}
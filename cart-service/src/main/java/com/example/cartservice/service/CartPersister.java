@@ -0,0 +1,216 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.dto.BookCatalogEvent;
+import com.example.cartservice.model.Cart;
+import com.example.cartservice.model.CartItem;
+import com.example.cartservice.repository.CartItemRepository;
+import com.example.cartservice.repository.CartRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Écrit un lot d'instantanés de paniers de {@link CartStore} en une transaction : une requête
+ * pour charger les lignes existantes, puis des insertions, mises à jour et suppressions par
+ * lots. Les instantanés sont des états complets : écrire deux fois le même (par exemple après
+ * une relecture du journal) est sans effet.
+ * <p>
+ * Un instantané n'est écrit que sur la ligne dont il a été lu : si la {@code version} de la
+ * ligne a bougé, ou si une autre ligne de panier existe pour le même utilisateur ou la même
+ * session, une autre instance l'a écrite et l'instantané est renvoyé comme conflit (Hibernate
+ * vérifie aussi la version à la mise à jour, pour une écriture survenue entre les deux).
+ */
+@Component
+@RequiredArgsConstructor
+class CartPersister {
+
+    private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Transactional
+    public Result persist(List<CartState> snapshots, Collection<Long> deletedCartIds) {
+        Result result = new Result();
+        if (!deletedCartIds.isEmpty()) {
+            cartItemRepository.deleteByCartIdIn(deletedCartIds);
+            cartRepository.deleteByIdIn(deletedCartIds);
+        }
+        if (snapshots.isEmpty()) {
+            return result;
+        }
+
+        List<Long> ids = snapshots.stream().map(CartState::getId).collect(Collectors.toList());
+        Map<Long, Cart> existing = cartRepository.findAllWithItemsByIdIn(ids).stream()
+                .collect(Collectors.toMap(Cart::getId, Function.identity()));
+        Set<String> ownedElsewhere = ownedByOtherRows(snapshots, existing);
+
+        Map<Long, Cart> written = new HashMap<>();
+        for (CartState snapshot : snapshots) {
+            Cart cart = existing.get(snapshot.getId());
+            if (cart == null) {
+                if (ownedElsewhere.contains(CartStore.key(snapshot.getUserId(), snapshot.getSessionId()))) {
+                    result.conflicts.add(snapshot);
+                    continue;
+                }
+                cart = new Cart();
+                cart.setId(snapshot.getId());
+                cart.setCreatedAt(snapshot.getCreatedAt());
+                apply(snapshot, cart);
+                entityManager.persist(cart);
+            } else if (!Objects.equals(cart.getVersion(), snapshot.getRowVersion())) {
+                result.conflicts.add(snapshot);
+                continue;
+            } else {
+                apply(snapshot, cart);
+            }
+            written.put(snapshot.getId(), cart);
+        }
+
+        // Attribue les nouvelles versions des lignes
+        entityManager.flush();
+        written.forEach((id, cart) -> result.rowVersions.put(id, cart.getVersion()));
+        return result;
+    }
+
+    /**
+     * Supprime les paniers et leurs articles en deux requêtes ensemblistes, dans leur propre
+     * transaction.
+     *
+     * @return le nombre de lignes de panier supprimées
+     */
+    @Transactional
+    public int delete(Collection<Long> cartIds) {
+        cartItemRepository.deleteByCartIdIn(cartIds);
+        return cartRepository.deleteByIdIn(cartIds);
+    }
+
+    /**
+     * Met à jour les lignes des livres de {@code events} avec une requête par livre, puis
+     * recalcule en une requête les totaux des paniers qui les contiennent et incrémente leur
+     * version.
+     *
+     * @return le nombre de lignes d'articles modifiées
+     */
+    @Transactional
+    public int reprice(Collection<BookCatalogEvent> events) {
+        int items = 0;
+        for (BookCatalogEvent event : events) {
+            items += cartItemRepository.repriceByBookId(event.getBookId(), event.getTitle(),
+                    event.getAuthor(), event.getPrice());
+        }
+        if (items > 0) {
+            cartRepository.recalculateTotalsByBookIds(
+                    events.stream().map(BookCatalogEvent::getBookId).collect(Collectors.toList()),
+                    LocalDateTime.now());
+        }
+        return items;
+    }
+
+    /**
+     * Vide les paniers de {@code userIds} : une suppression pour tous leurs articles, une mise à
+     * jour des totaux et des versions.
+     *
+     * @return le nombre de lignes d'articles supprimées
+     */
+    @Transactional
+    public int clearUserCarts(Collection<Long> userIds) {
+        int items = cartItemRepository.deleteByUserIdIn(userIds);
+        cartRepository.resetTotalsByUserIdIn(userIds, LocalDateTime.now());
+        return items;
+    }
+
+    // Clés utilisateur et session des nouveaux instantanés qui ont déjà une ligne sous un autre id
+    private Set<String> ownedByOtherRows(List<CartState> snapshots, Map<Long, Cart> existing) {
+        List<Long> userIds = new ArrayList<>();
+        List<String> sessionIds = new ArrayList<>();
+        for (CartState snapshot : snapshots) {
+            if (!existing.containsKey(snapshot.getId())) {
+                if (snapshot.getUserId() != null) {
+                    userIds.add(snapshot.getUserId());
+                } else {
+                    sessionIds.add(snapshot.getSessionId());
+                }
+            }
+        }
+        Set<String> keys = new HashSet<>();
+        if (!userIds.isEmpty()) {
+            cartRepository.findByUserIdIn(userIds).forEach(cart -> keys.add(CartStore.key(cart.getUserId(), null)));
+        }
+        if (!sessionIds.isEmpty()) {
+            cartRepository.findBySessionIdIn(sessionIds).forEach(cart -> keys.add(CartStore.key(null, cart.getSessionId())));
+        }
+        return keys;
+    }
+
+    private void apply(CartState snapshot, Cart cart) {
+        cart.setUserId(snapshot.getUserId());
+        cart.setSessionId(snapshot.getSessionId());
+        cart.setExpiresAt(snapshot.getExpiresAt());
+        // Diffère toujours de la ligne : le panier est mis à jour, sa version est donc incrémentée
+        cart.setUpdatedAt(snapshot.getUpdatedAt());
+
+        // Les lignes sont associées par livre (unique par panier)
+        Map<Long, CartItem> currentItems = new HashMap<>();
+        for (CartItem item : cart.getItems()) {
+            currentItems.put(item.getBookId(), item);
+        }
+        // orphanRemoval supprime les lignes des articles retirés
+        cart.getItems().removeIf(item -> !snapshot.getItems().containsKey(item.getBookId()));
+
+        // Un livre retiré puis rajouté depuis le dernier flush porte un nouvel id, celui que le
+        // client connaît : l'ancienne ligne est supprimée, et la suppression envoyée avant
+        // l'insertion de la nouvelle (Hibernate insère avant de supprimer, ce qui violerait
+        // l'unicité du livre dans le panier)
+        boolean replaced = false;
+        for (CartState.Item stateItem : snapshot.getItemList()) {
+            CartItem item = currentItems.get(stateItem.getBookId());
+            if (item != null && !item.getId().equals(stateItem.getId())) {
+                cart.getItems().remove(item);
+                currentItems.remove(stateItem.getBookId());
+                replaced = true;
+            }
+        }
+        if (replaced) {
+            entityManager.flush();
+        }
+
+        for (CartState.Item stateItem : snapshot.getItemList()) {
+            CartItem item = currentItems.get(stateItem.getBookId());
+            if (item == null) {
+                item = new CartItem();
+                item.setId(stateItem.getId());
+                item.setCart(cart);
+                cart.getItems().add(item);
+            }
+            item.setBookId(stateItem.getBookId());
+            item.setTitle(stateItem.getTitle());
+            item.setAuthor(stateItem.getAuthor());
+            item.setPrice(stateItem.getPrice());
+            item.setQuantity(stateItem.getQuantity());
+            item.setTotalPrice(stateItem.getTotalPrice());
+        }
+        cart.calculateTotals();
+    }
+
+    static class Result {
+        // Id du panier -> version de sa ligne après l'écriture
+        final Map<Long, Long> rowVersions = new HashMap<>();
+        // Instantanés non écrits parce qu'une autre instance a écrit le panier
+        final List<CartState> conflicts = new ArrayList<>();
+    }
+}
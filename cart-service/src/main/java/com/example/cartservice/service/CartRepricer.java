@@ -0,0 +1,108 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.config.RabbitMQConfig;
+import com.example.cartservice.dto.BookCatalogEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Service;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Aligne le titre, l'auteur et le prix recopiés dans les paniers sur le catalogue, à partir des
+ * événements publiés par book-service : lire un panier n'appelle jamais book-service.
+ * <p>
+ * Les événements sont consommés par lots et réduits au dernier changement par livre. Une seule
+ * instance met à jour les lignes (en une requête par livre, voir {@link CartPersister#reprice}),
+ * ce qui incrémente la version des paniers concernés, puis republie les changements sur
+ * {@code cart.reprice.exchange} : chaque instance, elle comprise, met alors à jour les paniers
+ * qu'elle détient. Un panier chargé entre les deux a déjà les nouvelles valeurs, et une copie
+ * écrite avec les anciennes est refusée par la version de sa ligne puis reprise dessus.
+ */
+@Service
+@Slf4j
+public class CartRepricer {
+
+    private final CartPersister cartPersister;
+    private final CartStore cartStore;
+    private final RabbitTemplate rabbitTemplate;
+
+    private final Counter catalogEvents;
+    private final Counter repricedItems;
+    private final Counter repricedCarts;
+
+    public CartRepricer(CartPersister cartPersister, CartStore cartStore, RabbitTemplate rabbitTemplate,
+                        MeterRegistry meterRegistry) {
+        this.cartPersister = cartPersister;
+        this.cartStore = cartStore;
+        this.rabbitTemplate = rabbitTemplate;
+        this.catalogEvents = meterRegistry.counter("cart.repricing.events");
+        this.repricedItems = meterRegistry.counter("cart.repricing.items");
+        this.repricedCarts = meterRegistry.counter("cart.repricing.carts");
+    }
+
+    @RabbitListener(queues = RabbitMQConfig.CART_CATALOG_QUEUE, containerFactory = "batchContainerFactory")
+    public void onCatalogEvents(List<BookCatalogEvent> events) {
+        catalogEvents.increment(events.size());
+        reprice(events);
+    }
+
+    // File propre à chaque instance : toutes reçoivent les changements appliqués en base
+    @RabbitListener(queues = "#{cartRepriceQueue.name}", containerFactory = "batchContainerFactory")
+    public void onRepriced(List<BookCatalogEvent> events) {
+        Map<Long, BookCatalogEvent> latest = latestByBook(events);
+        if (latest.isEmpty()) {
+            return;
+        }
+        int carts = cartStore.updateItems(latest.keySet(), item -> apply(latest.get(item.getBookId()), item));
+        repricedCarts.increment(carts);
+        log.debug("Prix de {} livres mis à jour dans {} paniers en mémoire", latest.size(), carts);
+    }
+
+    public void reprice(List<BookCatalogEvent> events) {
+        Map<Long, BookCatalogEvent> latest = latestByBook(events);
+        if (latest.isEmpty()) {
+            return;
+        }
+
+        int items = cartPersister.reprice(latest.values());
+        // Après le commit : un échec de publication remet le lot en file, la mise à jour en base est idempotente
+        for (BookCatalogEvent event : latest.values()) {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.CART_REPRICE_EXCHANGE, "", event);
+        }
+
+        repricedItems.increment(items);
+        log.info("Prix de {} livres mis à jour : {} lignes d'articles", latest.size(), items);
+    }
+
+    private static Map<Long, BookCatalogEvent> latestByBook(List<BookCatalogEvent> events) {
+        return events.stream()
+                .filter(event -> event.getBookId() != null && event.getPrice() != null)
+                .collect(Collectors.toMap(BookCatalogEvent::getBookId, Function.identity(), latestChange()));
+    }
+
+    private static boolean apply(BookCatalogEvent event, CartState.Item item) {
+        if (Objects.equals(item.getPrice(), event.getPrice())
+                && Objects.equals(item.getTitle(), event.getTitle())
+                && Objects.equals(item.getAuthor(), event.getAuthor())) {
+            return false;
+        }
+        item.setTitle(event.getTitle());
+        item.setAuthor(event.getAuthor());
+        item.setPrice(event.getPrice());
+        return true;
+    }
+
+    private static BinaryOperator<BookCatalogEvent> latestChange() {
+        return BinaryOperator.maxBy(Comparator.comparing(BookCatalogEvent::getChangedAt,
+                Comparator.nullsFirst(Comparator.naturalOrder())));
+    }
+}
@@ -2,19 +2,21 @@ package com.example.cartservice.service;
 
 import com.example.cartservice.client.BookServiceClient;
 import com.example.cartservice.dto.*;
-import com.example.cartservice.model.Cart;
-import com.example.cartservice.model.CartItem;
-import com.example.cartservice.repository.CartRepository;
-import com.example.cartservice.repository.CartItemRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,33 +24,22 @@ import java.util.stream.Collectors;
 @Slf4j
 public class CartService {
 
-    private final CartRepository cartRepository;
-    private final CartItemRepository cartItemRepository;
     private final BookServiceClient bookServiceClient;
+    private final CartStore cartStore;
+    private final CartExpirySweeper cartExpirySweeper;
+    private final IdGenerator idGenerator;
+    private final BookReplica bookReplica;
 
-    @Transactional
-    @CacheEvict(value = "carts", key = "#userId")
-    public CartResponse getOrCreateCart(Long userId, String sessionId) {
-        Cart cart;
-
-        if (userId != null) {
-            cart = cartRepository.findByUserId(userId)
-                    .orElseGet(() -> createUserCart(userId));
-        } else {
-            cart = cartRepository.findBySessionId(sessionId)
-                    .orElseGet(() -> createSessionCart(sessionId));
-        }
+    // Fusions en cours, par utilisateur et session
+    private final Map<String, CompletableFuture<Void>> inFlightMerges = new ConcurrentHashMap<>();
 
-        return mapToCartResponse(cart);
+    public CartResponse getOrCreateCart(Long userId, String sessionId) {
+        return cartStore.read(userId, sessionIdFor(userId, sessionId), this::mapToCartResponse);
     }
 
-    @Transactional
-    @CacheEvict(value = "carts", key = "#userId")
     public CartResponse addItemToCart(Long userId, String sessionId, CartItemRequest itemRequest) {
-        Cart cart = getOrCreateCartEntity(userId, sessionId);
-
         // Vérifier la disponibilité du livre
-        BookInfo bookInfo = bookServiceClient.getBookById(itemRequest.getBookId());
+        BookInfo bookInfo = findBook(itemRequest.getBookId());
         if (bookInfo == null) {
             throw new RuntimeException("Book not found with id: " + itemRequest.getBookId());
         }
@@ -57,180 +48,277 @@ public class CartService {
             throw new RuntimeException("Insufficient stock for book: " + bookInfo.getTitle());
         }
 
-        // Vérifier si l'article existe déjà dans le panier
-        CartItem existingItem = cartItemRepository
-                .findByCartIdAndBookId(cart.getId(), itemRequest.getBookId())
-                .orElse(null);
-
-        if (existingItem != null) {
-            // Mettre à jour la quantité
-            existingItem.setQuantity(existingItem.getQuantity() + itemRequest.getQuantity());
-            cartItemRepository.save(existingItem);
-        } else {
-            // Ajouter un nouvel article
-            CartItem newItem = new CartItem();
-            newItem.setCart(cart);
-            newItem.setBookId(bookInfo.getId());
-            newItem.setTitle(bookInfo.getTitle());
-            newItem.setAuthor(bookInfo.getAuthor());
-            newItem.setPrice(bookInfo.getPrice());
-            newItem.setQuantity(itemRequest.getQuantity());
-
-            cart.addItem(newItem);
-            cartItemRepository.save(newItem);
-        }
+        // Attribué hors de la modification, rejouée telle quelle si le panier est repris (voir CartStore#rebase)
+        long itemId = idGenerator.nextId();
+        return cartStore.update(userId, sessionIdFor(userId, sessionId), cart -> {
+            // Vérifier si l'article existe déjà dans le panier
+            CartState.Item existingItem = cart.getItems().get(itemRequest.getBookId());
 
-        cart.setExpiresAt(LocalDateTime.now().plusHours(2));
-        cartRepository.save(cart);
+            if (existingItem != null) {
+                // Mettre à jour la quantité
+                existingItem.setQuantity(existingItem.getQuantity() + itemRequest.getQuantity());
+            } else {
+                // Ajouter un nouvel article
+                cart.getItems().put(bookInfo.getId(), newItem(itemId, bookInfo, itemRequest.getQuantity()));
+            }
 
-        return mapToCartResponse(cart);
+            cart.setExpiresAt(LocalDateTime.now().plusHours(2));
+            return mapToCartResponse(cart);
+        });
     }
 
-    @Transactional
-    @CacheEvict(value = "carts", key = "#userId")
-    public CartResponse updateCartItem(Long userId, String sessionId, Long itemId, Integer quantity) {
-        Cart cart = getOrCreateCartEntity(userId, sessionId);
+    /**
+     * Ajoute plusieurs articles en une fois : une seule recherche des livres (réplica, puis un
+     * appel groupé pour ceux qu'il ne connaît pas) et une seule mise à jour du panier. Les
+     * lignes d'un même livre sont regroupées ; si un livre manque ou n'a pas assez de stock,
+     * rien n'est ajouté.
+     */
+    public CartResponse addItemsToCart(Long userId, String sessionId, List<CartItemRequest> itemRequests) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (CartItemRequest itemRequest : itemRequests) {
+            quantities.merge(itemRequest.getBookId(), itemRequest.getQuantity(), Integer::sum);
+        }
 
-        CartItem item = cartItemRepository.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found"));
+        // Vérifier la disponibilité de tous les livres avant de toucher au panier
+        Map<Long, BookInfo> books = lookupBooks(quantities.keySet());
+        quantities.forEach((bookId, quantity) -> {
+            BookInfo bookInfo = books.get(bookId);
+            if (bookInfo == null) {
+                throw new RuntimeException("Book not found with id: " + bookId);
+            }
+            if (bookInfo.getStock() < quantity) {
+                throw new RuntimeException("Insufficient stock for book: " + bookInfo.getTitle());
+            }
+        });
+
+        Map<Long, Long> itemIds = new HashMap<>();
+        quantities.keySet().forEach(bookId -> itemIds.put(bookId, idGenerator.nextId()));
+        return cartStore.update(userId, sessionIdFor(userId, sessionId), cart -> {
+            quantities.forEach((bookId, quantity) -> {
+                CartState.Item existingItem = cart.getItems().get(bookId);
+                if (existingItem != null) {
+                    existingItem.setQuantity(existingItem.getQuantity() + quantity);
+                } else {
+                    cart.getItems().put(bookId, newItem(itemIds.get(bookId), books.get(bookId), quantity));
+                }
+            });
+
+            cart.setExpiresAt(LocalDateTime.now().plusHours(2));
+            return mapToCartResponse(cart);
+        });
+    }
 
-        if (!item.getCart().getId().equals(cart.getId())) {
-            throw new RuntimeException("Item does not belong to this cart");
-        }
+    public CartResponse updateCartItem(Long userId, String sessionId, Long itemId, Integer quantity) {
+        String cartSessionId = sessionIdFor(userId, sessionId);
+        Long bookId = cartStore.read(userId, cartSessionId, cart -> findItem(cart, itemId).getBookId());
 
-        // Vérifier le stock
-        BookInfo bookInfo = bookServiceClient.getBookById(item.getBookId());
+        // Vérifier le stock (en dehors du verrou du panier)
+        BookInfo bookInfo = findBook(bookId);
         if (bookInfo.getStock() < quantity) {
             throw new RuntimeException("Insufficient stock");
         }
 
-        item.setQuantity(quantity);
-        cartItemRepository.save(item);
-
-        cart.calculateTotals();
-        cart.setExpiresAt(LocalDateTime.now().plusHours(2));
-        cartRepository.save(cart);
-
-        return mapToCartResponse(cart);
+        return cartStore.update(userId, cartSessionId, cart -> {
+            findItem(cart, itemId).setQuantity(quantity);
+            cart.setExpiresAt(LocalDateTime.now().plusHours(2));
+            return mapToCartResponse(cart);
+        });
     }
 
-    @Transactional
-    @CacheEvict(value = "carts", key = "#userId")
     public CartResponse removeItemFromCart(Long userId, String sessionId, Long itemId) {
-        Cart cart = getOrCreateCartEntity(userId, sessionId);
-
-        CartItem item = cartItemRepository.findById(itemId)
-                .orElseThrow(() -> new RuntimeException("Cart item not found"));
+        return cartStore.update(userId, sessionIdFor(userId, sessionId), cart -> {
+            CartState.Item item = findItem(cart, itemId);
+            cart.getItems().remove(item.getBookId());
 
-        if (!item.getCart().getId().equals(cart.getId())) {
-            throw new RuntimeException("Item does not belong to this cart");
-        }
-
-        cart.removeItem(item);
-        cartItemRepository.delete(item);
-
-        cart.setExpiresAt(LocalDateTime.now().plusHours(2));
-        cartRepository.save(cart);
-
-        return mapToCartResponse(cart);
+            cart.setExpiresAt(LocalDateTime.now().plusHours(2));
+            return mapToCartResponse(cart);
+        });
     }
 
-    @Transactional
-    @CacheEvict(value = "carts", key = "#userId")
     public void clearCart(Long userId, String sessionId) {
-        Cart cart = getOrCreateCartEntity(userId, sessionId);
-        cartItemRepository.deleteByCartId(cart.getId());
-        cart.getItems().clear();
-        cart.calculateTotals();
-        cartRepository.save(cart);
+        cartStore.update(userId, sessionIdFor(userId, sessionId), cart -> {
+            cart.getItems().clear();
+            return null;
+        });
     }
 
-    @Transactional
+    /**
+     * Fusionne le panier de session dans celui de l'utilisateur à la connexion. Un appel
+     * identique (même utilisateur, même session) déjà en cours n'est pas rejoué : on attend
+     * simplement son résultat.
+     */
     public void mergeCarts(String sessionId, Long userId) {
-        Cart sessionCart = cartRepository.findBySessionId(sessionId).orElse(null);
-        Cart userCart = cartRepository.findByUserId(userId).orElse(null);
-
-        if (sessionCart != null) {
-            if (userCart == null) {
-                // Convertir le panier de session en panier utilisateur
-                sessionCart.setUserId(userId);
-                sessionCart.setSessionId(null);
-                cartRepository.save(sessionCart);
-            } else {
-                // Fusionner les deux paniers
-                mergeCartItems(sessionCart, userCart);
-                cartRepository.delete(sessionCart);
+        String mergeKey = userId + ":" + sessionId;
+        CompletableFuture<Void> merge = new CompletableFuture<>();
+        CompletableFuture<Void> running = inFlightMerges.putIfAbsent(mergeKey, merge);
+        if (running != null) {
+            try {
+                running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
             }
+            return;
+        }
+
+        try {
+            doMergeCarts(sessionId, userId);
+            merge.complete(null);
+        } catch (RuntimeException e) {
+            merge.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightMerges.remove(mergeKey, merge);
         }
     }
 
-    @Cacheable(value = "carts", key = "#userId")
+    /**
+     * Résumé du panier (nombre d'articles, total) pour le badge de l'en-tête, servi par
+     * {@link CartSummaryCache} sans charger les lignes.
+     */
+    public CartSummaryResponse getCartSummary(Long userId, String sessionId) {
+        // Pas de nouvelle session pour un badge : elle créerait un panier à chaque appel
+        if (userId == null && sessionId == null) {
+            return CartSummaryCache.empty();
+        }
+        return cartStore.summary(userId, sessionId);
+    }
+
     public CartResponse getCart(Long userId, String sessionId) {
-        Cart cart = getOrCreateCartEntity(userId, sessionId);
-        return mapToCartResponse(cart);
+        return cartStore.read(userId, sessionIdFor(userId, sessionId), this::mapToCartResponse);
+    }
+
+    /**
+     * Panier vérifié contre sa ligne en base avant d'être lu : une autre instance a pu le
+     * modifier depuis que celle-ci le détient. Pour la commande, qui ne doit pas partir d'un
+     * panier dépassé.
+     */
+    public CartResponse getCurrentCart(Long userId, String sessionId) {
+        return cartStore.readCurrent(userId, sessionIdFor(userId, sessionId), this::mapToCartResponse);
     }
 
-    @Transactional
     public void cleanupExpiredCarts() {
-        LocalDateTime now = LocalDateTime.now();
-        List<Cart> expiredCarts = cartRepository.findExpiredCarts(now);
+        cartExpirySweeper.sweep();
+    }
 
-        for (Cart cart : expiredCarts) {
-            cartItemRepository.deleteByCartId(cart.getId());
-            cartRepository.delete(cart);
-            log.info("Cleaned up expired cart: {}", cart.getId());
+    private void doMergeCarts(String sessionId, Long userId) {
+        // Livres du panier de session cherchés en une fois, hors verrou
+        List<CartState.Item> sessionItems = cartStore.read(null, sessionId, cart -> new ArrayList<>(cart.getItemList()));
+        if (sessionItems.isEmpty()) {
+            cartStore.remove(null, sessionId);
+            return;
+        }
+        Map<Long, BookInfo> books = findBooks(sessionItems);
+
+        // Les deux paniers sont verrouillés ensemble : le panier de session est supprimé
+        Map<Long, Long> itemIds = new HashMap<>();
+        boolean merged = cartStore.merge(sessionId, userId,
+                (sessionCart, userCart) -> mergeCartItems(sessionCart, userCart, books, itemIds));
+        if (merged) {
+            log.info("Panier de session {} fusionné dans le panier de l'utilisateur {}", sessionId, userId);
         }
     }
 
-    private Cart getOrCreateCartEntity(Long userId, String sessionId) {
-        if (userId != null) {
-            return cartRepository.findByUserId(userId)
-                    .orElseGet(() -> createUserCart(userId));
-        } else {
-            return cartRepository.findBySessionId(sessionId)
-                    .orElseGet(() -> createSessionCart(sessionId));
+    private CartState.Item findItem(CartState cart, Long itemId) {
+        CartState.Item item = cart.findItem(itemId);
+        if (item == null) {
+            throw new RuntimeException("Cart item not found");
         }
+        return item;
     }
 
-    private Cart createUserCart(Long userId) {
-        Cart cart = new Cart();
-        cart.setUserId(userId);
-        cart.setSessionId(null);
-        return cartRepository.save(cart);
+    CartState.Item newItem(Long itemId, BookInfo bookInfo, int quantity) {
+        CartState.Item item = new CartState.Item();
+        item.setId(itemId);
+        item.setBookId(bookInfo.getId());
+        item.setTitle(bookInfo.getTitle());
+        item.setAuthor(bookInfo.getAuthor());
+        item.setPrice(bookInfo.getPrice());
+        item.setQuantity(quantity);
+        return item;
     }
 
-    private Cart createSessionCart(String sessionId) {
-        Cart cart = new Cart();
-        cart.setUserId(null);
-        cart.setSessionId(sessionId != null ? sessionId : generateSessionId());
-        return cartRepository.save(cart);
+    /**
+     * Verse les articles de {@code source} dans {@code target}. Les nouvelles lignes prennent
+     * leur identifiant dans {@code itemIds} (par livre), complété au premier passage : rejouée
+     * sur la ligne actuelle du panier (voir CartStore#rebase), la fusion redonne les mêmes
+     * identifiants que ceux déjà renvoyés au client.
+     */
+    void mergeCartItems(CartState source, CartState target, Map<Long, BookInfo> books, Map<Long, Long> itemIds) {
+        for (CartState.Item sourceItem : source.getItemList()) {
+            CartState.Item existingItem = target.getItems().get(sourceItem.getBookId());
+
+            if (existingItem != null) {
+                int quantity = existingItem.getQuantity() + sourceItem.getQuantity();
+                existingItem.setQuantity(capToStock(quantity, books.get(sourceItem.getBookId())));
+            } else {
+                // Nouvel identifiant : la ligne du panier de session est supprimée avec lui
+                CartState.Item item = sourceItem.copy();
+                item.setId(itemIds.computeIfAbsent(item.getBookId(), bookId -> idGenerator.nextId()));
+                target.getItems().put(item.getBookId(), item);
+            }
+        }
     }
 
-    private void mergeCartItems(Cart source, Cart target) {
-        for (CartItem sourceItem : source.getItems()) {
-            CartItem existingItem = cartItemRepository
-                    .findByCartIdAndBookId(target.getId(), sourceItem.getBookId())
-                    .orElse(null);
+    // Stock et prix lus dans le réplica local ; book-service seulement s'il ne connaît pas le livre
+    private BookInfo findBook(Long bookId) {
+        BookInfo bookInfo = bookReplica.find(bookId);
+        return bookInfo != null ? bookInfo : bookServiceClient.getBookById(bookId);
+    }
 
-            if (existingItem != null) {
-                existingItem.setQuantity(existingItem.getQuantity() + sourceItem.getQuantity());
-                cartItemRepository.save(existingItem);
+    // Réplica d'abord, puis un seul appel groupé pour les livres qu'il ne connaît pas
+    Map<Long, BookInfo> lookupBooks(Collection<Long> bookIds) {
+        Map<Long, BookInfo> books = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long bookId : bookIds) {
+            BookInfo bookInfo = bookReplica.find(bookId);
+            if (bookInfo != null) {
+                books.put(bookId, bookInfo);
             } else {
-                sourceItem.setCart(target);
-                target.addItem(sourceItem);
-                cartItemRepository.save(sourceItem);
+                missing.add(bookId);
             }
         }
+        if (!missing.isEmpty()) {
+            books.putAll(bookServiceClient.getBooksByIds(missing));
+        }
+        return books;
+    }
 
-        target.calculateTotals();
-        cartRepository.save(target);
+    // Un seul appel groupé pour tous les articles au lieu d'un par livre
+    private Map<Long, BookInfo> findBooks(Collection<CartState.Item> items) {
+        if (items.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Long> bookIds = items.stream()
+                .map(CartState.Item::getBookId)
+                .collect(Collectors.toList());
+        try {
+            return bookServiceClient.getBooksByIds(bookIds);
+        } catch (Exception e) {
+            log.warn("Stock de {} livres non vérifiable, fusion sans vérification du stock", bookIds.size(), e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private int capToStock(int quantity, BookInfo bookInfo) {
+        if (bookInfo == null || bookInfo.getStock() == null) {
+            return quantity;
+        }
+        return Math.max(1, Math.min(quantity, bookInfo.getStock()));
+    }
+
+    // Un invité sans session reçoit un nouvel identifiant, renvoyé dans la réponse
+    private String sessionIdFor(Long userId, String sessionId) {
+        if (userId == null && sessionId == null) {
+            return generateSessionId();
+        }
+        return sessionId;
     }
 
     private String generateSessionId() {
         return UUID.randomUUID().toString();
     }
 
-    private CartResponse mapToCartResponse(Cart cart) {
+    CartResponse mapToCartResponse(CartState cart) {
         CartResponse response = new CartResponse();
         response.setId(cart.getId());
         response.setUserId(cart.getUserId());
@@ -241,7 +329,7 @@ public class CartService {
         response.setUpdatedAt(cart.getUpdatedAt());
         response.setExpiresAt(cart.getExpiresAt());
 
-        List<CartItemResponse> itemResponses = cart.getItems().stream()
+        List<CartItemResponse> itemResponses = cart.getItemList().stream()
                 .map(this::mapToCartItemResponse)
                 .collect(Collectors.toList());
         response.setItems(itemResponses);
@@ -249,7 +337,7 @@ public class CartService {
         return response;
     }
 
-    private CartItemResponse mapToCartItemResponse(CartItem item) {
+    private CartItemResponse mapToCartItemResponse(CartState.Item item) {
         CartItemResponse response = new CartItemResponse();
         response.setId(item.getId());
         response.setBookId(item.getBookId());
@@ -260,4 +348,4 @@ public class CartService {
         response.setTotalPrice(item.getTotalPrice());
         return response;
     }
-}
\ No newline at end of file
+}
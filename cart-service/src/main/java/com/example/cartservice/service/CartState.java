@@ -0,0 +1,158 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.model.Cart;
+import com.example.cartservice.model.CartItem;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Copie en mémoire d'un panier détenu par {@link CartStore}. N'est manipulée que sous le verrou
+ * de son shard ; {@link #copy()} donne au flush un instantané qu'on ne modifie plus.
+ */
+@Getter
+@Setter
+class CartState {
+
+    private Long id;
+    private Long userId;
+    private String sessionId;
+    // bookId -> article, dans l'ordre d'ajout
+    private Map<Long, Item> items = new LinkedHashMap<>();
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime expiresAt;
+
+    // Incrémentée à chaque modification ; le flush ne marque le panier propre que si elle n'a pas bougé
+    private long version;
+    private long flushedVersion;
+    // Cart.version de la ligne à la dernière lecture ou écriture, null si jamais écrite
+    private Long rowVersion;
+    // Modifications pas encore écrites, rejouées sur la ligne actuelle si une autre instance a
+    // écrit le panier entre-temps (voir CartStore#rebase) ; absentes du journal
+    @JsonIgnore
+    private List<Mutation> pendingMutations = new ArrayList<>();
+    // Faux tant que le panier n'existe qu'en mémoire
+    private boolean persisted;
+    private boolean deleted;
+    private long lastAccessMillis;
+
+    boolean isDirty() {
+        return version != flushedVersion;
+    }
+
+    void record(Consumer<CartState> mutation) {
+        pendingMutations.add(new Mutation(version, mutation));
+    }
+
+    Collection<Item> getItemList() {
+        return items.values();
+    }
+
+    Item findItem(Long itemId) {
+        for (Item item : items.values()) {
+            if (item.getId().equals(itemId)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    int getItemCount() {
+        return items.size();
+    }
+
+    double getTotalAmount() {
+        return items.values().stream()
+                .mapToDouble(item -> item.getPrice() * item.getQuantity())
+                .sum();
+    }
+
+    CartState copy() {
+        CartState copy = new CartState();
+        copy.id = id;
+        copy.userId = userId;
+        copy.sessionId = sessionId;
+        items.forEach((bookId, item) -> copy.items.put(bookId, item.copy()));
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        copy.expiresAt = expiresAt;
+        copy.version = version;
+        copy.flushedVersion = flushedVersion;
+        copy.rowVersion = rowVersion;
+        copy.persisted = persisted;
+        copy.deleted = deleted;
+        copy.lastAccessMillis = lastAccessMillis;
+        return copy;
+    }
+
+    static CartState fromEntity(Cart cart) {
+        CartState state = new CartState();
+        state.id = cart.getId();
+        state.userId = cart.getUserId();
+        state.sessionId = cart.getSessionId();
+        for (CartItem cartItem : cart.getItems()) {
+            Item item = new Item();
+            item.setId(cartItem.getId());
+            item.setBookId(cartItem.getBookId());
+            item.setTitle(cartItem.getTitle());
+            item.setAuthor(cartItem.getAuthor());
+            item.setPrice(cartItem.getPrice());
+            item.setQuantity(cartItem.getQuantity());
+            state.items.put(item.getBookId(), item);
+        }
+        state.createdAt = cart.getCreatedAt();
+        state.updatedAt = cart.getUpdatedAt();
+        state.expiresAt = cart.getExpiresAt();
+        state.rowVersion = cart.getVersion();
+        state.persisted = true;
+        return state;
+    }
+
+    List<Long> getBookIds() {
+        return new ArrayList<>(items.keySet());
+    }
+
+    static class Mutation {
+        final long version;
+        final Consumer<CartState> apply;
+
+        Mutation(long version, Consumer<CartState> apply) {
+            this.version = version;
+            this.apply = apply;
+        }
+    }
+
+    @Getter
+    @Setter
+    static class Item {
+        private Long id;
+        private Long bookId;
+        private String title;
+        private String author;
+        private Double price;
+        private Integer quantity;
+
+        double getTotalPrice() {
+            return price * quantity;
+        }
+
+        Item copy() {
+            Item copy = new Item();
+            copy.id = id;
+            copy.bookId = bookId;
+            copy.title = title;
+            copy.author = author;
+            copy.price = price;
+            copy.quantity = quantity;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,782 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.dto.CartSummaryResponse;
+import com.example.cartservice.model.Cart;
+import com.example.cartservice.repository.CartRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Paniers actifs, gardés en mémoire et écrits en base en différé.
+ * <p>
+ * Les paniers sont indexés par id utilisateur (ou id de session pour les invités) et répartis
+ * sur des shards verrouillés séparément : une modification ne verrouille que le shard de son
+ * panier, est appliquée en mémoire, ajoutée au {@link CartJournal}, et le panier est marqué à
+ * écrire. {@link #flush()} tourne toutes les {@code cart.store.flush-interval-ms} et écrit tous
+ * les paniers modifiés par lots : une rafale de changements sur un panier coûte une écriture.
+ * Les paniers propres sont retirés de la mémoire quand ils sont inactifs, et les paniers expirés
+ * dès que la {@link CartExpiryWheel} atteint leur {@code expiresAt}.
+ * <p>
+ * Les requêtes d'un même panier peuvent atteindre des instances différentes (aucun routage par
+ * affinité). La version de la ligne du panier révèle alors les écritures de l'autre instance :
+ * au flush, le panier est repris sur la ligne actuelle et ses modifications non écrites y sont
+ * rejouées (voir {@link #resolveConflicts}), sans verrouiller les lignes. Les lectures qui
+ * engagent, comme celle de la commande, passent par {@link #readCurrent}, qui vérifie d'abord
+ * que la copie détenue est à jour de sa ligne.
+ * <p>
+ * Les lignes sont lues hors du verrou du shard (voir {@link #lockLoaded}) : un aller-retour en
+ * base ne bloque pas les autres paniers du shard.
+ */
+@Component
+@DependsOn("cartSchemaMigration")
+@Slf4j
+public class CartStore {
+
+    // Lectures hors du verrou avant de se résoudre à lire sous le verrou
+    private static final int LOAD_ATTEMPTS = 3;
+
+    private final CartRepository cartRepository;
+    private final CartPersister cartPersister;
+    private final CartJournal cartJournal;
+    private final IdGenerator idGenerator;
+    private final CartExpiryWheel expiryWheel;
+    private final CartSummaryCache summaryCache;
+    private final MeterRegistry meterRegistry;
+
+    private final Shard[] shards;
+    private final int flushBatchSize;
+    private final long idleTimeoutMillis;
+
+    // Paniers retirés de la mémoire dont la ligne reste à supprimer
+    private final Queue<Long> pendingDeletes = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final Timer flushTimer;
+    private final Counter flushedCarts;
+    private final Counter flushFailures;
+    private final Counter flushConflicts;
+    private final Counter staleReads;
+    private final int conflictRetries;
+    private final long conflictBackoffMillis;
+
+    public CartStore(CartRepository cartRepository, CartPersister cartPersister, CartJournal cartJournal,
+                     IdGenerator idGenerator, CartExpiryWheel expiryWheel, CartSummaryCache summaryCache,
+                     MeterRegistry meterRegistry,
+                     @Value("${cart.store.shards:64}") int shardCount,
+                     @Value("${cart.store.flush-batch-size:200}") int flushBatchSize,
+                     @Value("${cart.store.idle-timeout-ms:600000}") long idleTimeoutMillis,
+                     @Value("${cart.store.conflict-retries:3}") int conflictRetries,
+                     @Value("${cart.store.conflict-backoff-ms:20}") long conflictBackoffMillis) {
+        this.cartRepository = cartRepository;
+        this.cartPersister = cartPersister;
+        this.cartJournal = cartJournal;
+        this.idGenerator = idGenerator;
+        this.expiryWheel = expiryWheel;
+        this.summaryCache = summaryCache;
+        this.meterRegistry = meterRegistry;
+        this.flushBatchSize = flushBatchSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.conflictRetries = conflictRetries;
+        this.conflictBackoffMillis = conflictBackoffMillis;
+
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+
+        this.flushTimer = meterRegistry.timer("cart.store.flush");
+        this.flushedCarts = meterRegistry.counter("cart.store.flushed.carts");
+        this.flushFailures = meterRegistry.counter("cart.store.flush.failures");
+        this.flushConflicts = meterRegistry.counter("cart.store.flush.conflicts");
+        this.staleReads = meterRegistry.counter("cart.store.stale.reads");
+        meterRegistry.gauge("cart.store.carts", this, CartStore::size);
+        meterRegistry.gauge("cart.store.dirty", this, CartStore::dirtyCount);
+    }
+
+    static String key(Long userId, String sessionId) {
+        return userId != null ? "u:" + userId : "s:" + sessionId;
+    }
+
+    /**
+     * Applique {@code reader} au panier de l'utilisateur (ou de la session), après l'avoir chargé
+     * depuis la base ou créé vide. Créer un panier vide n'écrit rien.
+     */
+    public <R> R read(Long userId, String sessionId, Function<CartState, R> reader) {
+        String key = key(userId, sessionId);
+        Shard shard = shardFor(key);
+        CartState state = lockLoaded(shard, key, userId, sessionId, true);
+        try {
+            return reader.apply(state);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Comme {@link #read}, mais vérifie d'abord que le panier détenu est à jour de sa ligne : une
+     * autre instance a pu l'écrire depuis. Un panier dépassé est relu s'il n'a rien à écrire,
+     * sinon repris sur la ligne actuelle (voir {@link #rebase}). Coûte une lecture de la version
+     * de la ligne : à réserver aux lectures qui engagent, comme celle de la commande.
+     */
+    public <R> R readCurrent(Long userId, String sessionId, Function<CartState, R> reader) {
+        String key = key(userId, sessionId);
+        Shard shard = shardFor(key);
+        Long rowVersion = fetchVersion(userId, sessionId).orElse(null);
+
+        CartState stale = null;
+        shard.lock.lock();
+        try {
+            CartState state = shard.carts.get(key);
+            if (state != null && !Objects.equals(state.getRowVersion(), rowVersion)) {
+                staleReads.increment();
+                if (state.isDirty()) {
+                    stale = state;
+                } else {
+                    // Rien à écrire : relu depuis la ligne ci-dessous
+                    evict(shard, key);
+                    summaryCache.remove(key);
+                }
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+        if (stale != null) {
+            rebase(stale);
+        }
+        return read(userId, sessionId, reader);
+    }
+
+    /**
+     * Renvoie le résumé du panier, depuis {@link CartSummaryCache} quand le panier est détenu.
+     */
+    public CartSummaryResponse summary(Long userId, String sessionId) {
+        String key = key(userId, sessionId);
+        CartSummaryResponse summary = summaryCache.get(key);
+        if (summary != null) {
+            return summary;
+        }
+        return read(userId, sessionId, state -> summaryCache.update(key, state));
+    }
+
+    /**
+     * Applique {@code mutation} au panier et planifie son écriture.
+     */
+    public <R> R update(Long userId, String sessionId, Function<CartState, R> mutation) {
+        String key = key(userId, sessionId);
+        Shard shard = shardFor(key);
+        CartState state = lockLoaded(shard, key, userId, sessionId, true);
+        try {
+            R result = mutation.apply(state);
+            changed(state, mutation::apply);
+            expiryWheel.schedule(key, expiresAtMillis(state));
+            return result;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Retire le panier du store et planifie la suppression de sa ligne.
+     *
+     * @return le panier retiré, ou {@code null} s'il n'y en avait pas
+     */
+    public CartState remove(Long userId, String sessionId) {
+        String key = key(userId, sessionId);
+        Shard shard = shardFor(key);
+        CartState state = lockLoaded(shard, key, userId, sessionId, false);
+        try {
+            if (state == null) {
+                return null;
+            }
+            evict(shard, key);
+            markDeleted(state);
+            return state;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Verse le panier invité de {@code sessionId} dans celui de {@code userId} en une étape :
+     * les deux paniers sont verrouillés (leurs shards dans l'ordre des index, pour que deux
+     * fusions ne puissent pas s'interbloquer), {@code merge} est appliqué à (panier invité,
+     * panier utilisateur), puis le panier utilisateur est planifié pour écriture et le panier
+     * invité pour suppression.
+     *
+     * @return {@code false} s'il n'y avait pas de panier invité
+     */
+    public boolean merge(String sessionId, Long userId, BiConsumer<CartState, CartState> merge) {
+        String sourceKey = key(null, sessionId);
+        String targetKey = key(userId, null);
+        Shard sourceShard = shardFor(sourceKey);
+        Shard targetShard = shardFor(targetKey);
+        Shard first = shards[Math.min(shardIndex(sourceKey), shardIndex(targetKey))];
+        Shard second = shards[Math.max(shardIndex(sourceKey), shardIndex(targetKey))];
+        for (int attempt = 1; ; attempt++) {
+            boolean locked = attempt > LOAD_ATTEMPTS;
+            boolean sourceFound = false;
+            if (!locked) {
+                // Chacun chargé hors des verrous, puis les deux verrouillés ensemble
+                sourceFound = preload(sourceShard, sourceKey, null, sessionId, false);
+                preload(targetShard, targetKey, userId, null, true);
+            }
+
+            first.lock.lock();
+            second.lock.lock();
+            try {
+                CartState source = locked
+                        ? loadLocked(sourceShard, sourceKey, null, sessionId, false)
+                        : sourceShard.carts.get(sourceKey);
+                if (source == null && !sourceFound) {
+                    return false;
+                }
+                CartState target = locked
+                        ? loadLocked(targetShard, targetKey, userId, null, true)
+                        : targetShard.carts.get(targetKey);
+                if (source == null || target == null) {
+                    // Retiré de la mémoire entre le chargement et le verrou
+                    continue;
+                }
+                evict(sourceShard, sourceKey);
+
+                CartState guestCart = source;
+                merge.accept(guestCart, target);
+                changed(target, cart -> merge.accept(guestCart, cart));
+                expiryWheel.schedule(targetKey, expiresAtMillis(target));
+
+                markDeleted(source);
+                return true;
+            } finally {
+                second.lock.unlock();
+                first.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Retire le panier rangé sous {@code key} s'il a expiré à {@code nowMillis}, et planifie la
+     * suppression de sa ligne. Appelé pour les clés renvoyées par la roue d'expiration.
+     *
+     * @return {@code true} si le panier a été retiré
+     */
+    public boolean expire(String key, long nowMillis) {
+        Shard shard = shardFor(key);
+        shard.lock.lock();
+        try {
+            CartState state = shard.carts.get(key);
+            if (state == null) {
+                return false;
+            }
+            long expiresAt = expiresAtMillis(state);
+            if (expiresAt > nowMillis) {
+                expiryWheel.schedule(key, expiresAt);
+                return false;
+            }
+            evict(shard, key);
+            markDeleted(state);
+            return true;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Applique {@code update} à chaque article d'un livre de {@code bookIds}, dans tous les
+     * paniers détenus en mémoire. {@code update} indique s'il a modifié l'article ; les paniers
+     * modifiés sont planifiés pour écriture.
+     *
+     * @return le nombre de paniers modifiés
+     */
+    public int updateItems(Set<Long> bookIds, Predicate<CartState.Item> update) {
+        int changed = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                for (CartState state : shard.carts.values()) {
+                    boolean cartChanged = false;
+                    for (Long bookId : bookIds) {
+                        CartState.Item item = state.getItems().get(bookId);
+                        if (item != null && update.test(item)) {
+                            cartChanged = true;
+                        }
+                    }
+                    if (cartChanged) {
+                        changed(state, cart -> bookIds.stream()
+                                .map(bookId -> cart.getItems().get(bookId))
+                                .filter(Objects::nonNull)
+                                .forEach(update::test));
+                        changed++;
+                    }
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Vide les paniers de {@code userIds} détenus en mémoire, une fois leurs lignes vidées ; les
+     * autres ne sont pas touchés.
+     *
+     * @return le nombre de paniers vidés
+     */
+    public int clearUserCarts(Collection<Long> userIds) {
+        int cleared = 0;
+        for (Long userId : userIds) {
+            String key = key(userId, null);
+            Shard shard = shardFor(key);
+            shard.lock.lock();
+            try {
+                CartState state = shard.carts.get(key);
+                if (state != null && !state.getItems().isEmpty()) {
+                    state.getItems().clear();
+                    // Déjà commandées : ces modifications ne doivent pas être rejouées sur la ligne vidée
+                    state.getPendingMutations().clear();
+                    changed(state, cart -> cart.getItems().clear());
+                    cleared++;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return cleared;
+    }
+
+    @PostConstruct
+    void replayJournal() {
+        Map<Long, CartState> saved = new LinkedHashMap<>();
+        Set<Long> deleted = new LinkedHashSet<>();
+        for (CartJournal.Entry entry : cartJournal.replay()) {
+            if (CartJournal.Entry.SAVE.equals(entry.getOp())) {
+                saved.put(entry.getCart().getId(), entry.getCart());
+                deleted.remove(entry.getCart().getId());
+            } else {
+                saved.remove(entry.getCartId());
+                deleted.add(entry.getCartId());
+            }
+        }
+        if (saved.isEmpty() && deleted.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (CartState state : saved.values()) {
+            state.setFlushedVersion(state.getVersion() - 1);
+            state.setLastAccessMillis(now);
+            String key = key(state.getUserId(), state.getSessionId());
+            shardFor(key).carts.put(key, state);
+            expiryWheel.schedule(key, expiresAtMillis(state));
+            summaryCache.update(key, state);
+        }
+        pendingDeletes.addAll(deleted);
+        log.info("Journal des paniers relu : {} paniers à écrire, {} à supprimer", saved.size(), deleted.size());
+        flush();
+    }
+
+    /**
+     * Écrit les paniers modifiés et les suppressions en attente, puis oublie le journal dont ils
+     * viennent.
+     */
+    @Scheduled(fixedDelayString = "${cart.store.flush-interval-ms:1000}")
+    public void flush() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            // Tout ce qui a été ajouté avant ce point est dans les instantanés pris ci-dessous
+            long segment = cartJournal.rotate();
+            long now = System.currentTimeMillis();
+
+            List<CartState> snapshots = new ArrayList<>();
+            for (Shard shard : shards) {
+                shard.lock.lock();
+                try {
+                    Iterator<Map.Entry<String, CartState>> it = shard.carts.entrySet().iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<String, CartState> entry = it.next();
+                        CartState state = entry.getValue();
+                        if (state.isDirty()) {
+                            snapshots.add(state.copy());
+                        } else if (now - state.getLastAccessMillis() > idleTimeoutMillis) {
+                            // Sa ligne expire désormais par CartExpirySweeper
+                            it.remove();
+                            shard.evictions++;
+                            expiryWheel.cancel(entry.getKey());
+                            summaryCache.remove(entry.getKey());
+                        }
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+
+            List<Long> deletes = new ArrayList<>();
+            for (Long cartId; (cartId = pendingDeletes.poll()) != null; ) {
+                deletes.add(cartId);
+            }
+
+            boolean complete = write(snapshots, deletes);
+            if (complete) {
+                cartJournal.truncateBefore(segment);
+            }
+        } finally {
+            sample.stop(flushTimer);
+            flushLock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cart.store.journal.sync-interval-ms:200}")
+    public void syncJournal() {
+        cartJournal.sync();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        flush();
+        cartJournal.close();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.carts.size();
+        }
+        return size;
+    }
+
+    private int dirtyCount() {
+        int dirty = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                dirty += (int) shard.carts.values().stream().filter(CartState::isDirty).count();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return dirty;
+    }
+
+    private boolean write(List<CartState> snapshots, List<Long> deletes) {
+        boolean complete = true;
+        for (int from = 0; from < Math.max(snapshots.size(), 1); from += flushBatchSize) {
+            List<CartState> batch = snapshots.subList(from, Math.min(from + flushBatchSize, snapshots.size()));
+            List<Long> batchDeletes = from == 0 ? deletes : Collections.emptyList();
+            if (batch.isEmpty() && batchDeletes.isEmpty()) {
+                break;
+            }
+            try {
+                CartPersister.Result result = cartPersister.persist(batch, batchDeletes);
+                markFlushed(batch, result);
+                flushedCarts.increment(result.rowVersions.size());
+                if (!resolveConflicts(result.conflicts)) {
+                    complete = false;
+                }
+            } catch (Exception e) {
+                // Laissé à écrire (ou en file) et retenté au flush suivant
+                log.error("Échec de l'écriture de {} paniers", batch.size(), e);
+                flushFailures.increment();
+                pendingDeletes.addAll(batchDeletes);
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Retente les paniers qu'une autre instance a écrits depuis leur lecture (requêtes routées
+     * vers la mauvaise instance, bascule) : chacun est repris sur la ligne actuelle et réécrit,
+     * quelques fois avec une pause qui double. Les paniers encore en conflit restent à écrire
+     * pour le flush suivant.
+     */
+    private boolean resolveConflicts(List<CartState> conflicts) {
+        long backoff = conflictBackoffMillis;
+        for (int attempt = 1; !conflicts.isEmpty() && attempt <= conflictRetries; attempt++) {
+            flushConflicts.increment(conflicts.size());
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoff *= 2;
+
+            List<CartState> rebased = new ArrayList<>();
+            for (CartState conflict : conflicts) {
+                CartState snapshot = rebase(conflict);
+                if (snapshot != null) {
+                    rebased.add(snapshot);
+                }
+            }
+            if (rebased.isEmpty()) {
+                return true;
+            }
+            CartPersister.Result result = cartPersister.persist(rebased, Collections.emptyList());
+            markFlushed(rebased, result);
+            flushedCarts.increment(result.rowVersions.size());
+            conflicts = result.conflicts;
+        }
+        if (!conflicts.isEmpty()) {
+            log.warn("{} paniers toujours en conflit après {} essais, retentés au flush suivant",
+                    conflicts.size(), conflictRetries);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Repart de la ligne écrite par une autre instance pour le panier vivant et y rejoue les
+     * modifications pas encore écrites. Un panier relu depuis le journal n'a pas de
+     * modifications enregistrées : son contenu est gardé et simplement écrit sur la ligne.
+     *
+     * @return un instantané du panier repris, ou {@code null} s'il a quitté la mémoire
+     */
+    private CartState rebase(CartState conflict) {
+        Long userId = conflict.getUserId();
+        String sessionId = conflict.getSessionId();
+        Optional<Cart> row = userId != null
+                ? cartRepository.findWithItemsByUserId(userId)
+                : cartRepository.findWithItemsBySessionId(sessionId);
+
+        String key = key(userId, sessionId);
+        Shard shard = shardFor(key);
+        shard.lock.lock();
+        try {
+            CartState live = shard.carts.get(key);
+            if (live == null) {
+                return null;
+            }
+            if (row.isEmpty()) {
+                // Supprimé entre-temps : écrit comme un nouveau panier
+                live.setRowVersion(null);
+                return live.copy();
+            }
+
+            if (live.getPendingMutations().isEmpty()) {
+                log.warn("Panier {} écrit par une autre instance, écrasé", row.get().getId());
+                live.setId(row.get().getId());
+                live.setRowVersion(row.get().getVersion());
+                return live.copy();
+            }
+
+            CartState fresh = CartState.fromEntity(row.get());
+            for (CartState.Mutation mutation : live.getPendingMutations()) {
+                try {
+                    mutation.apply.accept(fresh);
+                } catch (RuntimeException e) {
+                    // Par exemple la modification d'un article que l'autre instance a retiré
+                    log.debug("Modification du panier {} devenue inapplicable", fresh.getId(), e);
+                }
+            }
+            live.setId(fresh.getId());
+            live.setItems(fresh.getItems());
+            live.setCreatedAt(fresh.getCreatedAt());
+            live.setExpiresAt(fresh.getExpiresAt());
+            live.setRowVersion(fresh.getRowVersion());
+            live.setPersisted(true);
+            live.setUpdatedAt(LocalDateTime.now());
+            cartJournal.appendSave(live);
+            summaryCache.update(key, live);
+            return live.copy();
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    private void markFlushed(List<CartState> batch, CartPersister.Result result) {
+        for (CartState snapshot : batch) {
+            Long rowVersion = result.rowVersions.get(snapshot.getId());
+            if (rowVersion == null) {
+                continue;
+            }
+            String key = key(snapshot.getUserId(), snapshot.getSessionId());
+            Shard shard = shardFor(key);
+            shard.lock.lock();
+            try {
+                CartState live = shard.carts.get(key);
+                if (live != null && live.getId().equals(snapshot.getId())) {
+                    live.setFlushedVersion(Math.max(live.getFlushedVersion(), snapshot.getVersion()));
+                    live.setRowVersion(rowVersion);
+                    live.setPersisted(true);
+                    live.getPendingMutations().removeIf(mutation -> mutation.version <= snapshot.getVersion());
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+    }
+
+    // Toute modification d'un panier détenu passe par ici, sous le verrou de son shard
+    private void changed(CartState state, Consumer<CartState> mutation) {
+        state.setUpdatedAt(LocalDateTime.now());
+        state.setVersion(state.getVersion() + 1);
+        state.record(mutation);
+        cartJournal.appendSave(state);
+        summaryCache.update(key(state.getUserId(), state.getSessionId()), state);
+    }
+
+    /**
+     * Prend le verrou du shard et renvoie le panier de {@code key}, chargé s'il n'est pas en
+     * mémoire ; le verrou reste pris au retour, sauf exception. La ligne est lue hors du verrou.
+     * Si un panier du shard en a été retiré pendant la lecture, la ligne lue peut être antérieure
+     * à sa dernière écriture : elle est relue, sous le verrou après quelques essais.
+     *
+     * @return le panier, ou {@code null} s'il n'existe pas et que {@code create} est faux
+     */
+    private CartState lockLoaded(Shard shard, String key, Long userId, String sessionId, boolean create) {
+        shard.lock.lock();
+        try {
+            for (int attempt = 1; attempt < LOAD_ATTEMPTS && !shard.carts.containsKey(key); attempt++) {
+                long evictions = shard.evictions;
+                shard.lock.unlock();
+                Optional<Cart> row;
+                try {
+                    row = fetch(userId, sessionId);
+                } finally {
+                    shard.lock.lock();
+                }
+                if (shard.evictions == evictions && !shard.carts.containsKey(key)) {
+                    return hold(shard, key, row, userId, sessionId, create);
+                }
+            }
+            return loadLocked(shard, key, userId, sessionId, create);
+        } catch (RuntimeException e) {
+            shard.lock.unlock();
+            throw e;
+        }
+    }
+
+    // Charge le panier en mémoire sans garder le verrou ; faux s'il n'existe pas
+    private boolean preload(Shard shard, String key, Long userId, String sessionId, boolean create) {
+        CartState state = lockLoaded(shard, key, userId, sessionId, create);
+        shard.lock.unlock();
+        return state != null;
+    }
+
+    // Sous le verrou du shard : le panier détenu, sinon celui de sa ligne, lue sous le verrou
+    private CartState loadLocked(Shard shard, String key, Long userId, String sessionId, boolean create) {
+        CartState state = shard.carts.get(key);
+        if (state != null) {
+            state.setLastAccessMillis(System.currentTimeMillis());
+            return state;
+        }
+        return hold(shard, key, fetch(userId, sessionId), userId, sessionId, create);
+    }
+
+    // Garde en mémoire le panier de la ligne, ou un nouveau panier si elle n'existe pas
+    private CartState hold(Shard shard, String key, Optional<Cart> row, Long userId, String sessionId,
+                           boolean create) {
+        CartState state = fromRow(row);
+        if (state == null) {
+            if (!create) {
+                return null;
+            }
+            state = create(userId, sessionId);
+        }
+        state.setLastAccessMillis(System.currentTimeMillis());
+        shard.carts.put(key, state);
+        expiryWheel.schedule(key, expiresAtMillis(state));
+        summaryCache.update(key, state);
+        return state;
+    }
+
+    // Toute sortie d'un panier de la mémoire passe par ici (ou par le flush), sous le verrou de son shard
+    private void evict(Shard shard, String key) {
+        shard.carts.remove(key);
+        shard.evictions++;
+        expiryWheel.cancel(key);
+    }
+
+    private void markDeleted(CartState state) {
+        state.setDeleted(true);
+        summaryCache.remove(key(state.getUserId(), state.getSessionId()));
+        if (state.isPersisted() || state.isDirty()) {
+            cartJournal.appendDelete(state.getId());
+            pendingDeletes.add(state.getId());
+        }
+    }
+
+    private static long expiresAtMillis(CartState state) {
+        if (state.getExpiresAt() == null) {
+            return Long.MAX_VALUE;
+        }
+        return state.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private Optional<Cart> fetch(Long userId, String sessionId) {
+        if (userId != null) {
+            return cartRepository.findWithItemsByUserId(userId);
+        } else if (sessionId != null) {
+            return cartRepository.findWithItemsBySessionId(sessionId);
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Long> fetchVersion(Long userId, String sessionId) {
+        if (userId != null) {
+            return cartRepository.findVersionByUserId(userId);
+        } else if (sessionId != null) {
+            return cartRepository.findVersionBySessionId(sessionId);
+        }
+        return Optional.empty();
+    }
+
+    private CartState fromRow(Optional<Cart> cart) {
+        // Une ligne dont la suppression est en file est déjà partie pour les appelants
+        CartState state = cart.filter(c -> !pendingDeletes.contains(c.getId()))
+                .map(CartState::fromEntity)
+                .orElse(null);
+        if (state != null && expiresAtMillis(state) <= System.currentTimeMillis()) {
+            // Expiré mais pas encore balayé : remplacé par un nouveau panier, écrit après la suppression de cette ligne
+            markDeleted(state);
+            return null;
+        }
+        return state;
+    }
+
+    private CartState create(Long userId, String sessionId) {
+        LocalDateTime now = LocalDateTime.now();
+        CartState state = new CartState();
+        state.setId(idGenerator.nextId());
+        state.setUserId(userId);
+        state.setSessionId(userId != null ? null : sessionId);
+        state.setCreatedAt(now);
+        state.setUpdatedAt(now);
+        state.setExpiresAt(now.plusHours(2));
+        return state;
+    }
+
+    private Shard shardFor(String key) {
+        return shards[shardIndex(key)];
+    }
+
+    private int shardIndex(String key) {
+        return Math.floorMod(key.hashCode(), shards.length);
+    }
+
+    private static class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, CartState> carts = new HashMap<>();
+        // Paniers retirés de la mémoire ; une ligne lue hors du verrou est relue s'il a bougé
+        private long evictions;
+    }
+}
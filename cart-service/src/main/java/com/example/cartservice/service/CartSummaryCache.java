@@ -0,0 +1,69 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.dto.CartSummaryResponse;
+import org.springframework.stereotype.Component;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Résumés (nombre d'articles, total) des paniers détenus par {@link CartStore}, indexés comme
+ * le store par utilisateur ou session. Le store remplace l'entrée à chaque modification du
+ * panier, sous le verrou de son shard : un résumé se lit sans verrouiller le panier ni parcourir
+ * ses articles.
+ * <p>
+ * L'ETag est construit à partir de l'id du panier et de son {@code updatedAt}, fixé par chaque
+ * modification et écrit avec le panier : contrairement à la version en mémoire, il survit à un
+ * redémarrage, un ETag ne désigne donc jamais deux contenus différents.
+ */
+@Component
+public class CartSummaryCache {
+
+    private final Map<String, CartSummaryResponse> summaries = new ConcurrentHashMap<>();
+
+    public CartSummaryResponse get(String key) {
+        return summaries.get(key);
+    }
+
+    CartSummaryResponse update(String key, CartState state) {
+        CartSummaryResponse summary = summarize(state, etag(state));
+        summaries.put(key, summary);
+        return summary;
+    }
+
+    void remove(String key) {
+        summaries.remove(key);
+    }
+
+    // Ni utilisateur, ni session, ni jeton : aucun panier n'est créé pour répondre
+    public static CartSummaryResponse empty() {
+        CartSummaryResponse summary = new CartSummaryResponse();
+        summary.setItemCount(0);
+        summary.setTotalQuantity(0);
+        summary.setTotalAmount(0.0);
+        summary.setVersion(0L);
+        summary.setEtag("\"0\"");
+        return summary;
+    }
+
+    static CartSummaryResponse summarize(CartState state, String etag) {
+        CartSummaryResponse summary = new CartSummaryResponse();
+        summary.setCartId(state.getId());
+        summary.setSessionId(state.getSessionId());
+        summary.setItemCount(state.getItemCount());
+        summary.setTotalQuantity(state.getItemList().stream().mapToInt(CartState.Item::getQuantity).sum());
+        summary.setTotalAmount(state.getTotalAmount());
+        summary.setUpdatedAt(state.getUpdatedAt());
+        summary.setVersion(state.getVersion());
+        summary.setEtag(etag);
+        return summary;
+    }
+
+    private static String etag(CartState state) {
+        long updatedAt = state.getUpdatedAt() == null ? 0
+                : ChronoUnit.MICROS.between(Instant.EPOCH, state.getUpdatedAt().toInstant(ZoneOffset.UTC));
+        return "\"" + Long.toString(state.getId(), 36) + "-" + Long.toString(updatedAt, 36) + "\"";
+    }
+}
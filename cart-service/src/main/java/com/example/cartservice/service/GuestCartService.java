@@ -0,0 +1,216 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.dto.BookInfo;
+import com.example.cartservice.dto.CartItemRequest;
+import com.example.cartservice.dto.CartResponse;
+import com.example.cartservice.dto.CartSummaryResponse;
+import com.example.cartservice.repository.MergedGuestCartRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Paniers invités sans état : le contenu du panier voyage dans un jeton signé
+ * ({@link GuestCartTokenCodec}), modifié en mémoire et renvoyé à chaque réponse. Rien n'est
+ * écrit en base avant la fusion dans le panier de l'utilisateur à la connexion.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GuestCartService {
+
+    private final GuestCartTokenCodec tokenCodec;
+    private final CartService cartService;
+    private final CartStore cartStore;
+    private final IdGenerator idGenerator;
+    private final MergedGuestCartRepository mergedGuestCartRepository;
+
+    @Value("${cart.guest-token.ttl-hours:2}")
+    private long ttlHours;
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Result {
+        private final CartResponse cart;
+        private final String token;
+    }
+
+    public Result getCart(String token) {
+        GuestCartToken cart = decode(token);
+        return new Result(toResponse(cart, cartService.lookupBooks(cart.getQuantities().keySet())), tokenCodec.encode(cart));
+    }
+
+    /**
+     * Résumé du panier du jeton, sans jeton en retour : le badge ne prolonge pas le panier. Sans
+     * jeton valide, le résumé est vide et aucun panier n'est créé.
+     */
+    public CartSummaryResponse getSummary(String token) {
+        GuestCartToken cart = decodeValid(token);
+        if (cart == null) {
+            return CartSummaryCache.empty();
+        }
+        CartState state = toState(cart, cartService.lookupBooks(cart.getQuantities().keySet()));
+        state.setId(cart.getId());
+        // Les prix sont relus à chaque appel : ils font partie de l'ETag
+        String etag = "\"" + Long.toString(cart.getId(), 36) + "-"
+                + Integer.toHexString(Objects.hash(cart.getQuantities(), state.getTotalAmount())) + "\"";
+        return CartSummaryCache.summarize(state, etag);
+    }
+
+    public Result addItem(String token, CartItemRequest itemRequest) {
+        return addItems(token, List.of(itemRequest));
+    }
+
+    public Result addItems(String token, List<CartItemRequest> itemRequests) {
+        GuestCartToken cart = decode(token);
+        Map<Long, Integer> quantities = new LinkedHashMap<>(cart.getQuantities());
+        for (CartItemRequest itemRequest : itemRequests) {
+            quantities.merge(itemRequest.getBookId(), itemRequest.getQuantity(), Integer::sum);
+        }
+        if (quantities.size() > tokenCodec.getMaxItems()) {
+            throw new RuntimeException("Guest cart cannot hold more than " + tokenCodec.getMaxItems() + " items");
+        }
+
+        // Vérifier la disponibilité des livres ajoutés
+        Map<Long, BookInfo> books = cartService.lookupBooks(quantities.keySet());
+        for (CartItemRequest itemRequest : itemRequests) {
+            BookInfo bookInfo = books.get(itemRequest.getBookId());
+            if (bookInfo == null) {
+                throw new RuntimeException("Book not found with id: " + itemRequest.getBookId());
+            }
+            if (bookInfo.getStock() < quantities.get(itemRequest.getBookId())) {
+                throw new RuntimeException("Insufficient stock for book: " + bookInfo.getTitle());
+            }
+        }
+
+        cart.setQuantities(quantities);
+        return touch(cart, books);
+    }
+
+    // L'identifiant d'une ligne de panier invité est celui du livre
+    public Result updateItem(String token, Long itemId, Integer quantity) {
+        GuestCartToken cart = decode(token);
+        if (!cart.getQuantities().containsKey(itemId)) {
+            throw new RuntimeException("Cart item not found");
+        }
+        Map<Long, BookInfo> books = cartService.lookupBooks(cart.getQuantities().keySet());
+        BookInfo bookInfo = books.get(itemId);
+        if (bookInfo == null || bookInfo.getStock() < quantity) {
+            throw new RuntimeException("Insufficient stock");
+        }
+        cart.getQuantities().put(itemId, quantity);
+        return touch(cart, books);
+    }
+
+    public Result removeItem(String token, Long itemId) {
+        GuestCartToken cart = decode(token);
+        if (cart.getQuantities().remove(itemId) == null) {
+            throw new RuntimeException("Cart item not found");
+        }
+        return touch(cart, cartService.lookupBooks(cart.getQuantities().keySet()));
+    }
+
+    public Result clearCart(String token) {
+        GuestCartToken cart = decode(token);
+        cart.getQuantities().clear();
+        return touch(cart, Map.of());
+    }
+
+    /**
+     * Écrit le panier invité dans le panier de l'utilisateur, avec les quantités limitées au
+     * stock comme pour un panier de session. C'est la seule écriture en base d'un panier invité.
+     * <p>
+     * Le jeton est d'abord réservé en base ({@link MergedGuestCartRepository#claim}) : rejoué
+     * ensuite, sur cette instance ou une autre, il n'est plus fusionné ni accepté comme panier.
+     */
+    public void mergeCart(String token, Long userId) {
+        GuestCartToken guestCart = decode(token);
+        if (guestCart.getQuantities().isEmpty()) {
+            return;
+        }
+        if (mergedGuestCartRepository.claim(guestCart.getId(), userId, LocalDateTime.now(),
+                toLocalDateTime(guestCart.getExpiresAtEpochSecond())) == 0) {
+            log.info("Panier invité {} déjà fusionné", guestCart.getId());
+            return;
+        }
+
+        try {
+            Map<Long, BookInfo> books = cartService.lookupBooks(guestCart.getQuantities().keySet());
+            CartState source = toState(guestCart, books);
+            Map<Long, Long> itemIds = new HashMap<>();
+            cartStore.update(userId, null, userCart -> {
+                cartService.mergeCartItems(source, userCart, books, itemIds);
+                userCart.setExpiresAt(LocalDateTime.now().plusHours(ttlHours));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            mergedGuestCartRepository.deleteById(guestCart.getId());
+            throw e;
+        }
+        log.info("Panier invité {} fusionné dans le panier de l'utilisateur {}", guestCart.getId(), userId);
+    }
+
+    // Sans jeton, ou avec un jeton expiré, l'invité repart d'un panier vide
+    private GuestCartToken decode(String token) {
+        GuestCartToken valid = decodeValid(token);
+        if (valid != null) {
+            return valid;
+        }
+        GuestCartToken cart = new GuestCartToken();
+        cart.setId(idGenerator.nextId());
+        cart.setExpiresAtEpochSecond(Instant.now().getEpochSecond() + ttlHours * 3600);
+        return cart;
+    }
+
+    // Null sans jeton, avec un jeton expiré ou déjà fusionné ; un jeton falsifié est refusé
+    private GuestCartToken decodeValid(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        GuestCartToken cart = tokenCodec.decode(token);
+        if (cart.getExpiresAtEpochSecond() < Instant.now().getEpochSecond()
+                || mergedGuestCartRepository.existsById(cart.getId())) {
+            return null;
+        }
+        return cart;
+    }
+
+    private Result touch(GuestCartToken cart, Map<Long, BookInfo> books) {
+        cart.setExpiresAtEpochSecond(Instant.now().getEpochSecond() + ttlHours * 3600);
+        return new Result(toResponse(cart, books), tokenCodec.encode(cart));
+    }
+
+    private CartResponse toResponse(GuestCartToken cart, Map<Long, BookInfo> books) {
+        CartResponse response = cartService.mapToCartResponse(toState(cart, books));
+        response.setId(cart.getId());
+        return response;
+    }
+
+    // Prix et titres lus au moment de l'affichage ; un livre supprimé disparaît du panier
+    private CartState toState(GuestCartToken cart, Map<Long, BookInfo> books) {
+        CartState state = new CartState();
+        cart.getQuantities().forEach((bookId, quantity) -> {
+            BookInfo bookInfo = books.get(bookId);
+            if (bookInfo != null) {
+                CartState.Item item = cartService.newItem(bookId, bookInfo, quantity);
+                state.getItems().put(bookId, item);
+            }
+        });
+        state.setExpiresAt(toLocalDateTime(cart.getExpiresAtEpochSecond()));
+        return state;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochSecond) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+}
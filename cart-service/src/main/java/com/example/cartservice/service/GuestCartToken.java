@@ -0,0 +1,22 @@
+package com.example.cartservice.service;
+
+import lombok.Getter;
+import lombok.Setter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Contenu d'un panier invité sans état, porté par le client dans l'en-tête X-Cart-Token (voir
+ * {@link GuestCartTokenCodec}) : seulement les ids des livres et les quantités, le reste est
+ * relu à chaque requête.
+ */
+@Getter
+@Setter
+class GuestCartToken {
+
+    // Identifie le panier invité (par exemple pour ne le fusionner qu'une fois)
+    private long id;
+    private long expiresAtEpochSecond;
+    // bookId -> quantité, dans l'ordre d'ajout
+    private Map<Long, Integer> quantities = new LinkedHashMap<>();
+}
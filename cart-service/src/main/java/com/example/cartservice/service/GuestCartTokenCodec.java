@@ -0,0 +1,186 @@
+package com.example.cartservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encode les paniers invités en jetons signés compacts :
+ * {@code base64url(flags | contenu | HMAC-SHA256(flags | contenu) tronqué à 16 octets)}.
+ * Le contenu porte l'id du panier, son expiration et les lignes (id du livre, quantité) en
+ * varints, compressé (deflate) quand il y gagne. Les jetons sont vérifiés avec le secret
+ * {@code cart.guest-token.secret}, identique sur toutes les instances ; sans lui, un secret
+ * aléatoire est utilisé et les jetons ne survivent pas à un redémarrage.
+ */
+@Component
+@Slf4j
+public class GuestCartTokenCodec {
+
+    private static final int FORMAT = 1;
+    private static final int DEFLATED = 0x10;
+    private static final int MAC_LENGTH = 16;
+    private static final int MAX_PAYLOAD = 16 * 1024;
+
+    private final SecretKeySpec key;
+    private final int maxItems;
+
+    public GuestCartTokenCodec(@Value("${cart.guest-token.secret:}") String secret,
+                               @Value("${cart.guest-token.max-items:100}") int maxItems) {
+        byte[] keyBytes;
+        if (secret.isEmpty()) {
+            log.warn("Aucun cart.guest-token.secret configuré : les jetons des paniers invités ne survivront pas à un redémarrage");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, "HmacSHA256");
+        this.maxItems = maxItems;
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    String encode(GuestCartToken cart) {
+        if (cart.getQuantities().size() > maxItems) {
+            throw new RuntimeException("Guest cart cannot hold more than " + maxItems + " items");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarLong(out, cart.getId());
+        writeVarLong(out, cart.getExpiresAtEpochSecond());
+        writeVarLong(out, cart.getQuantities().size());
+        for (Map.Entry<Long, Integer> line : cart.getQuantities().entrySet()) {
+            writeVarLong(out, line.getKey());
+            writeVarLong(out, line.getValue());
+        }
+        byte[] payload = out.toByteArray();
+
+        int flags = FORMAT;
+        byte[] deflated = deflate(payload);
+        if (deflated.length < payload.length) {
+            payload = deflated;
+            flags |= DEFLATED;
+        }
+
+        byte[] token = new byte[1 + payload.length + MAC_LENGTH];
+        token[0] = (byte) flags;
+        System.arraycopy(payload, 0, token, 1, payload.length);
+        System.arraycopy(mac(token, 1 + payload.length), 0, token, 1 + payload.length, MAC_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * @throws RuntimeException si le jeton est mal formé ou si sa signature ne correspond pas
+     */
+    GuestCartToken decode(String value) {
+        byte[] token;
+        try {
+            token = Base64.getUrlDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid cart token");
+        }
+        if (token.length < 1 + MAC_LENGTH || (token[0] & 0x0F) != FORMAT) {
+            throw new RuntimeException("Invalid cart token");
+        }
+        int signedLength = token.length - MAC_LENGTH;
+        byte[] expected = mac(token, signedLength);
+        if (!MessageDigest.isEqual(expected, Arrays.copyOfRange(token, signedLength, token.length))) {
+            throw new RuntimeException("Invalid cart token");
+        }
+
+        byte[] payload = Arrays.copyOfRange(token, 1, signedLength);
+        if ((token[0] & DEFLATED) != 0) {
+            payload = inflate(payload);
+        }
+        int[] position = {0};
+        GuestCartToken cart = new GuestCartToken();
+        cart.setId(readVarLong(payload, position));
+        cart.setExpiresAtEpochSecond(readVarLong(payload, position));
+        long count = readVarLong(payload, position);
+        for (long i = 0; i < count; i++) {
+            long bookId = readVarLong(payload, position);
+            cart.getQuantities().put(bookId, (int) readVarLong(payload, position));
+        }
+        return cart;
+    }
+
+    private byte[] mac(byte[] data, int length) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(data, 0, length);
+            return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buffer = new byte[data.length + 64];
+            int length = deflater.deflate(buffer);
+            return deflater.finished() ? Arrays.copyOf(buffer, length) : data;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Borné : une longueur forgée ne peut pas faire allouer sans limite (le MAC est de toute
+    // façon vérifié avant)
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            byte[] buffer = new byte[MAX_PAYLOAD];
+            int length = inflater.inflate(buffer);
+            if (!inflater.finished()) {
+                throw new RuntimeException("Invalid cart token");
+            }
+            return Arrays.copyOf(buffer, length);
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Invalid cart token");
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position[0] >= data.length) {
+                throw new RuntimeException("Invalid cart token");
+            }
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new RuntimeException("Invalid cart token");
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.cartservice.service;
+
+/**
+ * Source d'identifiants uniques et croissants. L'implémentation par défaut est
+ * {@link SnowflakeIdGenerator} ; déclarer un bean {@code @Primary} de ce type pour la remplacer.
+ */
+public interface IdGenerator {
+
+    long nextId();
+
+    /**
+     * Même valeur que {@link #nextId()}, en base 36 sur une largeur fixe : l'ordre des chaînes
+     * suit l'ordre numérique (utile pour un index sur une colonne VARCHAR).
+     */
+    default String nextKey() {
+        String digits = Long.toString(nextId(), 36).toUpperCase();
+        return "0".repeat(Math.max(0, 13 - digits.length())) + digits;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.cartservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CartExpiryWheelTests {
+
+    private static final long TICK = 10;
+
+    // 8 cases de 10 ms : un tour de roue dure 80 ms
+    private final CartExpiryWheel wheel = new CartExpiryWheel(TICK, 8);
+    private final long now = System.currentTimeMillis();
+
+    @Test
+    void expiresKeyAtItsDeadline() {
+        wheel.schedule("u:1", now + 3 * TICK);
+
+        assertThat(wheel.advance(now + TICK)).isEmpty();
+        assertThat(wheel.advance(now + 3 * TICK)).containsExactly("u:1");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void keepsKeyDueAfterSeveralTurns() {
+        // 25 ticks : la case de l'échéance revient deux fois avant elle
+        wheel.schedule("u:1", now + 25 * TICK);
+
+        for (long t = TICK; t < 25 * TICK; t += TICK) {
+            assertThat(wheel.advance(now + t)).isEmpty();
+        }
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(now + 25 * TICK)).containsExactly("u:1");
+    }
+
+    @Test
+    void longPauseVisitsEverySlotOnce() {
+        wheel.schedule("u:1", now + 2 * TICK);
+        wheel.schedule("u:2", now + 13 * TICK);
+        wheel.schedule("u:3", now + 40 * TICK);
+
+        assertThat(wheel.advance(now + 100 * TICK)).containsExactlyInAnyOrder("u:1", "u:2", "u:3");
+        assertThat(wheel.advance(now + 200 * TICK)).isEmpty();
+    }
+
+    @Test
+    void rescheduleReplacesPreviousDeadline() {
+        wheel.schedule("u:1", now + 2 * TICK);
+        wheel.schedule("u:1", now + 20 * TICK);
+
+        assertThat(wheel.advance(now + 5 * TICK)).isEmpty();
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(now + 20 * TICK)).containsExactly("u:1");
+
+        // Avancée aussi
+        wheel.schedule("u:2", now + 60 * TICK);
+        wheel.schedule("u:2", now + 22 * TICK);
+        assertThat(wheel.advance(now + 22 * TICK)).containsExactly("u:2");
+        assertThat(wheel.advance(now + 60 * TICK)).isEmpty();
+    }
+
+    @Test
+    void cancelledKeyNeverExpires() {
+        wheel.schedule("u:1", now + 2 * TICK);
+        wheel.cancel("u:1");
+
+        assertThat(wheel.advance(now + 10 * TICK)).isEmpty();
+        assertThat(wheel.size()).isZero();
+
+        wheel.schedule("u:2", now + 2 * TICK);
+        wheel.schedule("u:2", Long.MAX_VALUE);
+        assertThat(wheel.advance(now + 10 * TICK)).isEmpty();
+    }
+
+    @Test
+    void pastDeadlineExpiresAtNextAdvance() {
+        wheel.advance(now + 10 * TICK);
+        wheel.schedule("u:1", now);
+
+        assertThat(wheel.advance(now + 11 * TICK)).containsExactly("u:1");
+    }
+
+    @Test
+    void rejectsSlotCountNotPowerOfTwo() {
+        assertThatThrownBy(() -> new CartExpiryWheel(TICK, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
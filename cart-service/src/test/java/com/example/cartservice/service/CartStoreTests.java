@@ -0,0 +1,173 @@
+package com.example.cartservice.service;
+
+import com.example.cartservice.model.Cart;
+import com.example.cartservice.model.CartItem;
+import com.example.cartservice.repository.CartRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CartStoreTests {
+
+    private final CartRepository cartRepository = mock(CartRepository.class);
+    private final CartPersister cartPersister = mock(CartPersister.class);
+    private final AtomicLong ids = new AtomicLong();
+    // Journal désactivé, 4 shards, pause de 1 ms entre les essais d'un conflit
+    private final CartStore store = new CartStore(cartRepository, cartPersister,
+            new CartJournal(new ObjectMapper(), false, "unused"), ids::incrementAndGet,
+            new CartExpiryWheel(1000, 64), new CartSummaryCache(), new SimpleMeterRegistry(),
+            4, 200, 600_000, 3, 1);
+
+    @Test
+    void flushWritesBurstOfChangesOnce() {
+        store.update(1L, null, cart -> addBook(cart, 10L));
+        store.update(1L, null, cart -> addBook(cart, 10L));
+        List<CartState> written = new ArrayList<>();
+        when(cartPersister.persist(anyList(), anyCollection())).thenAnswer(invocation -> {
+            List<CartState> batch = invocation.getArgument(0);
+            written.addAll(batch);
+            return written(batch, 0L);
+        });
+
+        store.flush();
+        // Plus rien à écrire
+        store.flush();
+
+        verify(cartPersister, times(1)).persist(anyList(), anyCollection());
+        assertThat(written).hasSize(1);
+        assertThat(written.get(0).getItems().get(10L).getQuantity()).isEqualTo(2);
+        store.read(1L, null, cart -> {
+            assertThat(cart.isDirty()).isFalse();
+            assertThat(cart.getRowVersion()).isZero();
+            assertThat(cart.getPendingMutations()).isEmpty();
+            return null;
+        });
+    }
+
+    @Test
+    void flushConflictReplaysChangesOnCurrentRow() {
+        store.update(1L, null, cart -> addBook(cart, 10L));
+        // Une autre instance a écrit le panier de l'utilisateur entre-temps
+        when(cartRepository.findWithItemsByUserId(1L)).thenReturn(Optional.of(row(500L, 3L, 20L)));
+        List<CartState> rebased = new ArrayList<>();
+        when(cartPersister.persist(anyList(), anyCollection()))
+                .thenAnswer(invocation -> {
+                    CartPersister.Result result = new CartPersister.Result();
+                    result.conflicts.addAll(invocation.getArgument(0));
+                    return result;
+                })
+                .thenAnswer(invocation -> {
+                    List<CartState> batch = invocation.getArgument(0);
+                    rebased.addAll(batch);
+                    return written(batch, 4L);
+                });
+
+        store.flush();
+
+        verify(cartPersister, times(2)).persist(anyList(), anyCollection());
+        assertThat(rebased).hasSize(1);
+        assertThat(rebased.get(0).getId()).isEqualTo(500L);
+        assertThat(rebased.get(0).getRowVersion()).isEqualTo(3L);
+        assertThat(rebased.get(0).getBookIds()).containsExactly(20L, 10L);
+        store.read(1L, null, cart -> {
+            assertThat(cart.getId()).isEqualTo(500L);
+            assertThat(cart.getRowVersion()).isEqualTo(4L);
+            assertThat(cart.isDirty()).isFalse();
+            assertThat(cart.getPendingMutations()).isEmpty();
+            return null;
+        });
+    }
+
+    @Test
+    void readCurrentReloadsCleanCartBehindItsRow() {
+        when(cartRepository.findWithItemsByUserId(1L))
+                .thenReturn(Optional.of(row(500L, 3L, 20L)), Optional.of(row(500L, 4L, 30L)));
+        store.read(1L, null, CartState::getBookIds);
+        when(cartRepository.findVersionByUserId(1L)).thenReturn(Optional.of(4L));
+
+        List<Long> bookIds = store.readCurrent(1L, null, CartState::getBookIds);
+
+        assertThat(bookIds).containsExactly(30L);
+    }
+
+    @Test
+    void readCurrentRebasesDirtyCartBehindItsRow() {
+        when(cartRepository.findWithItemsByUserId(1L))
+                .thenReturn(Optional.of(row(500L, 3L, 20L)), Optional.of(row(500L, 4L, 30L)));
+        store.update(1L, null, cart -> addBook(cart, 10L));
+        when(cartRepository.findVersionByUserId(1L)).thenReturn(Optional.of(4L));
+
+        store.readCurrent(1L, null, cart -> {
+            assertThat(cart.getBookIds()).containsExactly(30L, 10L);
+            assertThat(cart.getRowVersion()).isEqualTo(4L);
+            // L'ajout reste à écrire, sur la nouvelle ligne
+            assertThat(cart.isDirty()).isTrue();
+            return null;
+        });
+    }
+
+    @Test
+    void readCurrentKeepsCartMatchingItsRow() {
+        when(cartRepository.findWithItemsByUserId(1L)).thenReturn(Optional.of(row(500L, 3L, 20L)));
+        store.read(1L, null, CartState::getBookIds);
+        when(cartRepository.findVersionByUserId(1L)).thenReturn(Optional.of(3L));
+
+        assertThat(store.readCurrent(1L, null, CartState::getBookIds)).containsExactly(20L);
+        verify(cartRepository, times(1)).findWithItemsByUserId(1L);
+    }
+
+    private static Void addBook(CartState cart, Long bookId) {
+        CartState.Item item = cart.getItems().get(bookId);
+        if (item != null) {
+            item.setQuantity(item.getQuantity() + 1);
+            return null;
+        }
+        item = new CartState.Item();
+        item.setId(bookId);
+        item.setBookId(bookId);
+        item.setTitle("Book " + bookId);
+        item.setPrice(10.0);
+        item.setQuantity(1);
+        cart.getItems().put(bookId, item);
+        return null;
+    }
+
+    // Ligne du panier de l'utilisateur 1 avec un exemplaire de bookId
+    private static Cart row(Long id, Long version, Long bookId) {
+        LocalDateTime now = LocalDateTime.now();
+        Cart cart = new Cart();
+        cart.setId(id);
+        cart.setUserId(1L);
+        cart.setVersion(version);
+        cart.setCreatedAt(now);
+        cart.setUpdatedAt(now);
+        cart.setExpiresAt(now.plusHours(2));
+        CartItem item = new CartItem();
+        item.setId(bookId);
+        item.setBookId(bookId);
+        item.setTitle("Book " + bookId);
+        item.setPrice(10.0);
+        item.setQuantity(1);
+        cart.getItems().add(item);
+        return cart;
+    }
+
+    private static CartPersister.Result written(List<CartState> batch, long rowVersion) {
+        CartPersister.Result result = new CartPersister.Result();
+        batch.forEach(snapshot -> result.rowVersions.put(snapshot.getId(), rowVersion));
+        return result;
+    }
+}
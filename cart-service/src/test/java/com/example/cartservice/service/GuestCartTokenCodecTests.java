@@ -0,0 +1,99 @@
+package com.example.cartservice.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class GuestCartTokenCodecTests {
+
+    private static final int DEFLATED = 0x10;
+
+    private final GuestCartTokenCodec codec = new GuestCartTokenCodec("test-secret", 100);
+
+    @Test
+    void roundTripKeepsCartAndItemOrder() {
+        GuestCartToken cart = cart(1234567890123L, 30, 3, 3, 2, 7, 1);
+
+        GuestCartToken decoded = codec.decode(codec.encode(cart));
+
+        assertThat(decoded.getId()).isEqualTo(1234567890123L);
+        assertThat(decoded.getExpiresAtEpochSecond()).isEqualTo(cart.getExpiresAtEpochSecond());
+        assertThat(decoded.getQuantities()).containsExactly(
+                entry(30L, 3), entry(3L, 2), entry(7L, 1));
+    }
+
+    @Test
+    void smallCartIsNotDeflated() {
+        byte[] token = bytes(codec.encode(cart(1L, 42, 1)));
+
+        assertThat(token[0] & DEFLATED).isZero();
+    }
+
+    @Test
+    void largeCartIsDeflatedAndRoundTrips() {
+        GuestCartToken cart = cart(99L);
+        for (long bookId = 1000; bookId < 1100; bookId++) {
+            cart.getQuantities().put(bookId, 1);
+        }
+
+        String encoded = codec.encode(cart);
+
+        assertThat(bytes(encoded)[0] & DEFLATED).isNotZero();
+        assertThat(codec.decode(encoded).getQuantities()).isEqualTo(cart.getQuantities());
+    }
+
+    @Test
+    void rejectsTamperedToken() {
+        byte[] token = bytes(codec.encode(cart(1L, 42, 1)));
+        // Quantité modifiée : la signature ne correspond plus
+        token[token.length - 17] ^= 0x01;
+
+        assertThatThrownBy(() -> codec.decode(Base64.getUrlEncoder().withoutPadding().encodeToString(token)))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Invalid cart token");
+    }
+
+    @Test
+    void rejectsTokenSignedWithAnotherSecret() {
+        String encoded = new GuestCartTokenCodec("other-secret", 100).encode(cart(1L, 42, 1));
+
+        assertThatThrownBy(() -> codec.decode(encoded))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Invalid cart token");
+    }
+
+    @Test
+    void rejectsMalformedToken() {
+        String encoded = codec.encode(cart(1L, 42, 1));
+
+        assertThatThrownBy(() -> codec.decode("not base64!")).hasMessage("Invalid cart token");
+        assertThatThrownBy(() -> codec.decode(encoded.substring(0, 10))).hasMessage("Invalid cart token");
+        assertThatThrownBy(() -> codec.decode("")).hasMessage("Invalid cart token");
+    }
+
+    @Test
+    void rejectsTooManyItems() {
+        GuestCartTokenCodec small = new GuestCartTokenCodec("test-secret", 2);
+
+        assertThatThrownBy(() -> small.encode(cart(1L, 1, 1, 2, 1, 3, 1)))
+                .isInstanceOf(RuntimeException.class);
+    }
+
+    // bookIdsAndQuantities : id du livre, quantité, id du livre, quantité...
+    private static GuestCartToken cart(long id, int... bookIdsAndQuantities) {
+        GuestCartToken cart = new GuestCartToken();
+        cart.setId(id);
+        cart.setExpiresAtEpochSecond(1_800_000_000L);
+        for (int i = 0; i < bookIdsAndQuantities.length; i += 2) {
+            cart.getQuantities().put((long) bookIdsAndQuantities[i], bookIdsAndQuantities[i + 1]);
+        }
+        return cart;
+    }
+
+    private static byte[] bytes(String encoded) {
+        return Base64.getUrlDecoder().decode(encoded);
+    }
+}
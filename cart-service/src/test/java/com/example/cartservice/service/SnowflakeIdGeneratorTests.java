@@ -0,0 +1,83 @@
+package com.example.cartservice.service;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeIdGeneratorTests {
+
+    @Test
+    void idsAreStrictlyIncreasing() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+        long previous = generator.nextId();
+        // Bien plus que 4096 ids par milliseconde : la séquence déborde sur les suivantes
+        for (int i = 0; i < 100_000; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    void idsCarryTheNodeId() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID);
+        long id = generator.nextId();
+        assertThat((id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_NODE_ID)
+                .isEqualTo(SnowflakeIdGenerator.MAX_NODE_ID);
+    }
+
+    @Test
+    void idsAreUniqueAcrossThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    long previous = 0;
+                    for (int i = 0; i < 20_000; i++) {
+                        long id = generator.nextId();
+                        // Croissants aussi pour chaque thread
+                        assertThat(id).isGreaterThan(previous);
+                        previous = id;
+                        ids.add(id);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(ids).hasSize(80_000);
+    }
+
+    @Test
+    void keysSortLikeIds() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3);
+        String previous = generator.nextKey();
+        for (int i = 0; i < 1_000; i++) {
+            String key = generator.nextKey();
+            assertThat(key).hasSize(13).isGreaterThan(previous);
+            previous = key;
+        }
+    }
+
+    @Test
+    void rejectsNodeIdOutOfRange() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(-1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -1,11 +1,15 @@
 package com.example.orderservice.client;
 
 import com.example.orderservice.dto.BookInfo;
+import com.example.orderservice.dto.StockReservationRequest;
+import com.example.orderservice.dto.StockReservationResponse;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.PutMapping;
-import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import java.util.Collection;
+import java.util.Map;
 
 @FeignClient(name = "book-service")
 public interface BookServiceClient {
@@ -13,6 +17,15 @@ public interface BookServiceClient {
     @GetMapping("/{id}")
     BookInfo getBookById(@PathVariable("id") Long id);
 
-    @PutMapping("/{id}/stock")
-    void updateStock(@PathVariable("id") Long id, @RequestParam Integer quantity);
+    @PostMapping("/batch")
+    Map<Long, BookInfo> getBooksByIds(@RequestBody Collection<Long> ids);
+
+    @PostMapping("/stock/reservations")
+    StockReservationResponse reserveStock(@RequestBody StockReservationRequest request);
+
+    @PostMapping("/stock/reservations/{reservationId}/commit")
+    StockReservationResponse commitStockReservation(@PathVariable("reservationId") String reservationId);
+
+    @PostMapping("/stock/reservations/{reservationId}/release")
+    StockReservationResponse releaseStockReservation(@PathVariable("reservationId") String reservationId);
 }
\ No newline at end of file
@@ -4,10 +4,12 @@ import com.example.orderservice.dto.CartInfo;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 
 @FeignClient(name = "cart-service")
 public interface CartServiceClient {
 
+    // fresh : panier vérifié contre la base par l'instance qui répond
     @GetMapping
-    CartInfo getCart(@RequestHeader("X-User-Id") Long userId);
+    CartInfo getCart(@RequestHeader("X-User-Id") Long userId, @RequestParam("fresh") boolean fresh);
 }
\ No newline at end of file
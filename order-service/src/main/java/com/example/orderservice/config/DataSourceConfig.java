@@ -0,0 +1,28 @@
+package com.example.orderservice.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DataSourceConfig {
+
+    // Sans useCursorFetch, MySQL Connector/J ignore le fetch size et charge tout le résultat en
+    // mémoire : l'export et les listes complètes (OrderRepository.streamAll) lisent alors par paquets avec un curseur serveur.
+    // Seules les requêtes avec un fetch size sont concernées, les autres restent inchangées
+    @Bean
+    public static BeanPostProcessor cursorFetchDataSourcePostProcessor(
+            @Value("${order.datasource.cursor-fetch:true}") boolean cursorFetch) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (cursorFetch && bean instanceof HikariDataSource dataSource) {
+                    dataSource.addDataSourceProperty("useCursorFetch", "true");
+                }
+                return bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.orderservice.config;
+
+import com.example.orderservice.service.IdGenerator;
+import com.example.orderservice.service.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class IdGeneratorConfig {
+
+    /**
+     * Chaque instance doit avoir son propre node id (0-1023), fixé par order.id.node-id. Sans
+     * node id, le démarrage échoue, sauf avec order.id.single-instance=true (une seule instance,
+     * node 0) : deux instances sur le même node id généreraient les mêmes ids.
+     */
+    @Bean
+    public IdGenerator idGenerator(@Value("${order.id.node-id:-1}") long nodeId,
+                                   @Value("${order.id.single-instance:false}") boolean singleInstance) {
+        if (nodeId < 0) {
+            if (!singleInstance) {
+                throw new IllegalStateException("order.id.node-id doit être fixé (0-1023, distinct par instance), "
+                        + "ou order.id.single-instance=true si une seule instance tourne");
+            }
+            nodeId = 0;
+            log.warn("Aucun order.id.node-id configuré, node id 0 (order.id.single-instance=true)");
+        }
+        return new SnowflakeIdGenerator(nodeId);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.orderservice.config;
 
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
@@ -38,6 +39,18 @@ public class RabbitMQConfig {
         return new Queue("payment.status.queue", true);
     }
 
+    // Ventes par livre, consommées par book-service (classement des meilleures ventes)
+    @Bean
+    public Queue bookSalesQueue() {
+        return new Queue("book.sales.queue", true);
+    }
+
+    // Confirmations et libérations de réservations de stock, consommées par book-service
+    @Bean
+    public Queue bookStockQueue() {
+        return new Queue("book.stock.queue", true);
+    }
+
     @Bean
     public Queue orderAdminQueue() {
         return new Queue("order.admin.queue", true);
@@ -58,9 +71,23 @@ public class RabbitMQConfig {
                 .with("order.status");
     }
 
+    @Bean
+    public Binding bookSalesBinding() {
+        return BindingBuilder.bind(bookSalesQueue())
+                .to(orderExchange())
+                .with("order.sales");
+    }
+
+    @Bean
+    public Binding bookStockBinding() {
+        return BindingBuilder.bind(bookStockQueue())
+                .to(orderExchange())
+                .with("order.stock");
+    }
+
     @Bean
     public Binding orderClearCartBinding() {
-        return BindingBuilder.bind(new Queue("cart.clear.queue", true))
+        return BindingBuilder.bind(cartClearQueue())
                 .to(orderExchange())
                 .with("order.clear.cart");
     }
@@ -80,14 +107,23 @@ public class RabbitMQConfig {
 
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+        // Confirmations de publication, attendues par le relais de l'outbox
+        if (connectionFactory instanceof CachingConnectionFactory cachingConnectionFactory
+                && cachingConnectionFactory.getPublisherConfirmType() == CachingConnectionFactory.ConfirmType.NONE) {
+            cachingConnectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        }
         RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
         rabbitTemplate.setMessageConverter(jsonMessageConverter());
         return rabbitTemplate;
     }
 
+    // Mêmes arguments que dans cart-service (dead-letter vers cart.clear.dlq)
     @Bean
     Queue cartClearQueue() {
-        return new Queue("cart.clear.queue", true); // true = durable
+        return QueueBuilder.durable("cart.clear.queue")
+                .deadLetterExchange("cart.clear.dlx")
+                .deadLetterRoutingKey("cart.clear.dlq")
+                .build();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.example.orderservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class RemoteCallConfig {
+
+    // Threads des appels parallèles vers les autres services (voir RemoteCalls)
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService remoteCallExecutor(
+            @Value("${order.remote-calls.pool-size:32}") int poolSize,
+            @Value("${order.remote-calls.queue-capacity:256}") int queueCapacity) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "remote-call-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // Saturé : refuser (RemoteCalls échoue vite) plutôt que d'exécuter l'appel sur le thread
+                // de la requête, où il ignorerait l'échéance du scope
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
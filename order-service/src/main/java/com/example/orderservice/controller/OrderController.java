@@ -1,15 +1,21 @@
 package com.example.orderservice.controller;
 
+import com.example.orderservice.dto.OrderPage;
 import com.example.orderservice.dto.OrderRequest;
 import com.example.orderservice.dto.OrderResponse;
+import com.example.orderservice.dto.UserOrderStatsResponse;
+import com.example.orderservice.model.Order;
+import com.example.orderservice.service.IdempotencyService;
 import com.example.orderservice.service.OrderService;
+import com.example.orderservice.service.UserOrderStatsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
-import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import java.util.List;
 
 @RestController
@@ -19,11 +25,20 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final UserOrderStatsService userOrderStatsService;
 
     @PostMapping
     @Operation(summary = "Créer une nouvelle commande")
-    public ResponseEntity<OrderResponse> createOrder(@Valid @RequestBody OrderRequest orderRequest) {
-        return ResponseEntity.ok(orderService.createOrder(orderRequest));
+    public ResponseEntity<OrderResponse> createOrder(
+            @Valid @RequestBody OrderRequest orderRequest,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return ResponseEntity.ok(orderService.createOrder(orderRequest));
+        }
+        // Une requête rejouée avec la même clé renvoie la commande déjà créée
+        return ResponseEntity.ok(idempotencyService.execute(orderRequest.getUserId(), idempotencyKey, orderRequest,
+                claim -> orderService.createOrder(orderRequest, claim)));
     }
 
     @GetMapping("/{id}")
@@ -40,20 +55,51 @@ public class OrderController {
 
     @GetMapping("/user/{userId}")
     @Operation(summary = "Récupérer les commandes d'un utilisateur")
-    public ResponseEntity<List<OrderResponse>> getOrdersByUser(@PathVariable Long userId) {
-        return ResponseEntity.ok(orderService.getOrdersByUserId(userId));
+    public ResponseEntity<StreamingResponseBody> getOrdersByUser(@PathVariable Long userId) {
+        return orderList(userId, null);
     }
 
     @GetMapping
     @Operation(summary = "Récupérer toutes les commandes")
-    public ResponseEntity<List<OrderResponse>> getAllOrders() {
-        return ResponseEntity.ok(orderService.getAllOrders());
+    public ResponseEntity<StreamingResponseBody> getAllOrders() {
+        return orderList(null, null);
+    }
+
+    @GetMapping("/page")
+    @Operation(summary = "Récupérer une page de commandes (curseur: before = nextCursor de la page précédente)")
+    public ResponseEntity<OrderPage> getOrdersPage(
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(orderService.getOrdersPage(userId, status, before, size));
+    }
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @Operation(summary = "Exporter toutes les commandes en NDJSON (une commande par ligne)")
+    public ResponseEntity<StreamingResponseBody> exportOrders(@RequestParam(required = false) String status) {
+        // Statut vérifié avant d'envoyer la réponse
+        Order.OrderStatus orderStatus = status != null ? orderService.parseStatus(status) : null;
+        StreamingResponseBody body = out -> orderService.exportOrders(orderStatus, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
     }
 
     @GetMapping("/status/{status}")
     @Operation(summary = "Récupérer les commandes par statut")
-    public ResponseEntity<List<OrderResponse>> getOrdersByStatus(@PathVariable String status) {
-        return ResponseEntity.ok(orderService.getOrdersByStatus(status));
+    public ResponseEntity<StreamingResponseBody> getOrdersByStatus(@PathVariable String status) {
+        // Statut vérifié avant d'envoyer la réponse
+        return orderList(null, orderService.parseStatus(status));
+    }
+
+    // Même contenu qu'avant (le tableau JSON de toutes les commandes), écrit au fil de la lecture
+    // au lieu d'être construit en mémoire
+    private ResponseEntity<StreamingResponseBody> orderList(Long userId, Order.OrderStatus status) {
+        StreamingResponseBody body = out -> orderService.writeOrderList(userId, status, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
     @PutMapping("/{id}/status")
@@ -88,16 +134,8 @@ public class OrderController {
 
     @GetMapping("/user/{userId}/stats")
     @Operation(summary = "Récupérer les statistiques d'un utilisateur")
-    public ResponseEntity<UserStats> getUserStats(@PathVariable Long userId) {
-        Double totalSpent = orderService.getUserTotalSpent(userId);
-        Long orderCount = orderService.getUserOrderCount(userId);
-
-        UserStats stats = new UserStats();
-        stats.setUserId(userId);
-        stats.setTotalSpent(totalSpent);
-        stats.setOrderCount(orderCount);
-
-        return ResponseEntity.ok(stats);
+    public ResponseEntity<UserOrderStatsResponse> getUserStats(@PathVariable Long userId) {
+        return ResponseEntity.ok(userOrderStatsService.getStats(userId));
     }
 
     @GetMapping("/{id}/items")
@@ -105,11 +143,4 @@ public class OrderController {
     public ResponseEntity<List<?>> getOrderItems(@PathVariable Long id) {
         return ResponseEntity.ok(orderService.getOrderItems(id));
     }
-
-    @Data
-    static class UserStats {
-        private Long userId;
-        private Double totalSpent;
-        private Long orderCount;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package com.example.orderservice.dto;
+
+import lombok.Data;
+import java.util.List;
+
+// Page de commandes, de la plus récente à la plus ancienne ; nextCursor à passer en "before"
+// pour la page suivante, null s'il n'y en a plus
+@Data
+public class OrderPage {
+    private List<OrderResponse> content;
+    private Long nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.example.orderservice.dto;
+
+import lombok.Data;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class StockReservationRequest {
+    private String reservationId;
+    private List<Item> items = new ArrayList<>();
+
+    @Data
+    public static class Item {
+        private Long bookId;
+        private Integer quantity;
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.orderservice.dto;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class StockReservationResponse {
+    private String reservationId;
+    private Boolean success;
+    private String status;
+    private List<Line> lines;
+
+    @Data
+    public static class Line {
+        private Long bookId;
+        private Integer quantity;
+        private Boolean reserved;
+        private Integer available;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.orderservice.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Data
+public class UserOrderStatsResponse {
+    private Long userId;
+    private Double totalSpent;
+    private Long orderCount;
+    private Double paidTotal;
+    private LocalDateTime lastOrderAt;
+    private Map<String, Long> countsByStatus;
+}
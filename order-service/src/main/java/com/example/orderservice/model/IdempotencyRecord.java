@@ -0,0 +1,67 @@
+package com.example.orderservice.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Résultat d'une requête envoyée avec un en-tête {@code Idempotency-Key}, conservé pour qu'une
+ * nouvelle tentative de la même requête obtienne la même réponse au lieu de créer une seconde
+ * commande.
+ */
+@Entity
+@Table(name = "idempotency_keys", indexes = {
+        @Index(name = "idx_idempotency_keys_expires_at", columnList = "expires_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // "<userId>:<clé du client>", pour que deux utilisateurs ne se heurtent pas sur la même clé
+    @Column(name = "idempotency_key", unique = true, nullable = false, length = 300)
+    private String idempotencyKey;
+
+    // SHA-256 du corps de la requête : la même clé ne doit pas servir pour une autre requête
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private IdempotencyStatus status = IdempotencyStatus.IN_PROGRESS;
+
+    // Jeton de la requête qui détient la clé ; change quand une tentative abandonnée est reprise
+    @Column(name = "claim_token", nullable = false, length = 36)
+    private String claimToken;
+
+    // Écrits dans la transaction de la commande : une clé COMPLETED a toujours sa commande
+    @Column(name = "order_id")
+    private Long orderId;
+
+    @Lob
+    @Column(name = "response_body")
+    private String responseBody;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public enum IdempotencyStatus {
+        IN_PROGRESS,
+        COMPLETED
+    }
+}
@@ -10,7 +10,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "uk_orders_order_number", columnList = "order_number", unique = true),
+        // Pagination par curseur (l'id est inclus dans les index secondaires InnoDB)
+        @Index(name = "idx_orders_user_id", columnList = "user_id"),
+        @Index(name = "idx_orders_status", columnList = "status")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -20,7 +25,8 @@ public class Order {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "order_number", unique = true, nullable = false)
+    // Attribué par OrderService via l'IdGenerator (voir SnowflakeIdGenerator)
+    @Column(name = "order_number", nullable = false, length = 20)
     private String orderNumber;
 
     @Column(name = "user_id", nullable = false)
@@ -67,6 +73,10 @@ public class Order {
     @Column(name = "notes")
     private String notes;
 
+    // Stock réservé dans book-service pour cette commande, libéré à l'annulation
+    @Column(name = "stock_reservation_id")
+    private String stockReservationId;
+
     @Column(name = "tracking_number")
     private String trackingNumber;
 
@@ -89,7 +99,6 @@ public class Order {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
-        generateOrderNumber();
         calculateFinalAmount();
     }
 
@@ -99,11 +108,6 @@ public class Order {
         calculateFinalAmount();
     }
 
-    private void generateOrderNumber() {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        this.orderNumber = "ORD-" + timestamp.substring(timestamp.length() - 8);
-    }
-
     private void calculateFinalAmount() {
         this.finalAmount = this.totalAmount + this.taxAmount + this.shippingCost;
     }
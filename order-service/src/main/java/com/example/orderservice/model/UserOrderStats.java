@@ -0,0 +1,80 @@
+package com.example.orderservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Statistiques de commandes d'un utilisateur, tenues à jour par {@code UserOrderStatsService}
+ * dans la transaction de chaque changement de commande au lieu d'être agrégées sur les commandes
+ * à chaque lecture. Les lignes peuvent toujours être reconstruites à partir des commandes.
+ */
+@Entity
+@Table(name = "user_order_stats")
+@Data
+@NoArgsConstructor
+public class UserOrderStats {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "order_count", nullable = false)
+    private Long orderCount = 0L;
+
+    // Somme des montants finaux de toutes les commandes, comme avant
+    @Column(name = "total_spent", nullable = false)
+    private Double totalSpent = 0.0;
+
+    // Somme des montants finaux des commandes actuellement payées
+    @Column(name = "paid_total", nullable = false)
+    private Double paidTotal = 0.0;
+
+    @Column(name = "last_order_at")
+    private LocalDateTime lastOrderAt;
+
+    @Column(name = "pending_count", nullable = false)
+    private Long pendingCount = 0L;
+
+    @Column(name = "confirmed_count", nullable = false)
+    private Long confirmedCount = 0L;
+
+    @Column(name = "processing_count", nullable = false)
+    private Long processingCount = 0L;
+
+    @Column(name = "shipped_count", nullable = false)
+    private Long shippedCount = 0L;
+
+    @Column(name = "delivered_count", nullable = false)
+    private Long deliveredCount = 0L;
+
+    @Column(name = "cancelled_count", nullable = false)
+    private Long cancelledCount = 0L;
+
+    @Column(name = "refunded_count", nullable = false)
+    private Long refundedCount = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public long getCount(Order.OrderStatus status) {
+        switch (status) {
+            case PENDING:
+                return pendingCount;
+            case CONFIRMED:
+                return confirmedCount;
+            case PROCESSING:
+                return processingCount;
+            case SHIPPED:
+                return shippedCount;
+            case DELIVERED:
+                return deliveredCount;
+            case CANCELLED:
+                return cancelledCount;
+            default:
+                return refundedCount;
+        }
+    }
+}
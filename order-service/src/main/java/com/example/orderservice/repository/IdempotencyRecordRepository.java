@@ -0,0 +1,40 @@
+package com.example.orderservice.repository;
+
+import com.example.orderservice.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, Long> {
+
+    Optional<IdempotencyRecord> findByIdempotencyKey(String idempotencyKey);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(LocalDateTime now);
+
+    // Reprise d'une tentative abandonnée : échoue si une autre requête l'a reprise ou terminée entre-temps
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.claimToken = :newToken, r.createdAt = :now " +
+            "WHERE r.id = :id AND r.claimToken = :oldToken AND r.status = 'IN_PROGRESS'")
+    int takeOver(Long id, String oldToken, String newToken, LocalDateTime now);
+
+    // Dans la transaction de la commande ; bloque une reprise concurrente jusqu'au commit
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.status = 'COMPLETED', r.orderId = :orderId, r.responseBody = :responseBody " +
+            "WHERE r.id = :id AND r.claimToken = :claimToken AND r.status = 'IN_PROGRESS'")
+    int complete(Long id, String claimToken, Long orderId, String responseBody);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.id = :id AND r.claimToken = :claimToken AND r.status = 'IN_PROGRESS'")
+    int release(Long id, String claimToken);
+}
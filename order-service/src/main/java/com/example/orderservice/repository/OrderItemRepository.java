@@ -4,6 +4,7 @@ import com.example.orderservice.model.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,6 +15,9 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
     @Query("SELECT oi FROM OrderItem oi WHERE oi.order.id = :orderId")
     List<OrderItem> findByOrderId(Long orderId);
 
+    @Query("SELECT oi FROM OrderItem oi WHERE oi.order.id IN :orderIds ORDER BY oi.id")
+    List<OrderItem> findByOrderIdIn(Collection<Long> orderIds);
+
     @Query("SELECT SUM(oi.quantity) FROM OrderItem oi WHERE oi.bookId = :bookId")
     Long getTotalQuantitySoldByBookId(Long bookId);
 }
\ No newline at end of file
@@ -1,12 +1,21 @@
 package com.example.orderservice.repository;
 
 import com.example.orderservice.model.Order;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
@@ -17,6 +26,31 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
     List<Order> findByStatus(Order.OrderStatus status);
 
+    // Pagination par curseur : les ids de la page (du plus récent au plus ancien), puis les
+    // commandes avec leurs articles
+    @Query("SELECT o.id FROM Order o WHERE o.id < :beforeId ORDER BY o.id DESC")
+    List<Long> findIdsBefore(Long beforeId, Pageable pageable);
+
+    @Query("SELECT o.id FROM Order o WHERE o.userId = :userId AND o.id < :beforeId ORDER BY o.id DESC")
+    List<Long> findIdsByUserIdBefore(Long userId, Long beforeId, Pageable pageable);
+
+    @Query("SELECT o.id FROM Order o WHERE o.status = :status AND o.id < :beforeId ORDER BY o.id DESC")
+    List<Long> findIdsByStatusBefore(Order.OrderStatus status, Long beforeId, Pageable pageable);
+
+    @EntityGraph(attributePaths = "items")
+    @Query("SELECT o FROM Order o WHERE o.id IN :ids ORDER BY o.id DESC")
+    List<Order> findWithItemsByIdIn(Collection<Long> ids);
+
+    // Export et listes complètes : lu avec un curseur JDBC, par paquets de fetch-size lignes
+    // (nécessite useCursorFetch, voir DataSourceConfig)
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT o FROM Order o WHERE (:userId IS NULL OR o.userId = :userId) " +
+            "AND (:status IS NULL OR o.status = :status) ORDER BY o.id")
+    Stream<Order> streamAll(Long userId, Order.OrderStatus status);
+
     List<Order> findByPaymentStatus(Order.PaymentStatus paymentStatus);
 
     List<Order> findByUserIdAndStatus(Long userId, Order.OrderStatus status);
@@ -29,6 +63,10 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
 
     long countByUserId(Long userId);
 
+    // Reconstruction des statistiques par utilisateur, par paquets
+    @Query("SELECT DISTINCT o.userId FROM Order o WHERE o.userId > :afterUserId ORDER BY o.userId")
+    List<Long> findUserIdsAfter(Long afterUserId, Pageable pageable);
+
     @Query("SELECT SUM(o.finalAmount) FROM Order o WHERE o.userId = :userId")
     Double getTotalSpentByUser(Long userId);
 }
\ No newline at end of file
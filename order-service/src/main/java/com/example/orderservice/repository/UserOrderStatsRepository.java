@@ -0,0 +1,58 @@
+package com.example.orderservice.repository;
+
+import com.example.orderservice.model.UserOrderStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@Repository
+public interface UserOrderStatsRepository extends JpaRepository<UserOrderStats, Long> {
+
+    // Appliqué sur place, pour que les changements concurrents d'un même utilisateur s'additionnent ; 0 s'il n'a pas de ligne
+    @Modifying(flushAutomatically = true)
+    @Query(value = "UPDATE user_order_stats SET " +
+            "order_count = order_count + :orders, " +
+            "total_spent = total_spent + :spent, " +
+            "paid_total = paid_total + :paid, " +
+            "last_order_at = CASE WHEN :lastOrderAt IS NOT NULL AND (last_order_at IS NULL OR last_order_at < :lastOrderAt) " +
+            "THEN :lastOrderAt ELSE last_order_at END, " +
+            "pending_count = pending_count + :pending, " +
+            "confirmed_count = confirmed_count + :confirmed, " +
+            "processing_count = processing_count + :processing, " +
+            "shipped_count = shipped_count + :shipped, " +
+            "delivered_count = delivered_count + :delivered, " +
+            "cancelled_count = cancelled_count + :cancelled, " +
+            "refunded_count = refunded_count + :refunded, " +
+            "updated_at = CURRENT_TIMESTAMP " +
+            "WHERE user_id = :userId", nativeQuery = true)
+    int applyDelta(Long userId, long orders, double spent, double paid, LocalDateTime lastOrderAt,
+                   long pending, long confirmed, long processing, long shipped, long delivered,
+                   long cancelled, long refunded);
+
+    // Recalcule les lignes de ces utilisateurs à partir de leurs commandes (sans commande, pas de ligne)
+    @Modifying(flushAutomatically = true)
+    @Query(value = "INSERT INTO user_order_stats (user_id, order_count, total_spent, paid_total, last_order_at, " +
+            "pending_count, confirmed_count, processing_count, shipped_count, delivered_count, cancelled_count, " +
+            "refunded_count, updated_at) " +
+            "SELECT o.user_id, COUNT(*), COALESCE(SUM(o.final_amount), 0), " +
+            "COALESCE(SUM(CASE WHEN o.payment_status = 'PAID' THEN o.final_amount ELSE 0 END), 0), MAX(o.created_at), " +
+            "SUM(CASE WHEN o.status = 'PENDING' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN o.status = 'CONFIRMED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN o.status = 'PROCESSING' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN o.status = 'SHIPPED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN o.status = 'DELIVERED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN o.status = 'CANCELLED' THEN 1 ELSE 0 END), " +
+            "SUM(CASE WHEN o.status = 'REFUNDED' THEN 1 ELSE 0 END), " +
+            "CURRENT_TIMESTAMP " +
+            "FROM orders o WHERE o.user_id IN (:userIds) GROUP BY o.user_id " +
+            "ON DUPLICATE KEY UPDATE order_count = VALUES(order_count), total_spent = VALUES(total_spent), " +
+            "paid_total = VALUES(paid_total), last_order_at = VALUES(last_order_at), " +
+            "pending_count = VALUES(pending_count), confirmed_count = VALUES(confirmed_count), " +
+            "processing_count = VALUES(processing_count), shipped_count = VALUES(shipped_count), " +
+            "delivered_count = VALUES(delivered_count), cancelled_count = VALUES(cancelled_count), " +
+            "refunded_count = VALUES(refunded_count), updated_at = VALUES(updated_at)", nativeQuery = true)
+    int rebuild(Collection<Long> userIds);
+}
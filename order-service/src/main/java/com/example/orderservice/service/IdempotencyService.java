@@ -0,0 +1,258 @@
+package com.example.orderservice.service;
+
+import com.example.orderservice.dto.OrderResponse;
+import com.example.orderservice.model.IdempotencyRecord;
+import com.example.orderservice.model.IdempotencyRecord.IdempotencyStatus;
+import com.example.orderservice.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Rend la création de commande idempotente par clé client. La clé est réservée (IN_PROGRESS)
+ * avant la commande, puis passée à COMPLETED avec l'id de la commande et la réponse dans la
+ * transaction de la commande ({@link #complete}) : une clé non terminée n'a donc jamais de
+ * commande, et sa reprise après {@code in-progress-timeout} ne peut pas créer de doublon. Les
+ * réponses sont aussi gardées en mémoire pour les rejeux ; un doublon qui arrive pendant que la
+ * première requête tourne sur cette instance attend son résultat.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${order.idempotency.ttl:PT24H}")
+    private Duration ttl;
+
+    // Passé ce délai, une requête non terminée (instance arrêtée, par exemple) peut être reprise
+    @Value("${order.idempotency.in-progress-timeout:PT2M}")
+    private Duration inProgressTimeout;
+
+    @Value("${order.idempotency.wait-timeout:PT30S}")
+    private Duration waitTimeout;
+
+    @Value("${order.idempotency.hot-tier-size:10000}")
+    private int hotTierSize;
+
+    private final Map<String, CachedResponse> hotTier = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<OrderResponse>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param action crée la commande et appelle {@link #complete} avec la réservation reçue,
+     *               dans sa transaction
+     */
+    public OrderResponse execute(Long userId, String key, Object request, Function<Claim, OrderResponse> action) {
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new RuntimeException("Clé d'idempotence trop longue (max " + MAX_KEY_LENGTH + " caractères)");
+        }
+        String scopedKey = userId + ":" + key;
+        String requestHash = hash(request);
+
+        CachedResponse cached = hotTier.get(scopedKey);
+        if (cached != null && cached.expiresAt.isAfter(LocalDateTime.now())) {
+            checkSameRequest(cached.requestHash, requestHash);
+            return cached.response;
+        }
+
+        CompletableFuture<OrderResponse> result = new CompletableFuture<>();
+        CompletableFuture<OrderResponse> running = inFlight.putIfAbsent(scopedKey, result);
+        if (running != null) {
+            return awaitDuplicate(scopedKey, running);
+        }
+
+        try {
+            OrderResponse response = executeOnce(scopedKey, requestHash, action);
+            result.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(scopedKey, result);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${order.idempotency.purge-interval-ms:600000}")
+    public void purgeExpired() {
+        LocalDateTime now = LocalDateTime.now();
+        hotTier.values().removeIf(entry -> entry.expiresAt.isBefore(now));
+        int deleted = idempotencyRecordRepository.deleteExpired(now);
+        if (deleted > 0) {
+            log.info("Clés d'idempotence expirées supprimées: {}", deleted);
+        }
+    }
+
+    /**
+     * Marque la clé comme terminée, dans la transaction qui crée la commande. Échoue (et annule
+     * donc la commande) si la clé a été reprise par une autre requête entre-temps.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void complete(Claim claim, Long orderId, OrderResponse response) {
+        String body;
+        try {
+            body = objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Impossible d'enregistrer la réponse pour la clé d'idempotence", e);
+        }
+        if (idempotencyRecordRepository.complete(claim.recordId, claim.token, orderId, body) != 1) {
+            throw new RuntimeException("La clé d'idempotence a été reprise par une autre requête");
+        }
+    }
+
+    private OrderResponse executeOnce(String scopedKey, String requestHash, Function<Claim, OrderResponse> action) {
+        Claim claim = claim(scopedKey, requestHash);
+        if (claim.completed != null) {
+            return claim.completed;
+        }
+
+        OrderResponse response;
+        try {
+            response = action.apply(claim);
+        } catch (RuntimeException e) {
+            // Pas de commande (sa transaction est annulée) : le client peut corriger la cause et réessayer
+            idempotencyRecordRepository.release(claim.recordId, claim.token);
+            throw e;
+        }
+        cache(scopedKey, requestHash, response, claim.expiresAt);
+        return response;
+    }
+
+    // Réserve la clé, ou renvoie la réponse enregistrée si une requête précédente l'a terminée
+    private Claim claim(String scopedKey, String requestHash) {
+        IdempotencyRecord record = idempotencyRecordRepository.findByIdempotencyKey(scopedKey).orElse(null);
+        if (record == null) {
+            // Validée avant la commande, pour que les autres instances voient la clé prise
+            record = new IdempotencyRecord();
+            record.setIdempotencyKey(scopedKey);
+            record.setRequestHash(requestHash);
+            record.setStatus(IdempotencyStatus.IN_PROGRESS);
+            record.setClaimToken(UUID.randomUUID().toString());
+            record.setExpiresAt(LocalDateTime.now().plus(ttl));
+            try {
+                record = idempotencyRecordRepository.saveAndFlush(record);
+            } catch (DataIntegrityViolationException e) {
+                throw new RuntimeException("Une requête avec cette clé d'idempotence est déjà en cours");
+            }
+            return new Claim(record.getId(), record.getClaimToken(), record.getExpiresAt(), null);
+        }
+
+        checkSameRequest(record.getRequestHash(), requestHash);
+        if (record.getStatus() == IdempotencyStatus.COMPLETED) {
+            return completed(scopedKey, requestHash, record);
+        }
+        if (record.getCreatedAt().plus(inProgressTimeout).isAfter(LocalDateTime.now())) {
+            // En cours sur une autre instance
+            throw new RuntimeException("Une requête avec cette clé d'idempotence est déjà en cours");
+        }
+
+        // Tentative abandonnée : sa transaction n'a pas abouti, il n'y a pas de commande. La reprise
+        // attend le verrou de la ligne si cette transaction est encore ouverte, et échoue si elle a
+        // terminé la clé entre-temps.
+        String token = UUID.randomUUID().toString();
+        if (idempotencyRecordRepository.takeOver(record.getId(), record.getClaimToken(), token, LocalDateTime.now()) != 1) {
+            record = idempotencyRecordRepository.findByIdempotencyKey(scopedKey).orElse(null);
+            if (record != null && record.getStatus() == IdempotencyStatus.COMPLETED) {
+                return completed(scopedKey, requestHash, record);
+            }
+            throw new RuntimeException("Une requête avec cette clé d'idempotence est déjà en cours");
+        }
+        return new Claim(record.getId(), token, record.getExpiresAt(), null);
+    }
+
+    private Claim completed(String scopedKey, String requestHash, IdempotencyRecord record) {
+        OrderResponse response = deserialize(record.getResponseBody());
+        cache(scopedKey, requestHash, response, record.getExpiresAt());
+        return new Claim(record.getId(), record.getClaimToken(), record.getExpiresAt(), response);
+    }
+
+    private OrderResponse awaitDuplicate(String scopedKey, CompletableFuture<OrderResponse> running) {
+        try {
+            return running.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause.getMessage());
+        } catch (TimeoutException e) {
+            throw new RuntimeException("Une requête avec cette clé d'idempotence est déjà en cours");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Requête interrompue: " + scopedKey);
+        }
+    }
+
+    private void cache(String scopedKey, String requestHash, OrderResponse response, LocalDateTime expiresAt) {
+        if (hotTier.size() >= hotTierSize) {
+            LocalDateTime now = LocalDateTime.now();
+            hotTier.values().removeIf(entry -> entry.expiresAt.isBefore(now));
+            if (hotTier.size() >= hotTierSize) {
+                // Toujours plein : la base continue de répondre
+                return;
+            }
+        }
+        hotTier.put(scopedKey, new CachedResponse(requestHash, response, expiresAt));
+    }
+
+    private void checkSameRequest(String storedHash, String requestHash) {
+        if (!storedHash.equals(requestHash)) {
+            throw new RuntimeException("La clé d'idempotence a déjà été utilisée pour une autre requête");
+        }
+    }
+
+    private OrderResponse deserialize(String body) {
+        try {
+            return objectMapper.readValue(body, OrderResponse.class);
+        } catch (Exception e) {
+            throw new RuntimeException("Réponse enregistrée illisible", e);
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            byte[] json = objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new RuntimeException("Impossible de calculer l'empreinte de la requête", e);
+        }
+    }
+
+    /**
+     * Clé réservée par la requête en cours, à passer à {@link #complete}.
+     */
+    @AllArgsConstructor
+    public static class Claim {
+        private final Long recordId;
+        private final String token;
+        private final LocalDateTime expiresAt;
+        // Réponse déjà enregistrée : la requête n'est pas rejouée
+        private final OrderResponse completed;
+    }
+
+    @AllArgsConstructor
+    private static class CachedResponse {
+        private final String requestHash;
+        private final OrderResponse response;
+        private final LocalDateTime expiresAt;
+    }
+}
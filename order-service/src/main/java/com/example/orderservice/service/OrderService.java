@@ -11,15 +11,28 @@ import com.example.orderservice.model.ShippingAddress;
 import com.example.orderservice.model.OrderItem;
 import com.example.orderservice.repository.OrderRepository;
 import com.example.orderservice.repository.OrderItemRepository;
+import jakarta.persistence.EntityManager;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -30,96 +43,88 @@ public class OrderService {
     private final OrderItemRepository orderItemRepository;
     private final CartServiceClient cartServiceClient;
     private final BookServiceClient bookServiceClient;
-    private final RabbitTemplate rabbitTemplate;
+    private final OutboxService outboxService;
+    private final RemoteCalls remoteCalls;
+    private final IdGenerator idGenerator;
     private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final UserOrderStatsService userOrderStatsService;
+    private final IdempotencyService idempotencyService;
+
+    @Value("${order.remote-calls.book-batch-size:500}")
+    private int bookBatchSize;
+
+    @Value("${order.page.max-size:200}")
+    private int maxPageSize;
+
+    @Value("${order.export.chunk-size:500}")
+    private int exportChunkSize;
 
     @Transactional
     public OrderResponse createOrder(OrderRequest orderRequest) {
+        return createOrder(orderRequest, null);
+    }
+
+    /**
+     * @param claim clé d'idempotence réservée pour cette requête, terminée dans la transaction de
+     *              la commande ; {@code null} sans clé
+     */
+    @Transactional
+    public OrderResponse createOrder(OrderRequest orderRequest, IdempotencyService.Claim claim) {
         log.info("Creating order for user: {}", orderRequest.getUserId());
 
         try {
             // 1. Récupérer le panier de l'utilisateur
-            CartInfo cartInfo = cartServiceClient.getCart(orderRequest.getUserId());
+            CartInfo cartInfo = cartServiceClient.getCart(orderRequest.getUserId(), true);
 
             if (cartInfo == null || cartInfo.getItems() == null || cartInfo.getItems().isEmpty()) {
                 throw new RuntimeException("Le panier est vide");
             }
 
-            // 2. Vérifier la disponibilité des livres et calculer le total
-            double totalAmount = 0.0;
+            String reservationId = UUID.randomUUID().toString();
+            try {
+                // 2. Récupérer les livres et réserver le stock en parallèle (appels indépendants)
+                Map<Long, BookInfo> books = fetchBooksAndReserveStock(cartInfo, reservationId);
 
-            for (CartInfo.CartItemInfo cartItem : cartInfo.getItems()) {
-                BookInfo bookInfo = bookServiceClient.getBookById(cartItem.getBookId());
+                // 3. Vérifier les livres et calculer le total
+                double totalAmount = 0.0;
 
-                if (bookInfo == null) {
-                    throw new RuntimeException("Livre non trouvé: " + cartItem.getBookId());
-                }
+                for (CartInfo.CartItemInfo cartItem : cartInfo.getItems()) {
+                    if (!books.containsKey(cartItem.getBookId())) {
+                        throw new RuntimeException("Livre non trouvé: " + cartItem.getBookId());
+                    }
 
-                if (bookInfo.getStock() < cartItem.getQuantity()) {
-                    throw new RuntimeException("Stock insuffisant pour: " + cartItem.getTitle() +
-                            ". Disponible: " + bookInfo.getStock() +
-                            ", Demandé: " + cartItem.getQuantity());
+                    totalAmount += cartItem.getPrice() * cartItem.getQuantity();
                 }
 
-                totalAmount += cartItem.getPrice() * cartItem.getQuantity();
-            }
+                Order savedOrder = saveOrder(orderRequest, cartInfo, books, totalAmount, reservationId);
+                userOrderStatsService.orderCreated(savedOrder);
 
-            // 3. Créer la commande
-            Order order = new Order();
-            order.setUserId(orderRequest.getUserId());
-            order.setUserEmail(orderRequest.getUserEmail());
-            order.setUserName(orderRequest.getUserName());
-            order.setTotalAmount(totalAmount);
-            order.setShippingCost(calculateShippingCost(orderRequest.getShippingAddress()));
-            order.setTaxAmount(calculateTax(totalAmount));
-
-            // Adresse de livraison
-            // Adresse de livraison
-            ShippingAddress shippingAddress = new ShippingAddress();
-            shippingAddress.setStreet(orderRequest.getShippingAddress().getStreet());
-            shippingAddress.setCity(orderRequest.getShippingAddress().getCity());
-            shippingAddress.setPostalCode(orderRequest.getShippingAddress().getPostalCode());
-            shippingAddress.setCountry(orderRequest.getShippingAddress().getCountry());
-            shippingAddress.setPhone(orderRequest.getShippingAddress().getPhone());
-            order.setShippingAddress(shippingAddress);
-
-
-            order.setPaymentMethod(orderRequest.getPaymentMethod());
-            order.setNotes(orderRequest.getNotes());
-            order.setStatus(Order.OrderStatus.PENDING);
-            order.setPaymentStatus(Order.PaymentStatus.PENDING);
-
-            // 4. Ajouter les articles et mettre à jour le stock
-            for (CartInfo.CartItemInfo cartItem : cartInfo.getItems()) {
-                BookInfo bookInfo = bookServiceClient.getBookById(cartItem.getBookId());
-
-                OrderItem orderItem = new OrderItem();
-                orderItem.setBookId(cartItem.getBookId());
-                orderItem.setTitle(cartItem.getTitle());
-                orderItem.setAuthor(cartItem.getAuthor());
-                orderItem.setPrice(cartItem.getPrice());
-                orderItem.setQuantity(cartItem.getQuantity());
-                orderItem.setIsbn(bookInfo.getIsbn());
-
-                order.addItem(orderItem);
-
-                // Mettre à jour le stock
-                int newStock = bookInfo.getStock() - cartItem.getQuantity();
-                bookServiceClient.updateStock(cartItem.getBookId(), newStock);
-            }
+                // 6. Confirmer la réservation de stock (via l'outbox, une fois la commande validée en base)
+                publishStockEvent(savedOrder, StockReservationEvent.COMMIT);
+
+                // 7. Publier un événement pour le paiement (via l'outbox, après le commit)
+                publishPaymentEvent(savedOrder);
 
-            // 5. Sauvegarder la commande
-            Order savedOrder = orderRepository.save(order);
+                // 8. Publier un événement pour vider le panier
+                publishClearCartEvent(savedOrder);
 
-            // 6. Publier un événement pour le paiement
-            publishPaymentEvent(savedOrder);
+                // 9. Publier les ventes (classement des meilleures ventes dans book-service)
+                publishSalesEvent(savedOrder, OrderSalesEvent.PLACED);
 
-            // 7. Publier un événement pour vider le panier
-            publishClearCartEvent(orderRequest.getUserId());
+                OrderResponse response = mapToOrderResponse(savedOrder);
+                if (claim != null) {
+                    idempotencyService.complete(claim, savedOrder.getId(), response);
+                }
 
-            log.info("Commande créée avec succès: {}", savedOrder.getOrderNumber());
+                log.info("Commande créée avec succès: {}", savedOrder.getOrderNumber());
 
-            return mapToOrderResponse(savedOrder);
+                return response;
+            } catch (Exception e) {
+                // Sans effet si la réservation n'a pas abouti ; la transaction est annulée, l'outbox aussi
+                releaseStock(reservationId);
+                throw e;
+            }
 
         } catch (Exception e) {
             log.error("Erreur lors de la création de la commande", e);
@@ -143,29 +148,85 @@ public class OrderService {
         return mapToOrderResponse(order);
     }
 
+    /**
+     * Liste complète des commandes (toutes, ou celles d'un utilisateur ou d'un statut) en tableau
+     * JSON, dans l'ordre des ids. Écrite au fil de la lecture comme {@link #exportOrders} : la
+     * mémoire utilisée ne dépend pas du nombre de commandes.
+     */
     @Transactional(readOnly = true)
-    public List<OrderResponse> getOrdersByUserId(Long userId) {
-        return orderRepository.findByUserId(userId).stream()
-                .map(this::mapToOrderResponse)
-                .collect(Collectors.toList());
+    public void writeOrderList(Long userId, Order.OrderStatus status, OutputStream out) {
+        writeOrders(userId, status, true, out);
     }
 
+    /**
+     * Page de commandes, de la plus récente à la plus ancienne, filtrée par utilisateur ou par
+     * statut. Le curseur est l'id de la dernière commande de la page précédente : le coût d'une
+     * page ne dépend pas de sa position dans l'historique.
+     */
     @Transactional(readOnly = true)
-    public List<OrderResponse> getAllOrders() {
-        return orderRepository.findAll().stream()
-                .map(this::mapToOrderResponse)
-                .collect(Collectors.toList());
+    public OrderPage getOrdersPage(Long userId, String status, Long before, int size) {
+        int pageSize = Math.max(1, Math.min(size, maxPageSize));
+        // Une ligne de plus pour savoir s'il reste une page
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        long beforeId = before != null ? before : Long.MAX_VALUE;
+
+        List<Long> ids;
+        if (userId != null) {
+            ids = orderRepository.findIdsByUserIdBefore(userId, beforeId, limit);
+        } else if (status != null) {
+            ids = orderRepository.findIdsByStatusBefore(parseStatus(status), beforeId, limit);
+        } else {
+            ids = orderRepository.findIdsBefore(beforeId, limit);
+        }
+
+        OrderPage page = new OrderPage();
+        boolean hasMore = ids.size() > pageSize;
+        if (hasMore) {
+            ids = ids.subList(0, pageSize);
+        }
+        page.setContent(ids.isEmpty() ? Collections.emptyList()
+                : orderRepository.findWithItemsByIdIn(ids).stream()
+                        .map(this::mapToOrderResponse)
+                        .collect(Collectors.toList()));
+        page.setNextCursor(hasMore ? ids.get(ids.size() - 1) : null);
+        return page;
     }
 
+    /**
+     * Écrit toutes les commandes (ou celles d'un statut) en NDJSON, une commande par ligne, dans
+     * l'ordre des ids. Les commandes sont lues avec un curseur ; leurs articles sont chargés par
+     * paquets et le contexte de persistance est vidé après chaque paquet, la mémoire utilisée ne
+     * dépend donc pas du nombre de commandes.
+     */
     @Transactional(readOnly = true)
-    public List<OrderResponse> getOrdersByStatus(String status) {
-        try {
-            Order.OrderStatus orderStatus = Order.OrderStatus.valueOf(status.toUpperCase());
-            return orderRepository.findByStatus(orderStatus).stream()
-                    .map(this::mapToOrderResponse)
-                    .collect(Collectors.toList());
-        } catch (IllegalArgumentException e) {
-            throw new RuntimeException("Statut invalide: " + status);
+    public void exportOrders(Order.OrderStatus status, OutputStream out) {
+        writeOrders(null, status, false, out);
+    }
+
+    // En tableau JSON, ou en NDJSON (une commande par ligne)
+    private void writeOrders(Long userId, Order.OrderStatus status, boolean jsonArray, OutputStream out) {
+        try (Stream<Order> orders = orderRepository.streamAll(userId, status)) {
+            if (jsonArray) {
+                out.write('[');
+            }
+            Iterator<Order> iterator = orders.iterator();
+            List<Order> chunk = new ArrayList<>(exportChunkSize);
+            boolean first = true;
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == exportChunkSize || !iterator.hasNext()) {
+                    writeChunk(chunk, jsonArray, first, out);
+                    first = false;
+                    chunk.clear();
+                    entityManager.clear();
+                }
+            }
+            if (jsonArray) {
+                out.write(']');
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -176,6 +237,7 @@ public class OrderService {
 
         try {
             Order.OrderStatus newStatus = Order.OrderStatus.valueOf(status.toUpperCase());
+            Order.OrderStatus previousStatus = order.getStatus();
             order.setStatus(newStatus);
 
             // Mettre à jour les timestamps
@@ -187,11 +249,16 @@ public class OrderService {
                     order.setDeliveredAt(LocalDateTime.now());
                     break;
                 case CANCELLED:
-                    restoreStock(order);
+                    // Une commande déjà annulée a déjà rendu son stock
+                    if (previousStatus != Order.OrderStatus.CANCELLED) {
+                        restoreStock(order);
+                        publishSalesEvent(order, OrderSalesEvent.CANCELLED);
+                    }
                     break;
             }
 
             Order updatedOrder = orderRepository.save(order);
+            userOrderStatsService.orderChanged(updatedOrder, previousStatus, updatedOrder.getPaymentStatus());
 
             // Publier un événement de mise à jour
             publishOrderStatusEvent(updatedOrder);
@@ -210,6 +277,8 @@ public class OrderService {
 
         try {
             Order.PaymentStatus newPaymentStatus = Order.PaymentStatus.valueOf(paymentStatus.toUpperCase());
+            Order.OrderStatus previousStatus = order.getStatus();
+            Order.PaymentStatus previousPaymentStatus = order.getPaymentStatus();
             order.setPaymentStatus(newPaymentStatus);
 
             if (newPaymentStatus == Order.PaymentStatus.PAID) {
@@ -218,6 +287,7 @@ public class OrderService {
             }
 
             Order updatedOrder = orderRepository.save(order);
+            userOrderStatsService.orderChanged(updatedOrder, previousStatus, previousPaymentStatus);
 
             return mapToOrderResponse(updatedOrder);
 
@@ -258,28 +328,23 @@ public class OrderService {
             throw new RuntimeException("Impossible d'annuler une commande déjà expédiée ou livrée");
         }
 
+        Order.OrderStatus previousStatus = order.getStatus();
+        Order.PaymentStatus previousPaymentStatus = order.getPaymentStatus();
         order.setStatus(Order.OrderStatus.CANCELLED);
         order.setPaymentStatus(Order.PaymentStatus.CANCELLED);
 
-        // Restituer le stock
-        restoreStock(order);
+        // Restituer le stock, une seule fois
+        if (previousStatus != Order.OrderStatus.CANCELLED) {
+            restoreStock(order);
+            publishSalesEvent(order, OrderSalesEvent.CANCELLED);
+        }
 
         Order updatedOrder = orderRepository.save(order);
+        userOrderStatsService.orderChanged(updatedOrder, previousStatus, previousPaymentStatus);
 
         return mapToOrderResponse(updatedOrder);
     }
 
-    @Transactional(readOnly = true)
-    public Double getUserTotalSpent(Long userId) {
-        Double total = orderRepository.getTotalSpentByUser(userId);
-        return total != null ? total : 0.0;
-    }
-
-    @Transactional(readOnly = true)
-    public Long getUserOrderCount(Long userId) {
-        return orderRepository.countByUserId(userId);
-    }
-
     @Transactional(readOnly = true)
     public List<OrderItemResponse> getOrderItems(Long orderId) {
         List<OrderItem> items = orderItemRepository.findByOrderId(orderId);
@@ -288,6 +353,52 @@ public class OrderService {
                 .collect(Collectors.toList());
     }
 
+    private Order saveOrder(OrderRequest orderRequest, CartInfo cartInfo, Map<Long, BookInfo> books,
+                            double totalAmount, String reservationId) {
+        // 4. Créer la commande
+        Order order = new Order();
+        order.setOrderNumber("ORD-" + idGenerator.nextKey());
+        order.setUserId(orderRequest.getUserId());
+        order.setUserEmail(orderRequest.getUserEmail());
+        order.setUserName(orderRequest.getUserName());
+        order.setTotalAmount(totalAmount);
+        order.setShippingCost(calculateShippingCost(orderRequest.getShippingAddress()));
+        order.setTaxAmount(calculateTax(totalAmount));
+
+        // Adresse de livraison
+        ShippingAddress shippingAddress = new ShippingAddress();
+        shippingAddress.setStreet(orderRequest.getShippingAddress().getStreet());
+        shippingAddress.setCity(orderRequest.getShippingAddress().getCity());
+        shippingAddress.setPostalCode(orderRequest.getShippingAddress().getPostalCode());
+        shippingAddress.setCountry(orderRequest.getShippingAddress().getCountry());
+        shippingAddress.setPhone(orderRequest.getShippingAddress().getPhone());
+        order.setShippingAddress(shippingAddress);
+
+        order.setPaymentMethod(orderRequest.getPaymentMethod());
+        order.setNotes(orderRequest.getNotes());
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setPaymentStatus(Order.PaymentStatus.PENDING);
+
+        order.setStockReservationId(reservationId);
+
+        // 5. Ajouter les articles
+        for (CartInfo.CartItemInfo cartItem : cartInfo.getItems()) {
+            BookInfo bookInfo = books.get(cartItem.getBookId());
+
+            OrderItem orderItem = new OrderItem();
+            orderItem.setBookId(cartItem.getBookId());
+            orderItem.setTitle(cartItem.getTitle());
+            orderItem.setAuthor(cartItem.getAuthor());
+            orderItem.setPrice(cartItem.getPrice());
+            orderItem.setQuantity(cartItem.getQuantity());
+            orderItem.setIsbn(bookInfo.getIsbn());
+
+            order.addItem(orderItem);
+        }
+
+        return orderRepository.save(order);
+    }
+
     private Double calculateShippingCost(OrderRequest.ShippingAddressDto address) {
         // Logique simplifiée pour le calcul des frais de port
         // Dans une application réelle, utiliser un service de calcul de frais de port
@@ -299,77 +410,163 @@ public class OrderService {
         return amount * 0.20;
     }
 
+    // La libération part par l'outbox avec l'annulation : elle n'est envoyée que si l'annulation
+    // est validée, et elle est renvoyée tant que book-service ne l'a pas reçue
     private void restoreStock(Order order) {
-        for (OrderItem item : order.getItems()) {
-            try {
-                BookInfo bookInfo = bookServiceClient.getBookById(item.getBookId());
-                if (bookInfo != null) {
-                    int newStock = bookInfo.getStock() + item.getQuantity();
-                    bookServiceClient.updateStock(item.getBookId(), newStock);
-                }
-            } catch (Exception e) {
-                log.error("Erreur lors de la restauration du stock pour le livre: {}", item.getBookId(), e);
-            }
+        if (order.getStockReservationId() == null) {
+            log.warn("Aucune réservation de stock pour la commande: {}", order.getOrderNumber());
+            return;
         }
+        publishStockEvent(order, StockReservationEvent.RELEASE);
     }
 
-    private void publishPaymentEvent(Order order) {
-        try {
-            PaymentEvent event = new PaymentEvent();
-            event.setOrderId(order.getId());
-            event.setOrderNumber(order.getOrderNumber());
-            event.setUserId(order.getUserId());
-            event.setUserEmail(order.getUserEmail());
-            event.setAmount(order.getFinalAmount());
-            event.setPaymentMethod(order.getPaymentMethod());
-            event.setTimestamp(LocalDateTime.now());
+    private Map<Long, BookInfo> fetchBooksAndReserveStock(CartInfo cartInfo, String reservationId) throws Exception {
+        List<Long> bookIds = cartInfo.getItems().stream()
+                .map(CartInfo.CartItemInfo::getBookId)
+                .distinct()
+                .collect(Collectors.toList());
 
-            String message = objectMapper.writeValueAsString(event);
-            rabbitTemplate.convertAndSend("order.exchange", "order.payment", message);
+        try (RemoteCalls.Scope scope = remoteCalls.open("createOrder")) {
+            // Les gros paniers sont découpés en plusieurs appels batch, lancés en parallèle
+            List<Future<Map<Long, BookInfo>>> lookups = new ArrayList<>();
+            for (int from = 0; from < bookIds.size(); from += bookBatchSize) {
+                List<Long> chunk = bookIds.subList(from, Math.min(from + bookBatchSize, bookIds.size()));
+                lookups.add(scope.fork("book.batch", () -> bookServiceClient.getBooksByIds(chunk)));
+            }
+            scope.fork("stock.reserve", () -> {
+                reserveStock(cartInfo, reservationId);
+                return null;
+            });
+            scope.join();
+
+            Map<Long, BookInfo> books = new HashMap<>();
+            for (Future<Map<Long, BookInfo>> lookup : lookups) {
+                books.putAll(lookup.get());
+            }
+            return books;
+        }
+    }
 
-            log.info("Événement de paiement publié pour la commande: {}", order.getOrderNumber());
+    private void reserveStock(CartInfo cartInfo, String reservationId) {
+        StockReservationRequest request = new StockReservationRequest();
+        request.setReservationId(reservationId);
+        for (CartInfo.CartItemInfo cartItem : cartInfo.getItems()) {
+            StockReservationRequest.Item item = new StockReservationRequest.Item();
+            item.setBookId(cartItem.getBookId());
+            item.setQuantity(cartItem.getQuantity());
+            request.getItems().add(item);
+        }
 
-        } catch (Exception e) {
-            log.error("Erreur lors de la publication de l'événement de paiement", e);
+        StockReservationResponse response = bookServiceClient.reserveStock(request);
+        if (!Boolean.TRUE.equals(response.getSuccess())) {
+            String details = response.getLines().stream()
+                    .filter(line -> !Boolean.TRUE.equals(line.getReserved()))
+                    .map(line -> "livre " + line.getBookId() + " (disponible: " + line.getAvailable() +
+                            ", demandé: " + line.getQuantity() + ")")
+                    .collect(Collectors.joining(", "));
+            throw new RuntimeException("Stock insuffisant pour: " + details);
         }
     }
 
-    private void publishClearCartEvent(Long userId) {
+    // Commande non créée : la réservation n'a pas été confirmée, en cas d'échec elle expire
+    // (la libération est idempotente côté book-service)
+    private void releaseStock(String reservationId) {
         try {
-            ClearCartEvent event = new ClearCartEvent();
-            event.setUserId(userId);
-            event.setTimestamp(LocalDateTime.now());
+            bookServiceClient.releaseStockReservation(reservationId);
+        } catch (Exception e) {
+            log.error("Erreur lors de la libération de la réservation de stock: {}", reservationId, e);
+        }
+    }
 
-            String message = objectMapper.writeValueAsString(event);
-            rabbitTemplate.convertAndSend("order.exchange", "order.clear.cart", message);
+    // Les événements sont écrits dans l'outbox, dans la transaction de la commande
+    private void publishPaymentEvent(Order order) {
+        PaymentEvent event = new PaymentEvent();
+        event.setOrderId(order.getId());
+        event.setOrderNumber(order.getOrderNumber());
+        event.setUserId(order.getUserId());
+        event.setUserEmail(order.getUserEmail());
+        event.setAmount(order.getFinalAmount());
+        event.setPaymentMethod(order.getPaymentMethod());
+        event.setTimestamp(LocalDateTime.now());
+
+        outboxService.add("order", order.getId(), "order.exchange", "order.payment", event);
+    }
 
-            log.info("Événement de vidage de panier publié pour l'utilisateur: {}", userId);
+    private void publishClearCartEvent(Order order) {
+        ClearCartEvent event = new ClearCartEvent();
+        event.setUserId(order.getUserId());
+        event.setTimestamp(LocalDateTime.now());
 
-        } catch (Exception e) {
-            log.error("Erreur lors de la publication de l'événement de vidage de panier", e);
+        outboxService.add("order", order.getId(), "order.exchange", "order.clear.cart", event);
+    }
+
+    // Commande passée ou annulée : les quantités vendues par livre
+    private void publishSalesEvent(Order order, String type) {
+        OrderSalesEvent event = new OrderSalesEvent();
+        event.setOrderId(order.getId());
+        event.setType(type);
+        event.setPlacedAt(order.getCreatedAt());
+        for (OrderItem item : order.getItems()) {
+            OrderSalesEvent.Line line = new OrderSalesEvent.Line();
+            line.setBookId(item.getBookId());
+            line.setQuantity(item.getQuantity());
+            event.getItems().add(line);
         }
+
+        outboxService.add("order", order.getId(), "order.exchange", "order.sales", event);
     }
 
-    private void publishOrderStatusEvent(Order order) {
-        try {
-            OrderStatusEvent event = new OrderStatusEvent();
-            event.setOrderId(order.getId());
-            event.setOrderNumber(order.getOrderNumber());
-            event.setUserId(order.getUserId());
-            event.setStatus(order.getStatus().name());
-            event.setTimestamp(LocalDateTime.now());
+    // Confirmation ou libération de la réservation de stock, appliquée par book-service
+    private void publishStockEvent(Order order, String action) {
+        StockReservationEvent event = new StockReservationEvent();
+        event.setReservationId(order.getStockReservationId());
+        event.setOrderId(order.getId());
+        event.setAction(action);
 
-            String message = objectMapper.writeValueAsString(event);
-            rabbitTemplate.convertAndSend("order.exchange", "order.status", message);
+        outboxService.add("order", order.getId(), "order.exchange", "order.stock", event);
+    }
+
+    private void publishOrderStatusEvent(Order order) {
+        OrderStatusEvent event = new OrderStatusEvent();
+        event.setOrderId(order.getId());
+        event.setOrderNumber(order.getOrderNumber());
+        event.setUserId(order.getUserId());
+        event.setStatus(order.getStatus().name());
+        event.setTimestamp(LocalDateTime.now());
+
+        outboxService.add("order", order.getId(), "order.exchange", "order.status", event);
+    }
 
-            log.info("Événement de statut de commande publié: {}", order.getOrderNumber());
+    public Order.OrderStatus parseStatus(String status) {
+        try {
+            return Order.OrderStatus.valueOf(status.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Statut invalide: " + status);
+        }
+    }
 
-        } catch (Exception e) {
-            log.error("Erreur lors de la publication de l'événement de statut", e);
+    private void writeChunk(List<Order> orders, boolean jsonArray, boolean first, OutputStream out) throws IOException {
+        Map<Long, List<OrderItem>> items = orderItemRepository.findByOrderIdIn(
+                        orders.stream().map(Order::getId).collect(Collectors.toList())).stream()
+                .collect(Collectors.groupingBy(item -> item.getOrder().getId()));
+        for (Order order : orders) {
+            if (jsonArray && !first) {
+                out.write(',');
+            }
+            first = false;
+            OrderResponse response = mapToOrderResponse(order, items.getOrDefault(order.getId(), Collections.emptyList()));
+            out.write(objectMapper.writeValueAsBytes(response));
+            if (!jsonArray) {
+                out.write('\n');
+            }
         }
     }
 
     private OrderResponse mapToOrderResponse(Order order) {
+        return mapToOrderResponse(order, order.getItems());
+    }
+
+    private OrderResponse mapToOrderResponse(Order order, List<OrderItem> items) {
         OrderResponse response = new OrderResponse();
         response.setId(order.getId());
         response.setOrderNumber(order.getOrderNumber());
@@ -402,7 +599,7 @@ public class OrderService {
         response.setShippingAddress(addressDto);
 
         // Articles
-        List<OrderItemResponse> itemResponses = order.getItems().stream()
+        List<OrderItemResponse> itemResponses = items.stream()
                 .map(this::mapToOrderItemResponse)
                 .collect(Collectors.toList());
         response.setItems(itemResponses);
@@ -449,4 +646,31 @@ class OrderStatusEvent {
     private Long userId;
     private String status;
     private LocalDateTime timestamp;
-}
\ No newline at end of file
+}
+
+@Data
+class OrderSalesEvent {
+    static final String PLACED = "PLACED";
+    static final String CANCELLED = "CANCELLED";
+
+    private Long orderId;
+    private String type;
+    private LocalDateTime placedAt;
+    private List<Line> items = new ArrayList<>();
+
+    @Data
+    static class Line {
+        private Long bookId;
+        private Integer quantity;
+    }
+}
+
+@Data
+class StockReservationEvent {
+    static final String COMMIT = "COMMIT";
+    static final String RELEASE = "RELEASE";
+
+    private String reservationId;
+    private Long orderId;
+    private String action;
+}
@@ -0,0 +1,205 @@
+package com.example.orderservice.service;
+
+import com.example.orderservice.model.OutboxEvent;
+import com.example.orderservice.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publie l'outbox par lots, du plus ancien au plus récent. Un lot est d'abord réservé dans une
+ * transaction courte (bail {@code outbox.relay.lease}) ; il est publié hors transaction, sans
+ * verrou tenu pendant l'attente des confirmations, puis les événements confirmés sont supprimés.
+ * <p>
+ * Le lot part en vagues contenant le plus ancien événement de chaque agrégat ; la vague suivante
+ * ne part qu'une fois la précédente confirmée par le broker, si bien que les événements d'un
+ * agrégat arrivent toujours dans l'ordre. Un événement non confirmé est retenté après un délai
+ * qui croît avec ses tentatives, et bloque les suivants de son agrégat jusque-là ; après
+ * {@code outbox.relay.max-attempts} tentatives, il est mis de côté (PARKED) et l'agrégat
+ * reprend. La livraison est « au moins une fois » : les consommateurs peuvent écarter les
+ * doublons grâce à l'id du message.
+ * <p>
+ * La même classe existe dans payment-service, au package près
+ * (pas de module commun entre les services) : toute modification est à reporter à l'identique.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final EventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
+    private final Counter parkedCounter;
+    private final Timer deliveryDelayTimer;
+
+    @Value("${outbox.relay.batch-size:200}")
+    private int batchSize;
+
+    @Value("${outbox.relay.max-batches:20}")
+    private int maxBatches;
+
+    @Value("${outbox.relay.confirm-timeout:PT5S}")
+    private Duration confirmTimeout;
+
+    // Doit couvrir la publication d'un lot ; au-delà, une autre instance peut le reprendre
+    @Value("${outbox.relay.lease:PT2M}")
+    private Duration lease;
+
+    @Value("${outbox.relay.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${outbox.relay.retry-delay:PT5S}")
+    private Duration retryDelay;
+
+    private volatile long pendingEvents;
+    private volatile double lagSeconds;
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, EventPublisher eventPublisher,
+                       TransactionTemplate transactionTemplate, MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+        this.publishedCounter = meterRegistry.counter("outbox.published");
+        this.failedCounter = meterRegistry.counter("outbox.failed");
+        this.parkedCounter = meterRegistry.counter("outbox.parked");
+        this.deliveryDelayTimer = meterRegistry.timer("outbox.delivery.delay");
+        meterRegistry.gauge("outbox.pending", this, relay -> relay.pendingEvents);
+        meterRegistry.gauge("outbox.lag.seconds", this, relay -> relay.lagSeconds);
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.interval-ms:500}")
+    public void relay() {
+        try {
+            for (int i = 0; i < maxBatches; i++) {
+                List<OutboxEvent> batch = transactionTemplate.execute(status -> claimBatch());
+                if (batch == null || batch.isEmpty()) {
+                    break;
+                }
+                relayBatch(batch);
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Erreur lors de la publication de l'outbox", e);
+        } finally {
+            updateLag();
+        }
+    }
+
+    // Verrous tenus le temps de poser le bail seulement
+    private List<OutboxEvent> claimBatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> batch = outboxEventRepository.lockClaimable(now, PageRequest.of(0, batchSize));
+        LocalDateTime leaseUntil = now.plus(lease);
+        batch.forEach(event -> event.setLeaseUntil(leaseUntil));
+        return batch;
+    }
+
+    // Publie le lot réservé, hors transaction, puis enregistre le résultat
+    private void relayBatch(List<OutboxEvent> batch) {
+        Map<String, Deque<OutboxEvent>> byAggregate = new LinkedHashMap<>();
+        for (OutboxEvent event : batch) {
+            byAggregate.computeIfAbsent(event.getAggregateKey(), key -> new ArrayDeque<>()).add(event);
+        }
+
+        List<OutboxEvent> published = new ArrayList<>();
+        List<OutboxEvent> retried = new ArrayList<>();
+        while (!byAggregate.isEmpty()) {
+            Map<OutboxEvent, CorrelationData> wave = new LinkedHashMap<>();
+            for (Deque<OutboxEvent> events : byAggregate.values()) {
+                OutboxEvent event = events.poll();
+                wave.put(event, eventPublisher.publish(event.getExchange(), event.getRoutingKey(),
+                        "outbox-" + event.getId(), event.getPayload()));
+            }
+
+            long deadline = System.nanoTime() + confirmTimeout.toNanos();
+            wave.forEach((event, correlation) -> {
+                String error = awaitConfirm(correlation, deadline);
+                if (error == null) {
+                    published.add(event);
+                    deliveryDelayTimer.record(Duration.between(event.getCreatedAt(), LocalDateTime.now()));
+                } else {
+                    // Les événements suivants de l'agrégat attendent celui-ci (voir lockClaimable)
+                    Deque<OutboxEvent> following = byAggregate.get(event.getAggregateKey());
+                    following.forEach(next -> next.setLeaseUntil(null));
+                    retried.addAll(following);
+                    following.clear();
+                    fail(event, error);
+                    retried.add(event);
+                }
+            });
+            byAggregate.values().removeIf(Deque::isEmpty);
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            outboxEventRepository.deleteAllByIdInBatch(published.stream().map(OutboxEvent::getId).toList());
+            outboxEventRepository.saveAll(retried);
+        });
+        publishedCounter.increment(published.size());
+    }
+
+    // Retenté après un délai croissant, ou mis de côté au bout de max-attempts tentatives
+    private void fail(OutboxEvent event, String error) {
+        event.setAttempts(event.getAttempts() + 1);
+        event.setLastError(error.length() > 500 ? error.substring(0, 500) : error);
+        failedCounter.increment();
+        if (event.getAttempts() >= maxAttempts) {
+            event.setStatus(OutboxEvent.Status.PARKED);
+            parkedCounter.increment();
+            log.error("Événement {} ({}) mis de côté après {} tentatives: {}",
+                    event.getId(), event.getRoutingKey(), event.getAttempts(), error);
+            return;
+        }
+        event.setLeaseUntil(LocalDateTime.now().plus(retryDelay.multipliedBy(event.getAttempts())));
+        log.warn("Événement {} ({}) non publié, tentative {}: {}",
+                event.getId(), event.getRoutingKey(), event.getAttempts(), error);
+    }
+
+    // Null si le broker a confirmé le message, la raison sinon
+    private String awaitConfirm(CorrelationData correlation, long deadline) {
+        try {
+            CorrelationData.Confirm confirm = correlation.getFuture()
+                    .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return confirm.isAck() ? null : String.valueOf(confirm.getReason());
+        } catch (TimeoutException e) {
+            return "pas de confirmation après " + confirmTimeout;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrompu";
+        } catch (ExecutionException e) {
+            return String.valueOf(e.getCause().getMessage());
+        }
+    }
+
+    private void updateLag() {
+        try {
+            pendingEvents = outboxEventRepository.countByStatus(OutboxEvent.Status.PENDING);
+            lagSeconds = outboxEventRepository.findFirstByStatusOrderByIdAsc(OutboxEvent.Status.PENDING)
+                    .map(event -> Duration.between(event.getCreatedAt(), LocalDateTime.now()).toMillis() / 1000.0)
+                    .orElse(0.0);
+        } catch (Exception e) {
+            log.warn("Impossible de mesurer le retard de l'outbox", e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.orderservice.service;
+
+import com.example.orderservice.model.OutboxEvent;
+import com.example.orderservice.repository.OutboxEventRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Enregistre les événements à publier dans la table outbox, dans la transaction de l'appelant :
+ * {@link OutboxRelay} ne les publie que si cette transaction est validée, et ils ne sont pas
+ * perdus si le broker est indisponible à ce moment-là.
+ * <p>
+ * La même classe existe dans payment-service, au package près
+ * (pas de module commun entre les services) : toute modification est à reporter à l'identique.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxService {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(String aggregateType, Object aggregateId, String exchange, String routingKey, Object event) {
+        OutboxEvent outboxEvent = new OutboxEvent();
+        outboxEvent.setAggregateType(aggregateType);
+        outboxEvent.setAggregateId(String.valueOf(aggregateId));
+        outboxEvent.setExchange(exchange);
+        outboxEvent.setRoutingKey(routingKey);
+        try {
+            outboxEvent.setPayload(objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Impossible de sérialiser l'événement " + routingKey, e);
+        }
+        outboxEventRepository.save(outboxEvent);
+    }
+}
@@ -1,12 +1,15 @@
 package com.example.orderservice.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 
 @Service
@@ -18,9 +21,9 @@ public class RabbitMQListener {
     private final OrderService orderService;
 
     @RabbitListener(queues = "payment.status.queue")
-    public void handlePaymentStatusMessage(String message) {
+    public void handlePaymentStatusMessage(Message message) {
         try {
-            PaymentStatusEvent event = objectMapper.readValue(message, PaymentStatusEvent.class);
+            PaymentStatusEvent event = readEvent(message, PaymentStatusEvent.class);
             log.info("Reçu événement de statut de paiement: {}", event);
 
             // Mettre à jour le statut de paiement de la commande
@@ -44,6 +47,15 @@ public class RabbitMQListener {
             log.error("Erreur lors du traitement du message admin", e);
         }
     }
+
+    // Corps JSON publié tel quel ; les anciens messages étaient encodés une seconde fois en chaîne
+    private <T> T readEvent(Message message, Class<T> type) throws IOException {
+        JsonNode node = objectMapper.readTree(message.getBody());
+        if (node.isTextual()) {
+            node = objectMapper.readTree(node.asText());
+        }
+        return objectMapper.treeToValue(node, type);
+    }
 }
 
 @Data
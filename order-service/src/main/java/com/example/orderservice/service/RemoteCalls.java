@@ -0,0 +1,158 @@
+package com.example.orderservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Exécute en parallèle des appels indépendants aux autres services, dans une portée : tous les
+ * appels ont la même échéance, le premier échec annule les appels encore en cours, et rien ne
+ * survit à la portée. Avec {@code order.remote-calls.parallel=false}, les appels s'exécutent
+ * l'un après l'autre sur le thread de la requête, ce qui est pratique pour comparer ou déboguer.
+ */
+@Component
+@RequiredArgsConstructor
+public class RemoteCalls {
+
+    private final ExecutorService remoteCallExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${order.remote-calls.parallel:true}")
+    private boolean parallel;
+
+    @Value("${order.remote-calls.timeout:PT5S}")
+    private Duration timeout;
+
+    public Scope open(String operation) {
+        return new Scope(operation);
+    }
+
+    public class Scope implements AutoCloseable {
+
+        private final String operation;
+        private final long startNanos = System.nanoTime();
+        private final long deadlineNanos = startNanos + timeout.toNanos();
+        private final List<Future<?>> futures = new ArrayList<>();
+        private final CompletionService<Object> completionService = new ExecutorCompletionService<>(remoteCallExecutor);
+
+        private Scope(String operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * Lance un appel. Son résultat est disponible dans le future renvoyé une fois que
+         * {@link #join()} s'est terminé normalement.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> Future<T> fork(String call, Callable<T> task) {
+            Callable<Object> timed = () -> {
+                Timer.Sample sample = Timer.start(meterRegistry);
+                String outcome = "success";
+                try {
+                    return task.call();
+                } catch (Exception e) {
+                    outcome = Thread.currentThread().isInterrupted() ? "cancelled" : "failure";
+                    throw e;
+                } finally {
+                    sample.stop(meterRegistry.timer("order.remote.call", "call", call, "outcome", outcome));
+                }
+            };
+
+            Future<Object> future;
+            if (parallel) {
+                try {
+                    future = completionService.submit(timed);
+                } catch (RejectedExecutionException e) {
+                    // Pool saturé : échouer tout de suite, les appels déjà lancés sont annulés par close()
+                    meterRegistry.counter("order.remote.call.rejected", "call", call).increment();
+                    throw new RuntimeException("Trop d'appels distants en cours: " + operation, e);
+                }
+            } else {
+                FutureTask<Object> inline = new FutureTask<>(timed);
+                if (futures.stream().anyMatch(this::failed)) {
+                    // Même sémantique qu'en parallèle : plus rien ne s'exécute après un échec
+                    inline.cancel(false);
+                } else {
+                    inline.run();
+                }
+                future = inline;
+            }
+            futures.add(future);
+            return (Future<T>) future;
+        }
+
+        /**
+         * Attend tous les appels lancés. Lève une exception dès que l'un d'eux échoue ou que
+         * l'échéance passe, après avoir annulé (interrompu) les autres.
+         */
+        public void join() {
+            String outcome = "failure";
+            try {
+                if (parallel) {
+                    for (int i = 0; i < futures.size(); i++) {
+                        long remaining = deadlineNanos - System.nanoTime();
+                        Future<Object> done = completionService.poll(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+                        if (done == null) {
+                            outcome = "timeout";
+                            throw new RuntimeException("Délai dépassé pour les appels distants: " + operation);
+                        }
+                        rethrowIfFailed(done);
+                    }
+                } else {
+                    for (Future<?> future : futures) {
+                        rethrowIfFailed(future);
+                    }
+                }
+                outcome = "success";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Appels distants interrompus: " + operation);
+            } finally {
+                if (!"success".equals(outcome)) {
+                    cancelAll();
+                }
+                meterRegistry.timer("order.remote.fanout", "operation", operation, "outcome", outcome)
+                        .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public void close() {
+            cancelAll();
+        }
+
+        private void cancelAll() {
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        private boolean failed(Future<?> future) {
+            if (future.isCancelled()) {
+                return true;
+            }
+            try {
+                future.get();
+                return false;
+            } catch (Exception e) {
+                return true;
+            }
+        }
+
+        private void rethrowIfFailed(Future<?> future) throws InterruptedException {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new RuntimeException(cause.getMessage(), cause);
+            }
+        }
+    }
+}
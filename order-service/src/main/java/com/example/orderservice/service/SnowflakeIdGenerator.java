@@ -0,0 +1,51 @@
+package com.example.orderservice.service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifiants de type Snowflake : 41 bits de millisecondes depuis {@link #EPOCH}, 10 bits
+ * d'id de nœud et 12 bits de séquence, soit jusqu'à 4096 ids par milliseconde et par nœud sans
+ * coordination. Le générateur est sans verrou : le dernier couple (horodatage, séquence) avance
+ * par CAS. Si la séquence est épuisée ou si l'horloge recule, il continue à compter sur le
+ * dernier horodatage (en empruntant les millisecondes suivantes) : les ids restent uniques et
+ * croissants.
+ * <p>
+ * La même classe existe dans payment-service et cart-service, au package près
+ * (pas de module commun entre les services) : toute modification est à reporter à l'identique.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    static final long EPOCH = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+
+    private final long nodeId;
+    // (millisecondes depuis EPOCH << SEQUENCE_BITS) | séquence du dernier id distribué
+    private final AtomicLong lastState = new AtomicLong();
+
+    public SnowflakeIdGenerator(long nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public long nextId() {
+        long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long last;
+        long next;
+        do {
+            last = lastState.get();
+            // Une nouvelle milliseconde repart de la séquence 0, sinon on prend la suivante
+            // (qui déborde sur la milliseconde suivante une fois épuisée)
+            next = Math.max(now, last + 1);
+        } while (!lastState.compareAndSet(last, next));
+
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.orderservice.service;
+
+import com.example.orderservice.dto.UserOrderStatsResponse;
+import com.example.orderservice.model.Order;
+import com.example.orderservice.model.UserOrderStats;
+import com.example.orderservice.repository.OrderRepository;
+import com.example.orderservice.repository.UserOrderStatsRepository;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Statistiques de commandes par utilisateur (nombre, montants, dernière commande, nombres par
+ * statut), tenues à jour de façon incrémentale : chaque changement de commande applique son
+ * delta à la ligne de l'utilisateur dans la même transaction, si bien que les lire coûte une
+ * recherche par clé primaire, ou rien quand le cache en mémoire les a. Un utilisateur sans ligne
+ * (commandes antérieures à cette table) la voit reconstruite à partir des commandes à la
+ * première utilisation ; {@code order.stats.backfill=true} reconstruit tous les utilisateurs au
+ * démarrage.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserOrderStatsService implements ApplicationRunner {
+
+    private final UserOrderStatsRepository userOrderStatsRepository;
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // D'autres instances modifient aussi les statistiques : les entrées du cache ne valent que ce temps-là
+    @Value("${order.stats.cache-ttl:PT30S}")
+    private Duration cacheTtl;
+
+    @Value("${order.stats.cache-size:50000}")
+    private int cacheSize;
+
+    @Value("${order.stats.backfill:false}")
+    private boolean backfillOnStartup;
+
+    @Value("${order.stats.backfill-batch-size:500}")
+    private int backfillBatchSize;
+
+    private final Map<Long, CachedStats> cache = new ConcurrentHashMap<>();
+
+    public UserOrderStatsResponse getStats(Long userId) {
+        CachedStats cached = cache.get(userId);
+        if (cached != null && cached.expiresAt.isAfter(LocalDateTime.now())) {
+            return cached.stats;
+        }
+
+        UserOrderStatsResponse response = transactionTemplate.execute(status -> {
+            UserOrderStats stats = userOrderStatsRepository.findById(userId).orElse(null);
+            if (stats == null) {
+                userOrderStatsRepository.rebuild(List.of(userId));
+                stats = userOrderStatsRepository.findById(userId).orElseGet(() -> {
+                    // Aucune commande
+                    UserOrderStats empty = new UserOrderStats();
+                    empty.setUserId(userId);
+                    return empty;
+                });
+            }
+            return mapToResponse(stats);
+        });
+        if (cache.size() >= cacheSize) {
+            LocalDateTime now = LocalDateTime.now();
+            cache.values().removeIf(entry -> entry.expiresAt.isBefore(now));
+        }
+        if (cache.size() < cacheSize) {
+            cache.put(userId, new CachedStats(response, LocalDateTime.now().plus(cacheTtl)));
+        }
+        return response;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void orderCreated(Order order) {
+        apply(order, null, null);
+    }
+
+    /**
+     * À appeler une fois la commande modifiée et enregistrée, avec son statut et son statut de
+     * paiement d'avant le changement.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void orderChanged(Order order, Order.OrderStatus previousStatus, Order.PaymentStatus previousPaymentStatus) {
+        apply(order, previousStatus, previousPaymentStatus);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (backfillOnStartup) {
+            backfill();
+        }
+    }
+
+    /**
+     * Reconstruit les statistiques de tous les utilisateurs à partir des commandes, par lots
+     * d'utilisateurs, chacun dans sa propre transaction. Peut tourner pendant que les commandes
+     * changent : la reconstruction lit les commandes avec verrous et écrase les lignes, et les
+     * deltas suivants s'appliquent par-dessus.
+     */
+    public void backfill() {
+        long startNanos = System.nanoTime();
+        long afterUserId = Long.MIN_VALUE;
+        int users = 0;
+        while (true) {
+            List<Long> userIds = orderRepository.findUserIdsAfter(afterUserId, PageRequest.of(0, backfillBatchSize));
+            if (userIds.isEmpty()) {
+                break;
+            }
+            transactionTemplate.executeWithoutResult(status -> userOrderStatsRepository.rebuild(userIds));
+            users += userIds.size();
+            afterUserId = userIds.get(userIds.size() - 1);
+        }
+        cache.clear();
+        log.info("Statistiques de commandes reconstruites pour {} utilisateurs en {} ms",
+                users, Duration.ofNanos(System.nanoTime() - startNanos).toMillis());
+    }
+
+    private void apply(Order order, Order.OrderStatus previousStatus, Order.PaymentStatus previousPaymentStatus) {
+        boolean created = previousStatus == null;
+        Map<Order.OrderStatus, Long> statusDelta = new LinkedHashMap<>();
+        if (previousStatus != order.getStatus()) {
+            if (previousStatus != null) {
+                statusDelta.merge(previousStatus, -1L, Long::sum);
+            }
+            statusDelta.merge(order.getStatus(), 1L, Long::sum);
+        }
+        boolean wasPaid = previousPaymentStatus == Order.PaymentStatus.PAID;
+        boolean isPaid = order.getPaymentStatus() == Order.PaymentStatus.PAID;
+        double paidDelta = wasPaid == isPaid ? 0.0 : (isPaid ? order.getFinalAmount() : -order.getFinalAmount());
+
+        if (!created && statusDelta.isEmpty() && paidDelta == 0.0) {
+            return;
+        }
+
+        int updated = userOrderStatsRepository.applyDelta(order.getUserId(),
+                created ? 1 : 0,
+                created ? order.getFinalAmount() : 0.0,
+                paidDelta,
+                created ? order.getCreatedAt() : null,
+                statusDelta.getOrDefault(Order.OrderStatus.PENDING, 0L),
+                statusDelta.getOrDefault(Order.OrderStatus.CONFIRMED, 0L),
+                statusDelta.getOrDefault(Order.OrderStatus.PROCESSING, 0L),
+                statusDelta.getOrDefault(Order.OrderStatus.SHIPPED, 0L),
+                statusDelta.getOrDefault(Order.OrderStatus.DELIVERED, 0L),
+                statusDelta.getOrDefault(Order.OrderStatus.CANCELLED, 0L),
+                statusDelta.getOrDefault(Order.OrderStatus.REFUNDED, 0L));
+        if (updated == 0) {
+            // Pas encore de ligne : reconstruite à partir des commandes, y compris celle-ci
+            userOrderStatsRepository.rebuild(List.of(order.getUserId()));
+        }
+        evictAfterCommit(order.getUserId());
+    }
+
+    private void evictAfterCommit(Long userId) {
+        cache.remove(userId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.remove(userId);
+            }
+        });
+    }
+
+    private UserOrderStatsResponse mapToResponse(UserOrderStats stats) {
+        UserOrderStatsResponse response = new UserOrderStatsResponse();
+        response.setUserId(stats.getUserId());
+        response.setOrderCount(stats.getOrderCount());
+        response.setTotalSpent(stats.getTotalSpent());
+        response.setPaidTotal(stats.getPaidTotal());
+        response.setLastOrderAt(stats.getLastOrderAt());
+        Map<String, Long> countsByStatus = new LinkedHashMap<>();
+        for (Order.OrderStatus status : Order.OrderStatus.values()) {
+            countsByStatus.put(status.name(), stats.getCount(status));
+        }
+        response.setCountsByStatus(countsByStatus);
+        return response;
+    }
+
+    @AllArgsConstructor
+    private static class CachedStats {
+        private final UserOrderStatsResponse stats;
+        private final LocalDateTime expiresAt;
+    }
+}
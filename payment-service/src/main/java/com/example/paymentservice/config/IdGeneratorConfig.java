@@ -0,0 +1,32 @@
+package com.example.paymentservice.config;
+
+import com.example.paymentservice.service.IdGenerator;
+import com.example.paymentservice.service.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Slf4j
+public class IdGeneratorConfig {
+
+    /**
+     * Chaque instance doit avoir son propre node id (0-1023), fixé par payment.id.node-id. Sans
+     * node id, le démarrage échoue, sauf avec payment.id.single-instance=true (une seule instance,
+     * node 0) : deux instances sur le même node id généreraient les mêmes ids.
+     */
+    @Bean
+    public IdGenerator idGenerator(@Value("${payment.id.node-id:-1}") long nodeId,
+                                   @Value("${payment.id.single-instance:false}") boolean singleInstance) {
+        if (nodeId < 0) {
+            if (!singleInstance) {
+                throw new IllegalStateException("payment.id.node-id doit être fixé (0-1023, distinct par instance), "
+                        + "ou payment.id.single-instance=true si une seule instance tourne");
+            }
+            nodeId = 0;
+            log.warn("Aucun payment.id.node-id configuré, node id 0 (payment.id.single-instance=true)");
+        }
+        return new SnowflakeIdGenerator(nodeId);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.paymentservice.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Événement écrit dans la même transaction que le changement qu'il décrit, puis publié sur
+ * RabbitMQ par le relais de l'outbox et supprimé une fois confirmé par le broker. Les événements
+ * d'un même agrégat sont publiés dans l'ordre des ids.
+ * <p>
+ * La même classe existe dans order-service, au package près
+ * (pas de module commun entre les services) : toute modification est à reporter à l'identique.
+ */
+@Entity
+@Table(name = "outbox_events", indexes = {
+        @Index(name = "idx_outbox_events_aggregate", columnList = "aggregate_type, aggregate_id, id")
+})
+@Data
+@NoArgsConstructor
+public class OutboxEvent {
+
+    public enum Status {
+        PENDING, PARKED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Par exemple "payment" et l'id du paiement : l'unité d'ordonnancement
+    @Column(name = "aggregate_type", nullable = false, length = 50)
+    private String aggregateType;
+
+    @Column(name = "aggregate_id", nullable = false, length = 100)
+    private String aggregateId;
+
+    @Column(nullable = false, length = 100)
+    private String exchange;
+
+    @Column(name = "routing_key", nullable = false, length = 100)
+    private String routingKey;
+
+    @Lob
+    @Column(nullable = false)
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Publications échouées jusqu'ici, et la raison de la dernière
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    // PARKED après trop d'échecs : n'est plus retenté, à republier à la main
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status = Status.PENDING;
+
+    // Réservé par un relais jusqu'à cette date, ou pas avant cette date après un échec
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+
+    public String getAggregateKey() {
+        return aggregateType + ":" + aggregateId;
+    }
+}
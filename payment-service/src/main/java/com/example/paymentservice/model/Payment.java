@@ -7,7 +7,9 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        @Index(name = "uk_payments_payment_reference", columnList = "payment_reference", unique = true)
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -17,7 +19,8 @@ public class Payment {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "payment_reference", unique = true, nullable = false)
+    // Attribué par PaymentService via l'IdGenerator (voir SnowflakeIdGenerator)
+    @Column(name = "payment_reference", nullable = false, length = 20)
     private String paymentReference;
 
     @Column(name = "order_id", nullable = false)
@@ -74,7 +77,6 @@ public class Payment {
     protected void onCreate() {
         createdAt = LocalDateTime.now();
         updatedAt = LocalDateTime.now();
-        generatePaymentReference();
     }
 
     @PreUpdate
@@ -82,11 +84,6 @@ public class Payment {
         updatedAt = LocalDateTime.now();
     }
 
-    private void generatePaymentReference() {
-        String timestamp = String.valueOf(System.currentTimeMillis());
-        this.paymentReference = "PAY-" + timestamp.substring(timestamp.length() - 10);
-    }
-
     public enum PaymentStatus {
         PENDING,
         PROCESSING,
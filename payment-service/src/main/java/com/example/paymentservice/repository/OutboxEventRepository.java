@@ -0,0 +1,32 @@
+package com.example.paymentservice.repository;
+
+import com.example.paymentservice.model.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Plus anciens d'abord, verrouillés le temps de poser le bail (voir OutboxRelay). Un événement
+    // n'est pas pris tant qu'un événement antérieur de son agrégat est réservé ou en attente de
+    // nouvelle tentative : les agrégats restent publiés dans l'ordre d'une instance à l'autre
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM OutboxEvent e WHERE e.status = 'PENDING' " +
+            "AND (e.leaseUntil IS NULL OR e.leaseUntil < :now) " +
+            "AND NOT EXISTS (SELECT p.id FROM OutboxEvent p WHERE p.aggregateType = e.aggregateType " +
+            "AND p.aggregateId = e.aggregateId AND p.id < e.id AND p.status = 'PENDING' AND p.leaseUntil >= :now) " +
+            "ORDER BY e.id")
+    List<OutboxEvent> lockClaimable(@Param("now") LocalDateTime now, Pageable pageable);
+
+    long countByStatus(OutboxEvent.Status status);
+
+    Optional<OutboxEvent> findFirstByStatusOrderByIdAsc(OutboxEvent.Status status);
+}
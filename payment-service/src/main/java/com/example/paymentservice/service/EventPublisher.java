@@ -0,0 +1,85 @@
+package com.example.paymentservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Envoie des événements JSON déjà sérialisés, avec confirmations de publication. Le corps part
+ * tel quel, sans repasser par le convertisseur de messages, et chaque envoi renvoie sa
+ * {@link CorrelationData}, dont le future se termine quand le broker confirme ou rejette le
+ * message. Au plus {@code rabbitmq.publisher.max-in-flight} messages attendent leur
+ * confirmation en même temps.
+ * <p>
+ * La même classe existe dans order-service, au package près
+ * (pas de module commun entre les services) : toute modification est à reporter à l'identique.
+ */
+@Component
+public class EventPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final Semaphore inFlight;
+    private final long acquireTimeoutMillis;
+    private final Timer confirmTimer;
+    private final Counter nackCounter;
+
+    public EventPublisher(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+                          @Value("${rabbitmq.publisher.max-in-flight:1000}") int maxInFlight,
+                          @Value("${rabbitmq.publisher.acquire-timeout-ms:5000}") long acquireTimeoutMillis) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.confirmTimer = meterRegistry.timer("rabbitmq.publisher.confirm.latency");
+        this.nackCounter = meterRegistry.counter("rabbitmq.publisher.nacks");
+        meterRegistry.gauge("rabbitmq.publisher.in-flight", inFlight, semaphore -> maxInFlight - semaphore.availablePermits());
+    }
+
+    /**
+     * Envoie {@code json} à l'exchange. Les échecs (pas de place libre, broker injoignable, nack)
+     * sont signalés par la corrélation renvoyée, jamais levés.
+     */
+    public CorrelationData publish(String exchange, String routingKey, String messageId, String json) {
+        CorrelationData correlation = new CorrelationData(messageId);
+        try {
+            if (!inFlight.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                correlation.getFuture().complete(new CorrelationData.Confirm(false, "trop de messages en attente de confirmation"));
+                return correlation;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            correlation.getFuture().complete(new CorrelationData.Confirm(false, "interrompu"));
+            return correlation;
+        }
+
+        long startNanos = System.nanoTime();
+        correlation.getFuture().whenComplete((confirm, error) -> {
+            inFlight.release();
+            confirmTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            if (error != null || !confirm.isAck()) {
+                nackCounter.increment();
+            }
+        });
+
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        properties.setContentEncoding(StandardCharsets.UTF_8.name());
+        properties.setMessageId(messageId);
+        Message message = new Message(json.getBytes(StandardCharsets.UTF_8), properties);
+        try {
+            rabbitTemplate.send(exchange, routingKey, message, correlation);
+        } catch (AmqpException e) {
+            correlation.getFuture().complete(new CorrelationData.Confirm(false, e.getMessage()));
+        }
+        return correlation;
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.paymentservice.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.example.paymentservice.dto.PaymentRequest;
 import com.example.paymentservice.dto.PaymentResponse;
 import com.example.paymentservice.dto.PaymentStatusUpdate;
@@ -9,7 +8,6 @@ import com.example.paymentservice.repository.PaymentRepository;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
@@ -24,8 +22,8 @@ public class PaymentService {
 
     private final PaymentRepository paymentRepository;
     private final PaymentGatewayService paymentGatewayService;
-    private final RabbitTemplate rabbitTemplate;
-    private final ObjectMapper objectMapper;
+    private final OutboxService outboxService;
+    private final IdGenerator idGenerator;
 
     @Transactional
     public PaymentResponse processPayment(PaymentRequest paymentRequest) {
@@ -34,6 +32,7 @@ public class PaymentService {
         try {
             // 1. Créer l'enregistrement de paiement
             Payment payment = new Payment();
+            payment.setPaymentReference("PAY-" + idGenerator.nextKey());
             payment.setOrderId(paymentRequest.getOrderId());
             payment.setOrderNumber(paymentRequest.getOrderNumber());
             payment.setUserId(paymentRequest.getUserId());
@@ -295,47 +294,32 @@ public class PaymentService {
         }
     }
 
+    // Les événements sont écrits dans l'outbox, dans la transaction du paiement
     private void publishPaymentStatusEvent(Payment payment) {
-        try {
-            PaymentStatusEvent event = new PaymentStatusEvent();
-            event.setPaymentId(payment.getId());
-            event.setPaymentReference(payment.getPaymentReference());
-            event.setOrderId(payment.getOrderId());
-            event.setOrderNumber(payment.getOrderNumber());
-            event.setUserId(payment.getUserId());
-            event.setAmount(payment.getAmount());
-            event.setStatus(payment.getStatus().name());
-            event.setTransactionId(payment.getGatewayTransactionId());
-            event.setTimestamp(LocalDateTime.now());
-
-            String message = objectMapper.writeValueAsString(event);
-            rabbitTemplate.convertAndSend("payment.exchange", "payment.status", message);
-
-            log.info("Événement de statut de paiement publié: {}", payment.getPaymentReference());
-
-        } catch (Exception e) {
-            log.error("Erreur lors de la publication de l'événement de statut de paiement", e);
-        }
+        PaymentStatusEvent event = new PaymentStatusEvent();
+        event.setPaymentId(payment.getId());
+        event.setPaymentReference(payment.getPaymentReference());
+        event.setOrderId(payment.getOrderId());
+        event.setOrderNumber(payment.getOrderNumber());
+        event.setUserId(payment.getUserId());
+        event.setAmount(payment.getAmount());
+        event.setStatus(payment.getStatus().name());
+        event.setTransactionId(payment.getGatewayTransactionId());
+        event.setTimestamp(LocalDateTime.now());
+
+        outboxService.add("payment", payment.getId(), "payment.exchange", "payment.status", event);
     }
 
     private void publishRefundEvent(Payment payment) {
-        try {
-            RefundEvent event = new RefundEvent();
-            event.setPaymentId(payment.getId());
-            event.setPaymentReference(payment.getPaymentReference());
-            event.setOrderId(payment.getOrderId());
-            event.setAmount(payment.getAmount());
-            event.setRefundReference(payment.getPaymentReference() + "-REFUND");
-            event.setTimestamp(LocalDateTime.now());
-
-            String message = objectMapper.writeValueAsString(event);
-            rabbitTemplate.convertAndSend("payment.exchange", "payment.refund", message);
-
-            log.info("Événement de remboursement publié: {}", payment.getPaymentReference());
-
-        } catch (Exception e) {
-            log.error("Erreur lors de la publication de l'événement de remboursement", e);
-        }
+        RefundEvent event = new RefundEvent();
+        event.setPaymentId(payment.getId());
+        event.setPaymentReference(payment.getPaymentReference());
+        event.setOrderId(payment.getOrderId());
+        event.setAmount(payment.getAmount());
+        event.setRefundReference(payment.getPaymentReference() + "-REFUND");
+        event.setTimestamp(LocalDateTime.now());
+
+        outboxService.add("payment", payment.getId(), "payment.exchange", "payment.refund", event);
     }
 
     private PaymentResponse mapToPaymentResponse(Payment payment) {
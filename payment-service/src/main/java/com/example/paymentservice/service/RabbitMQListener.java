@@ -1,12 +1,15 @@
 package com.example.paymentservice.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 
 @Service
@@ -18,9 +21,9 @@ public class RabbitMQListener {
     private final PaymentService paymentService;
 
     @RabbitListener(queues = "order.payment.queue")
-    public void handleOrderPaymentMessage(String message) {
+    public void handleOrderPaymentMessage(Message message) {
         try {
-            OrderPaymentEvent event = objectMapper.readValue(message, OrderPaymentEvent.class);
+            OrderPaymentEvent event = readEvent(message, OrderPaymentEvent.class);
             log.info("Reçu événement de paiement de commande: {}", event);
 
             // Ici, vous pourriez automatiquement créer une demande de paiement
@@ -40,6 +43,15 @@ public class RabbitMQListener {
             log.error("Erreur lors du traitement du message admin", e);
         }
     }
+
+    // Corps JSON publié tel quel ; les anciens messages étaient encodés une seconde fois en chaîne
+    private <T> T readEvent(Message message, Class<T> type) throws IOException {
+        JsonNode node = objectMapper.readTree(message.getBody());
+        if (node.isTextual()) {
+            node = objectMapper.readTree(node.asText());
+        }
+        return objectMapper.treeToValue(node, type);
+    }
 }
 
 @Data